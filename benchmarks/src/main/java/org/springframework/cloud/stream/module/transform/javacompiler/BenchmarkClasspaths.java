@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform.javacompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.StringTokenizer;
+
+/**
+ * The classpaths the benchmarks run against. Defaults assume the benchmarks are run from the benchmarks
+ * directory after the main project has been packaged (the nested jar is its repackaged executable jar),
+ * each can be overridden with a system property.
+ *
+ * @author Andy Clement
+ */
+class BenchmarkClasspaths {
+
+	/**
+	 * @param kind one of directory (a directory of classes), jar (a flat jar) or nestedJar (a jar containing lib/*.jar)
+	 * @return the classpath to use for that kind
+	 */
+	static String get(String kind) {
+		String path;
+		switch (kind) {
+		case "directory":
+			path = System.getProperty("benchmark.directory", "../target/classes");
+			break;
+		case "jar":
+			path = System.getProperty("benchmark.jar", firstJarOnClasspath());
+			break;
+		case "nestedJar":
+			path = System.getProperty("benchmark.nestedJar");
+			if (path == null) {
+				path = repackagedJar();
+			}
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown classpath kind: " + kind);
+		}
+		if (!new File(path).exists()) {
+			throw new IllegalStateException("Benchmark classpath for '" + kind + "' does not exist: " + path);
+		}
+		return path;
+	}
+
+	// The executable jar Spring Boot repackages the module into, a real set of nested dependency jars
+	private static String repackagedJar() {
+		File[] jars = new File("../target").listFiles((dir, name) -> name.startsWith("programmable-rxjava-processor-")
+				&& name.endsWith("-exec.jar"));
+		if (jars != null) {
+			for (File jar : jars) {
+				if (hasNestedJars(jar)) {
+					return jar.getPath();
+				}
+			}
+		}
+		throw new IllegalStateException("No repackaged Spring Boot jar (programmable-rxjava-processor-*-exec.jar) "
+				+ "containing lib/*.jar found in ../target, build the module with 'mvn package' first or set "
+				+ "-Dbenchmark.nestedJar to a Spring Boot jar");
+	}
+
+	private static boolean hasNestedJars(File jar) {
+		try {
+			for (ZipDirectory.Entry entry : new ZipDirectory(jar).getEntries()) {
+				if (entry.getName().startsWith("lib/") && entry.getName().endsWith(".jar")) {
+					return true;
+				}
+			}
+			return false;
+		} catch (IOException ioe) {
+			throw new IllegalStateException("Unable to read " + jar + ": " + ioe.getMessage(), ioe);
+		}
+	}
+
+	// When run from the shaded benchmarks jar this is that (large) jar
+	private static String firstJarOnClasspath() {
+		StringTokenizer tokenizer = new StringTokenizer(System.getProperty("java.class.path"), File.pathSeparator);
+		while (tokenizer.hasMoreTokens()) {
+			String entry = tokenizer.nextToken();
+			if (entry.endsWith(".jar")) {
+				return entry;
+			}
+		}
+		throw new IllegalStateException("No jar on the classpath");
+	}
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform.javacompiler;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.stream.module.transform.RxJavaTransformer;
+
+/**
+ * Measures compiling a typical snippet end to end (compile, define and load). The cold benchmark
+ * is the first compilation in a fresh JVM, so includes building the classpath indexes, each fork
+ * provides one sample. The warm benchmark repeatedly compiles in the same JVM, as happens when
+ * the code is changed whilst running. No compilation cache is used.
+ *
+ * @author Andy Clement
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CompileBenchmarks {
+
+	static final String CLASS_NAME = "org.springframework.cloud.stream.module.transform.RxClass";
+
+	static final String SOURCE = RxJavaTransformer.makeSourceClassDefinition(
+			"return input -> input.map(s->Integer.valueOf((String)s)).window(3).flatMap(MathObservable::averageInteger);");
+
+	@Param({ "javac", "ecj" })
+	String compiler;
+
+	RuntimeJavaCompiler runtimeJavaCompiler;
+
+	@Setup
+	public void setup() {
+		runtimeJavaCompiler = new RuntimeJavaCompiler();
+		runtimeJavaCompiler.setCompilerBackend(compiler.equals("ecj") ? new EcjCompilerBackend() : new JavacCompilerBackend());
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 0)
+	@Measurement(iterations = 1)
+	@Fork(10)
+	public CompilationResult cold() {
+		return check(runtimeJavaCompiler.compile(CLASS_NAME, SOURCE));
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@Warmup(iterations = 5)
+	@Measurement(iterations = 10)
+	@Fork(2)
+	public CompilationResult warm() {
+		return check(runtimeJavaCompiler.compile(CLASS_NAME, SOURCE));
+	}
+
+	private static CompilationResult check(CompilationResult compilationResult) {
+		if (!compilationResult.wasSuccessful()) {
+			throw new IllegalStateException("Compilation failed: " + compilationResult);
+		}
+		return compilationResult;
+	}
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform.javacompiler;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.StandardLocation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link MemoryBasedJavaFileManager#list} for individual packages, as called by the compiler
+ * whilst resolving types. The classpath indexes are built in setup so this is the steady state cost.
+ * The packages include ones that do not exist, which the compiler probes frequently.
+ *
+ * @author Andy Clement
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+public class FileManagerListBenchmarks {
+
+	private static final Set<Kind> CLASS_KIND = EnumSet.of(Kind.CLASS);
+
+	@Param({ "PLATFORM_CLASS_PATH:java.lang", "PLATFORM_CLASS_PATH:java.util", "CLASS_PATH:rx",
+			"CLASS_PATH:org.springframework.cloud.stream.annotation.rxjava", "CLASS_PATH:made.up" })
+	String locationAndPackage;
+
+	StandardLocation location;
+
+	String packageName;
+
+	MemoryBasedJavaFileManager fileManager;
+
+	@Setup
+	public void setup() throws Exception {
+		String[] pieces = locationAndPackage.split(":");
+		location = StandardLocation.valueOf(pieces[0]);
+		packageName = pieces[1];
+		fileManager = new MemoryBasedJavaFileManager();
+		// Build the index outside of the measurement
+		fileManager.list(location, packageName, CLASS_KIND, false);
+	}
+
+	@Benchmark
+	public void list(Blackhole blackhole) throws Exception {
+		for (JavaFileObject jfo : fileManager.list(location, packageName, CLASS_KIND, false)) {
+			blackhole.consume(jfo);
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform.javacompiler;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.tools.JavaFileObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures a full iteration over a classpath, as done when building a {@link ClasspathIndex}.
+ *
+ * @author Andy Clement
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+public class IterableClasspathBenchmarks {
+
+	@Param({ "directory", "jar", "nestedJar" })
+	String classpathKind;
+
+	String classpath;
+
+	@Setup
+	public void setup() {
+		classpath = BenchmarkClasspaths.get(classpathKind);
+	}
+
+	@Benchmark
+	public int iterate(Blackhole blackhole) throws Exception {
+		int count = 0;
+		IterableClasspath iterableClasspath = new IterableClasspath(classpath, null, false);
+		try {
+			for (JavaFileObject jfo : iterableClasspath) {
+				blackhole.consume(jfo.getName());
+				count++;
+			}
+		} finally {
+			iterableClasspath.close();
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform.javacompiler;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.tools.JavaFileObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reading the content of classes that are inside a jar nested in another jar, as happens
+ * when the compiler reads classes from a spring boot uberjar. Each invocation opens and reads the
+ * next entry in turn.
+ *
+ * @author Andy Clement
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+public class NestedZipEntryBenchmarks {
+
+	List<JavaFileObject> entries = new ArrayList<>();
+
+	IterableClasspath iterableClasspath;
+
+	byte[] buffer = new byte[8192];
+
+	int next = 0;
+
+	@Setup
+	public void setup() {
+		iterableClasspath = new IterableClasspath(BenchmarkClasspaths.get("nestedJar"), null, false);
+		for (JavaFileObject jfo : iterableClasspath) {
+			if (jfo instanceof NestedZipEntryJavaFileObject) {
+				entries.add(jfo);
+			}
+		}
+		if (entries.isEmpty()) {
+			throw new IllegalStateException("No nested entries found");
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		iterableClasspath.close();
+	}
+
+	@Benchmark
+	public int openInputStream() throws Exception {
+		JavaFileObject jfo = entries.get(next++ % entries.size());
+		int total = 0;
+		try (InputStream is = jfo.openInputStream()) {
+			int read;
+			while ((read = is.read(buffer)) != -1) {
+				total += read;
+			}
+		}
+		return total;
+	}
+
+}
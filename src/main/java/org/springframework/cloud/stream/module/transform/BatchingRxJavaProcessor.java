@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.cloud.stream.annotation.rxjava.RxJavaProcessor;
+
+import rx.Observable;
+
+/**
+ * Wraps a processor so that it works on batches of messages rather than individual ones. If input batching
+ * is on the processor sees an Observable of Lists, each holding up to the batch size of messages (fewer if the
+ * batch timeout expires first). If output batching is on the output of the processor is collected into Lists
+ * that are each sent as one message. If splitOutput is on, Iterable output elements (for example Lists produced
+ * by <tt>buffer()</tt> in the code) are sent as individual messages.
+ *
+ * @author Andy Clement
+ */
+public class BatchingRxJavaProcessor implements RxJavaProcessor<Object, Object> {
+
+	private final RxJavaProcessor<Object, Object> delegate;
+
+	private final int inputBatchSize;
+
+	private final long inputBatchTimeout;
+
+	private final int outputBatchSize;
+
+	private final long outputBatchTimeout;
+
+	private final boolean splitOutput;
+
+	/**
+	 * @param delegate the processor to wrap
+	 * @param inputBatchSize the maximum number of messages in an input batch, 0 for no input batching
+	 * @param inputBatchTimeout the maximum time (ms) to wait to fill an input batch, 0 to always wait for a full batch
+	 * @param outputBatchSize the maximum number of elements in an output batch, 0 for no output batching
+	 * @param outputBatchTimeout the maximum time (ms) to wait to fill an output batch, 0 to always wait for a full batch
+	 * @param splitOutput whether Iterable output elements should be split into individual messages
+	 */
+	public BatchingRxJavaProcessor(RxJavaProcessor<Object, Object> delegate, int inputBatchSize, long inputBatchTimeout,
+			int outputBatchSize, long outputBatchTimeout, boolean splitOutput) {
+		this.delegate = delegate;
+		this.inputBatchSize = inputBatchSize;
+		this.inputBatchTimeout = inputBatchTimeout;
+		this.outputBatchSize = outputBatchSize;
+		this.outputBatchTimeout = outputBatchTimeout;
+		this.splitOutput = splitOutput;
+	}
+
+	@Override
+	public Observable<Object> process(Observable<Object> input) {
+		if (inputBatchSize > 0) {
+			input = batch(input, inputBatchSize, inputBatchTimeout);
+		}
+		Observable<Object> output = delegate.process(input);
+		if (splitOutput) {
+			output = output.flatMapIterable(BatchingRxJavaProcessor::split);
+		}
+		if (outputBatchSize > 0) {
+			output = batch(output, outputBatchSize, outputBatchTimeout);
+		}
+		return output;
+	}
+
+	/**
+	 * @return true if any batching or splitting is configured, otherwise there is no need to wrap a processor
+	 */
+	public boolean isBatching() {
+		return inputBatchSize > 0 || outputBatchSize > 0 || splitOutput;
+	}
+
+	/**
+	 * @return the processor this one wraps
+	 */
+	public RxJavaProcessor<Object, Object> getDelegate() {
+		return delegate;
+	}
+
+	private static Observable<Object> batch(Observable<Object> observable, int size, long timeout) {
+		// Only a timed buffer needs a scheduler, a size based buffer has no per element scheduling cost
+		Observable<List<Object>> batches = timeout > 0 ? observable.buffer(timeout, TimeUnit.MILLISECONDS, size)
+				: observable.buffer(size);
+		return batches.filter(batch -> !batch.isEmpty()).cast(Object.class);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Iterable<Object> split(Object element) {
+		return element instanceof Iterable ? (Iterable<Object>) element : Collections.singletonList(element);
+	}
+
+}
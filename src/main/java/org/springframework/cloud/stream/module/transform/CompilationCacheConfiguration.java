@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.stream.module.transform.javacompiler.CompilationCache;
+import org.springframework.cloud.stream.module.transform.javacompiler.DirectoryCompilationCache;
+import org.springframework.cloud.stream.module.transform.javacompiler.InMemoryCompilationCache;
+import org.springframework.cloud.stream.module.transform.javacompiler.RedisCompilationCache;
+import org.springframework.cloud.stream.module.transform.javacompiler.TieredCompilationCache;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+/**
+ * Configures the cache the runtime compiler consults before compiling. There is always an
+ * in memory tier, a local directory and a shared Redis tier are added if configured.
+ *
+ * @author Andy Clement
+ */
+@Configuration
+public class CompilationCacheConfiguration {
+
+	private static Logger logger = LoggerFactory.getLogger(CompilationCacheConfiguration.class);
+
+	@Autowired
+	private ProgrammableRxJavaProcessorProperties properties;
+
+	@Autowired(required = false)
+	private RedisConnectionFactory redisConnectionFactory;
+
+	@Bean
+	public CompilationCache compilationCache() {
+		List<CompilationCache> tiers = new ArrayList<>();
+		tiers.add(new InMemoryCompilationCache(properties.getMemoryCacheSize()));
+		if (properties.getCacheDirectory() != null) {
+			tiers.add(new DirectoryCompilationCache(new File(properties.getCacheDirectory())));
+		}
+		if (properties.isSharedCache()) {
+			if (redisConnectionFactory == null) {
+				logger.warn("Shared compilation cache requested but there is no Redis connection factory available");
+			} else {
+				tiers.add(new RedisCompilationCache(redisConnectionFactory));
+			}
+		}
+		return new TieredCompilationCache(tiers);
+	}
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.stream.module.transform.javacompiler.CompilerBackend;
+import org.springframework.cloud.stream.module.transform.javacompiler.EcjCompilerBackend;
+import org.springframework.cloud.stream.module.transform.javacompiler.JavacCompilerBackend;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configures which compiler the runtime compiler delegates to, based on the compiler property.
+ *
+ * @author Andy Clement
+ */
+@Configuration
+public class CompilerBackendConfiguration {
+
+	private static Logger logger = LoggerFactory.getLogger(CompilerBackendConfiguration.class);
+
+	@Autowired
+	private ProgrammableRxJavaProcessorProperties properties;
+
+	@Bean
+	public CompilerBackend compilerBackend() {
+		String compiler = properties.getCompiler();
+		if ("ecj".equalsIgnoreCase(compiler)) {
+			return new EcjCompilerBackend();
+		} else if ("javac".equalsIgnoreCase(compiler)) {
+			if (JavacCompilerBackend.isAvailable()) {
+				return new JavacCompilerBackend();
+			}
+			logger.warn("The javac compiler is not available (running on a JRE?), using ecj");
+			return new EcjCompilerBackend();
+		}
+		throw new IllegalStateException("Unknown compiler '" + compiler + "', should be javac or ecj");
+	}
+
+}
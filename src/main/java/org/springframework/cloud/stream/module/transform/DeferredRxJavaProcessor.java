@@ -0,0 +1,436 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.stream.annotation.rxjava.RxJavaProcessor;
+
+import rx.Notification;
+import rx.Observable;
+import rx.functions.Action0;
+import rx.subjects.PublishSubject;
+import rx.subjects.Subject;
+
+/**
+ * An RxJavaProcessor that can be handed out before the real (compiled) processor exists. Input
+ * arriving before the real processor is attached is buffered, up to a limit after which the thread
+ * supplying the input is blocked. When the real processor is attached the buffered input is
+ * replayed into it, in order, and subsequent input is passed straight through on the caller thread.
+ * If the real processor cannot be created the output observables are completed with an error and
+ * further input is discarded.
+ * <p>
+ * Once attached the real processor can be replaced, for example after the code has been changed and
+ * recompiled. The input is switched to the new processor between two elements and then the input of the
+ * old processor is completed, so it finishes cleanly (e.g. emitting partially filled buffers). The output
+ * of each processor is merged into the same output observable, which is not completed by the replacement.
+ * Once every pipeline built by a replaced processor has finished the drained listener is told, at which
+ * point the processor (and the classes it was compiled to) can be let go.
+ *
+ * @author Andy Clement
+ */
+public class DeferredRxJavaProcessor implements RxJavaProcessor<Object, Object> {
+
+	private static Logger logger = LoggerFactory.getLogger(DeferredRxJavaProcessor.class);
+
+	private final int bufferSize;
+
+	private final List<Slot> slots = new CopyOnWriteArrayList<>();
+
+	private volatile Generation current;
+
+	private volatile IntConsumer drainedListener;
+
+	private volatile State state = State.PENDING;
+
+	private volatile Throwable failure;
+
+	enum State {
+		PENDING, ATTACHED, FAILED
+	};
+
+	/**
+	 * @param bufferSize how many input items may be buffered (per process() call) before the real processor is attached
+	 */
+	public DeferredRxJavaProcessor(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	@Override
+	public Observable<Object> process(Observable<Object> input) {
+		Slot slot = new Slot();
+		synchronized (slots) {
+			if (state == State.FAILED) {
+				return Observable.error(failure);
+			}
+			slots.add(slot);
+		}
+		input.materialize().subscribe(slot::accept);
+		// A processor is only connected to the slot once there is a downstream subscriber
+		Observable<Object> output = Observable.merge(slot.outputs);
+		return Observable.create(subscriber -> {
+			output.unsafeSubscribe(subscriber);
+			slot.subscribed();
+		});
+	}
+
+	/**
+	 * Attach the real processor, replaying any input buffered so far into it.
+	 * @param processor the processor to delegate to
+	 * @return the generation number of the processor, 1
+	 */
+	public int attach(RxJavaProcessor<Object, Object> processor) {
+		return connect(processor, State.PENDING);
+	}
+
+	/**
+	 * Replace the attached processor with a new one. The input of the current processor is completed.
+	 * @param processor the processor to delegate to from now on
+	 * @return the generation number of the new processor
+	 */
+	public int replace(RxJavaProcessor<Object, Object> processor) {
+		return connect(processor, State.ATTACHED);
+	}
+
+	/**
+	 * Build the pipelines of the new processor for every slot and only if that works for all of them switch
+	 * the slots over to it. If the processor throws building a pipeline nothing is switched, the current
+	 * processor (or the buffering, before the first attach) carries on and the exception is rethrown.
+	 */
+	private int connect(RxJavaProcessor<Object, Object> processor, State expectedState) {
+		Generation previous;
+		Generation next;
+		synchronized (slots) {
+			if (state != expectedState) {
+				throw new IllegalStateException("Processor is " + state.name().toLowerCase());
+			}
+			previous = current;
+			next = new Generation(previous == null ? 1 : previous.number + 1, processor);
+			// Slots subscribing meanwhile wait for the slots lock, then connect to whichever processor is current
+			Map<Slot, Pipeline> pipelines = new LinkedHashMap<>();
+			try {
+				for (Slot slot : slots) {
+					Pipeline pipeline = slot.prepare(next);
+					if (pipeline != null) {
+						pipelines.put(slot, pipeline);
+					}
+				}
+			} catch (RuntimeException | Error e) {
+				for (Pipeline pipeline : pipelines.values()) {
+					pipeline.discard();
+				}
+				throw e;
+			}
+			next.committed = true;
+			current = next;
+			state = State.ATTACHED;
+			for (Map.Entry<Slot, Pipeline> entry : pipelines.entrySet()) {
+				entry.getKey().commit(entry.getValue());
+			}
+		}
+		if (previous != null) {
+			// It may have had no pipelines or they may all have finished already
+			previous.checkDrained();
+		}
+		return next.number;
+	}
+
+	/**
+	 * @param drainedListener called with the number of a generation once it has been replaced and all the pipelines
+	 * built by its processor have finished, after which nothing should be using it
+	 */
+	public void setDrainedListener(IntConsumer drainedListener) {
+		this.drainedListener = drainedListener;
+	}
+
+	/**
+	 * Record that the real processor could not be created.
+	 * @param throwable the reason
+	 */
+	public void fail(Throwable throwable) {
+		List<Slot> toRelease;
+		synchronized (slots) {
+			if (state != State.PENDING) {
+				throw new IllegalStateException("Processor is " + state.name().toLowerCase());
+			}
+			failure = throwable;
+			state = State.FAILED;
+			toRelease = new ArrayList<>(slots);
+			slots.clear();
+		}
+		for (Slot slot : toRelease) {
+			slot.release(throwable);
+		}
+	}
+
+	/**
+	 * @return true once the real processor has been attached
+	 */
+	public boolean isAttached() {
+		return state == State.ATTACHED;
+	}
+
+	/**
+	 * @return true if the real processor could not be created
+	 */
+	public boolean isFailed() {
+		return state == State.FAILED;
+	}
+
+	/**
+	 * @return why the real processor could not be created, or null if it has not failed
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	/**
+	 * @return the processor currently attached, or null if there is not one
+	 */
+	public RxJavaProcessor<Object, Object> getProcessor() {
+		Generation generation = current;
+		return generation == null ? null : generation.processor;
+	}
+
+	/**
+	 * @return how many processors have been attached, 1 for the initial processor and one more for each replacement
+	 */
+	public int getGeneration() {
+		Generation generation = current;
+		return generation == null ? 0 : generation.number;
+	}
+
+	/**
+	 * @return the number of input items currently buffered awaiting the real processor
+	 */
+	public int getBufferedCount() {
+		int count = 0;
+		for (Slot slot : slots) {
+			count += slot.size();
+		}
+		return count;
+	}
+
+	/**
+	 * A processor and the number of pipelines (one per process() call connected to it) it has built that have not
+	 * finished.
+	 */
+	class Generation {
+
+		final int number;
+
+		final RxJavaProcessor<Object, Object> processor;
+
+		final AtomicInteger pipelines = new AtomicInteger();
+
+		// Set once the slots have been switched to this generation
+		volatile boolean committed;
+
+		private final AtomicBoolean drained = new AtomicBoolean();
+
+		Generation(int number, RxJavaProcessor<Object, Object> processor) {
+			this.number = number;
+			this.processor = processor;
+		}
+
+		/**
+		 * Build a pipeline, the processor may throw doing so.
+		 */
+		Pipeline process() {
+			Subject<Object, Object> feed = PublishSubject.<Object>create().toSerialized();
+			pipelines.incrementAndGet();
+			AtomicBoolean finished = new AtomicBoolean();
+			Action0 finish = () -> {
+				if (finished.compareAndSet(false, true) && pipelines.decrementAndGet() == 0) {
+					checkDrained();
+				}
+			};
+			try {
+				return new Pipeline(this, feed, processor.process(feed).doOnTerminate(finish).doOnUnsubscribe(finish), finish);
+			} catch (RuntimeException | Error e) {
+				finish.call();
+				throw e;
+			}
+		}
+
+		void checkDrained() {
+			if (committed && pipelines.get() == 0 && this != current && drained.compareAndSet(false, true)) {
+				logger.debug("Generation {} of the processor has drained", number);
+				IntConsumer listener = drainedListener;
+				if (listener != null) {
+					listener.accept(number);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The input feed and output of a processor built for one slot.
+	 */
+	static class Pipeline {
+
+		final Generation generation;
+
+		final Subject<Object, Object> feed;
+
+		final Observable<Object> output;
+
+		private final Action0 finish;
+
+		Pipeline(Generation generation, Subject<Object, Object> feed, Observable<Object> output, Action0 finish) {
+			this.generation = generation;
+			this.feed = feed;
+			this.output = output;
+			this.finish = finish;
+		}
+
+		/**
+		 * The pipeline is not going to be used, its output was never subscribed.
+		 */
+		void discard() {
+			finish.call();
+		}
+	}
+
+	/**
+	 * The input from one call to process(). Until a processor is connected notifications are queued. Once
+	 * connected they are passed to the feed of the current processor, the output of each processor connected
+	 * is emitted on outputs (and merged). Delivering input and switching processor both happen whilst holding
+	 * the lock, so a switch always falls between two elements.
+	 */
+	class Slot {
+
+		final Subject<Observable<Object>, Observable<Object>> outputs = PublishSubject.create();
+
+		private final Queue<Notification<Object>> queue = new ArrayDeque<>();
+
+		private Subject<Object, Object> feed;
+
+		private Generation connectedGeneration;
+
+		private boolean subscribed = false;
+
+		private boolean terminated = false;
+
+		private boolean discard = false;
+
+		synchronized void accept(Notification<Object> notification) {
+			while (true) {
+				if (discard) {
+					logger.debug("Discarding {}, the processor failed to initialize", notification);
+					return;
+				}
+				if (feed != null) {
+					deliver(notification);
+					return;
+				}
+				if (queue.size() < bufferSize) {
+					queue.add(notification);
+					return;
+				}
+				try {
+					// Full, block the supplier until there is space or a processor is connected
+					wait();
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted waiting for the processor to initialize", ie);
+				}
+			}
+		}
+
+		private void deliver(Notification<Object> notification) {
+			if (terminated) {
+				return;
+			}
+			notification.accept(feed);
+			if (notification.isOnCompleted() || notification.isOnError()) {
+				terminated = true;
+				slots.remove(this);
+				outputs.onCompleted();
+			}
+		}
+
+		void subscribed() {
+			// Holding the slots lock means a processor is not part way through being switched
+			synchronized (slots) {
+				synchronized (this) {
+					subscribed = true;
+				}
+				Generation generation = current;
+				if (generation != null) {
+					Pipeline pipeline = prepare(generation);
+					if (pipeline != null) {
+						commit(pipeline);
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return a pipeline built by the generation for this slot, or null if the slot does not need one
+		 */
+		synchronized Pipeline prepare(Generation generation) {
+			if (!subscribed || terminated || connectedGeneration == generation) {
+				return null;
+			}
+			return generation.process();
+		}
+
+		/**
+		 * Switch the input to the prepared pipeline. The previous one is completed so it finishes, its output
+		 * is still merged.
+		 */
+		synchronized void commit(Pipeline pipeline) {
+			if (terminated) {
+				pipeline.discard();
+				return;
+			}
+			connectedGeneration = pipeline.generation;
+			if (feed != null) {
+				feed.onCompleted();
+			}
+			feed = pipeline.feed;
+			outputs.onNext(pipeline.output);
+			while (!queue.isEmpty()) {
+				deliver(queue.poll());
+			}
+			notifyAll();
+		}
+
+		synchronized void release(Throwable throwable) {
+			queue.clear();
+			discard = true;
+			outputs.onError(throwable);
+			notifyAll();
+		}
+
+		synchronized int size() {
+			return queue.size();
+		}
+	}
+
+}
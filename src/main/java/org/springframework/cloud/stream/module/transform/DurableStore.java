@@ -0,0 +1,337 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.stream.module.transform.SegmentStore.EncodingBuffer;
+import org.springframework.cloud.stream.module.transform.javacompiler.ByteBufferInputStream;
+
+/**
+ * An append only store of encoded elements in a named memory mapped file in the state directory, so the
+ * elements survive the process stopping or crashing and are restored when a store of the same name is next
+ * opened. Each append writes the element (its length followed by its encoded form) and then updates the end
+ * position in the file header, that single write commits it. Writes go to the page cache without blocking, the
+ * files are forced to disk periodically on a background thread (to also survive the machine failing). Not
+ * thread safe, a name can only be open once at a time: opening a name that is in use waits for it to be closed,
+ * so state can be handed from a processor that is draining to the one replacing it.
+ *
+ * @author Andy Clement
+ */
+public class DurableStore<T> {
+
+	private static Logger logger = LoggerFactory.getLogger(DurableStore.class);
+
+	// The header holds the position of the end of the committed elements
+	private static final int HEADER_SIZE = 8;
+
+	private static final int INITIAL_SIZE = 64 * 1024;
+
+	// How long open() waits for a name in use to be closed
+	static volatile long handoverTimeoutMillis = 30000;
+
+	private static volatile Path stateDirectory;
+
+	private static Set<DurableStore<?>> openStores = ConcurrentHashMap.newKeySet();
+
+	// Guarded by itself, waited on for a name to be closed
+	private static Set<String> openNames = new HashSet<>();
+
+	private static ScheduledExecutorService syncer;
+
+	private static ScheduledFuture<?> syncTask;
+
+	private final String name;
+
+	private final ElementCodec<T> codec;
+
+	private final Path file;
+
+	private final FileChannel channel;
+
+	private volatile MappedByteBuffer buffer;
+
+	private final EncodingBuffer encodingBuffer = new EncodingBuffer();
+
+	private final DataOutputStream encoder = new DataOutputStream(encodingBuffer);
+
+	private int size;
+
+	private volatile boolean dirty;
+
+	/**
+	 * Configure where state is kept and how often it is forced to disk. Until a directory is configured durable
+	 * state is not available.
+	 *
+	 * @param directory the directory state files are kept in, or null to switch durable state off
+	 * @param syncIntervalMillis how often state is forced to disk, 0 to leave it to the operating system
+	 */
+	public static synchronized void configure(String directory, long syncIntervalMillis) {
+		stateDirectory = directory == null ? null : Paths.get(directory);
+		if (syncTask != null) {
+			syncTask.cancel(false);
+			syncTask = null;
+		}
+		if (stateDirectory != null && syncIntervalMillis > 0) {
+			if (syncer == null) {
+				syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+					Thread thread = new Thread(runnable, "prxj-state-sync");
+					thread.setDaemon(true);
+					return thread;
+				});
+			}
+			syncTask = syncer.scheduleWithFixedDelay(DurableStore::syncAll, syncIntervalMillis, syncIntervalMillis,
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * @return true if a state directory has been configured
+	 */
+	public static boolean isAvailable() {
+		return stateDirectory != null;
+	}
+
+	/**
+	 * Open the named store, restoring the elements it held. If the name is in use this waits for it to be closed.
+	 *
+	 * @param name the store name, unique within the state directory
+	 * @param codec converts elements to and from bytes
+	 * @return the store
+	 */
+	public static <T> DurableStore<T> open(String name, ElementCodec<T> codec) {
+		if (stateDirectory == null) {
+			throw new IllegalStateException("No state directory is configured");
+		}
+		acquire(name);
+		try {
+			DurableStore<T> store = new DurableStore<>(name, codec);
+			try {
+				store.restore();
+			} catch (RuntimeException re) {
+				// Corrupt, or holding elements that can no longer be decoded (e.g. a class of the code was renamed).
+				// Keep the file for inspection and start empty, rather than failing every open of this name.
+				store.closeChannel();
+				Path aside = store.file.resolveSibling(store.file.getFileName() + ".unreadable-" + System.currentTimeMillis());
+				logger.warn("Unable to restore state '" + name + "', it has been moved to " + aside + " and the state starts empty", re);
+				Files.move(store.file, aside);
+				store = new DurableStore<>(name, codec);
+				store.restore();
+			}
+			openStores.add(store);
+			return store;
+		} catch (IOException | RuntimeException e) {
+			release(name);
+			throw new IllegalStateException("Unable to open state '" + name + "' in " + stateDirectory, e);
+		}
+	}
+
+	private static void acquire(String name) {
+		long deadline = System.currentTimeMillis() + handoverTimeoutMillis;
+		synchronized (openNames) {
+			while (!openNames.add(name)) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					throw new IllegalStateException("State '" + name + "' is already in use");
+				}
+				logger.debug("Waiting for state '{}' to be closed", name);
+				try {
+					openNames.wait(remaining);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted waiting for state '" + name + "'", ie);
+				}
+			}
+		}
+	}
+
+	private static void release(String name) {
+		synchronized (openNames) {
+			openNames.remove(name);
+			openNames.notifyAll();
+		}
+	}
+
+	/**
+	 * Force all the open stores with changes to disk.
+	 */
+	static void syncAll() {
+		for (DurableStore<?> store : openStores) {
+			store.sync();
+		}
+	}
+
+	private DurableStore(String name, ElementCodec<T> codec) throws IOException {
+		this.name = name;
+		this.codec = codec;
+		Files.createDirectories(stateDirectory);
+		file = stateDirectory.resolve(name.replaceAll("[^A-Za-z0-9._-]", "_") + ".state");
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			long existingSize = channel.size();
+			buffer = channel.map(MapMode.READ_WRITE, 0, Math.max(existingSize, INITIAL_SIZE));
+			long end = existingSize >= HEADER_SIZE ? buffer.getLong(0) : 0;
+			if (end < HEADER_SIZE || end > existingSize) {
+				// New, or not a valid state file
+				end = HEADER_SIZE;
+				buffer.putLong(0, end);
+			}
+			buffer.position((int) end);
+		} catch (IOException | RuntimeException e) {
+			closeChannel();
+			throw e;
+		}
+	}
+
+	/**
+	 * Decode the elements held, which checks they can all be read.
+	 */
+	private void restore() {
+		size = readAll().size();
+		if (size != 0) {
+			logger.info("Restored {} elements of state '{}'", size, name);
+		}
+	}
+
+	/**
+	 * @param element the element to store
+	 */
+	public void append(T element) {
+		encodingBuffer.reset();
+		try {
+			codec.encode(element, encoder);
+			encoder.flush();
+		} catch (IOException ioe) {
+			throw new IllegalStateException("Unable to encode " + element, ioe);
+		}
+		int length = encodingBuffer.size();
+		ensureCapacity(length + 4);
+		buffer.putInt(length);
+		buffer.put(encodingBuffer.bytes(), 0, length);
+		buffer.putLong(0, buffer.position());
+		size++;
+		dirty = true;
+	}
+
+	/**
+	 * @return the elements stored, in the order they were appended
+	 */
+	public List<T> readAll() {
+		List<T> elements = new ArrayList<>(size);
+		ByteBuffer contents = buffer.duplicate();
+		contents.limit((int) buffer.getLong(0));
+		contents.position(HEADER_SIZE);
+		while (contents.hasRemaining()) {
+			if (contents.remaining() < 4) {
+				throw new IllegalStateException("Truncated element " + elements.size() + " of state '" + name + "'");
+			}
+			int length = contents.getInt();
+			if (length < 0 || length > contents.remaining()) {
+				throw new IllegalStateException("Bad length " + length + " for element " + elements.size() + " of state '" + name + "'");
+			}
+			ByteBuffer encoded = contents.slice();
+			encoded.limit(length);
+			contents.position(contents.position() + length);
+			try {
+				elements.add(codec.decode(new DataInputStream(new ByteBufferInputStream(encoded))));
+			} catch (IOException ioe) {
+				throw new IllegalStateException("Unable to decode element " + elements.size() + " of state '" + name + "'", ioe);
+			}
+		}
+		return elements;
+	}
+
+	/**
+	 * @return the number of elements stored
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Remove all the elements.
+	 */
+	public void clear() {
+		buffer.putLong(0, HEADER_SIZE);
+		buffer.position(HEADER_SIZE);
+		size = 0;
+		dirty = true;
+	}
+
+	/**
+	 * Close the store, the elements it holds are kept for when it is next opened.
+	 */
+	public void close() {
+		if (openStores.remove(this)) {
+			sync();
+			closeChannel();
+			release(name);
+		}
+	}
+
+	private void closeChannel() {
+		try {
+			channel.close();
+		} catch (IOException ioe) {
+			logger.warn("Problem closing state '" + name + "'", ioe);
+		}
+	}
+
+	private void sync() {
+		if (dirty) {
+			dirty = false;
+			buffer.force();
+		}
+	}
+
+	private void ensureCapacity(int needed) {
+		if (buffer.remaining() < needed) {
+			int position = buffer.position();
+			long newSize = Math.max((long) buffer.capacity() * 2, position + needed);
+			if (newSize > Integer.MAX_VALUE) {
+				throw new IllegalStateException("State '" + name + "' is too large");
+			}
+			try {
+				buffer = channel.map(MapMode.READ_WRITE, 0, newSize);
+			} catch (IOException ioe) {
+				throw new IllegalStateException("Unable to grow state '" + name + "'", ioe);
+			}
+			buffer.position(position);
+		}
+	}
+
+}
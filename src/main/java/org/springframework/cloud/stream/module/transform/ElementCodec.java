@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Converts elements to and from bytes, so they can be kept off the Java heap (see {@link OffHeapWindows}).
+ *
+ * @author Andy Clement
+ */
+public interface ElementCodec<T> {
+
+	/**
+	 * @param element the element to encode
+	 * @param output where to write the encoded form
+	 * @throws IOException if the element cannot be encoded
+	 */
+	void encode(T element, DataOutput output) throws IOException;
+
+	/**
+	 * @param input the encoded form, exactly as written by {@link #encode(Object, DataOutput)}
+	 * @return the element
+	 * @throws IOException if the element cannot be decoded
+	 */
+	T decode(DataInput input) throws IOException;
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of durations. Durations are recorded in nanoseconds into power of two sized
+ * buckets, so a percentile is accurate to within a factor of two, which is enough to see where
+ * time goes without any per sample allocation.
+ *
+ * @author Andy Clement
+ */
+public class LatencyHistogram {
+
+	// Bucket i holds durations in the range [2^(i-1), 2^i) nanoseconds, bucket 0 holds zero durations
+	private final AtomicLongArray buckets = new AtomicLongArray(65);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong total = new AtomicLong();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param nanos the duration to record
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+		max.accumulateAndGet(nanos, Math::max);
+	}
+
+	/**
+	 * @return the number of durations recorded
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return the mean duration in milliseconds
+	 */
+	public double getMean() {
+		long samples = count.get();
+		return samples == 0 ? 0d : toMillis(total.get() / samples);
+	}
+
+	/**
+	 * @return the longest duration in milliseconds
+	 */
+	public double getMax() {
+		return toMillis(max.get());
+	}
+
+	/**
+	 * @param percentile the percentile of interest, between 0 and 100
+	 * @return the (upper bound of the bucket holding the) duration in milliseconds below which that percentage of the durations fall
+	 */
+	public double getPercentile(double percentile) {
+		long samples = count.get();
+		if (samples == 0) {
+			return 0d;
+		}
+		long threshold = (long) Math.ceil(samples * percentile / 100d);
+		long seen = 0;
+		for (int i = 0; i < buckets.length(); i++) {
+			seen += buckets.get(i);
+			if (seen >= threshold) {
+				return i == 0 ? 0d : toMillis(Math.min(max.get(), i == 64 ? Long.MAX_VALUE : (1L << i) - 1));
+			}
+		}
+		return getMax();
+	}
+
+	private static double toMillis(long nanos) {
+		return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import org.springframework.cloud.stream.annotation.rxjava.RxJavaProcessor;
+
+import rx.Observable;
+
+/**
+ * Wraps a processor, recording metrics for the elements passing through it (see {@link StageMetrics}).
+ * The downstream time of the stage is the time taken by the binder to accept each output message.
+ *
+ * @author Andy Clement
+ */
+public class MeteredRxJavaProcessor implements RxJavaProcessor<Object, Object> {
+
+	private final RxJavaProcessor<Object, Object> delegate;
+
+	private final StageMetrics stageMetrics;
+
+	public MeteredRxJavaProcessor(RxJavaProcessor<Object, Object> delegate, StageMetrics stageMetrics) {
+		this.delegate = delegate;
+		this.stageMetrics = stageMetrics;
+	}
+
+	@Override
+	public Observable<Object> process(Observable<Object> input) {
+		return input.compose(stageMetrics.measure(delegate::process));
+	}
+
+	/**
+	 * @return the processor this one wraps
+	 */
+	public RxJavaProcessor<Object, Object> getDelegate() {
+		return delegate;
+	}
+
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+import rx.Observable;
+import rx.Producer;
+import rx.Subscriber;
+import rx.exceptions.Exceptions;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Operators that aggregate consecutive fixed size windows of a stream into a single number. Compared
+ * to <tt>window(n).flatMap(MathObservable::averageInteger)</tt> no Observable is created per window and the
+ * numeric value of each element is extracted (e.g. <tt>Integer::parseInt</tt>) and accumulated as a primitive,
+ * so the only object allocated is the result for each window. These are statically imported into the code
+ * template, for example:
+ * <pre>return input -> input.compose(averageOfInts(3, s -> Integer.parseInt((String)s)));</pre>
+ * If the stream completes part way through a window the result for that partial window is emitted (unless
+ * the accumulator is durable, then the partial window is kept for the next subscriber).
+ *
+ * @author Andy Clement
+ */
+public class NumericWindows {
+
+	/**
+	 * @param count the number of elements in each window
+	 * @param valueFunction extracts the value from each element
+	 * @return a transformer producing the (int) sum of each window
+	 */
+	public static <T> Observable.Transformer<T, Integer> sumOfInts(int count, ToIntFunction<? super T> valueFunction) {
+		return windows(count, () -> new Accumulator<T, Integer>() {
+			int sum;
+			public void accumulate(T element) {
+				sum += valueFunction.applyAsInt(element);
+			}
+			public Integer result(int elements) {
+				int result = sum;
+				sum = 0;
+				return result;
+			}
+		});
+	}
+
+	/**
+	 * @param count the number of elements in each window
+	 * @param valueFunction extracts the value from each element
+	 * @return a transformer producing the (long) sum of each window
+	 */
+	public static <T> Observable.Transformer<T, Long> sumOfLongs(int count, ToLongFunction<? super T> valueFunction) {
+		return windows(count, () -> new Accumulator<T, Long>() {
+			long sum;
+			public void accumulate(T element) {
+				sum += valueFunction.applyAsLong(element);
+			}
+			public Long result(int elements) {
+				long result = sum;
+				sum = 0;
+				return result;
+			}
+		});
+	}
+
+	/**
+	 * @param count the number of elements in each window
+	 * @param valueFunction extracts the value from each element
+	 * @return a transformer producing the (double) sum of each window
+	 */
+	public static <T> Observable.Transformer<T, Double> sumOfDoubles(int count, ToDoubleFunction<? super T> valueFunction) {
+		return windows(count, () -> new Accumulator<T, Double>() {
+			double sum;
+			public void accumulate(T element) {
+				sum += valueFunction.applyAsDouble(element);
+			}
+			public Double result(int elements) {
+				double result = sum;
+				sum = 0;
+				return result;
+			}
+		});
+	}
+
+	/**
+	 * @param count the number of elements in each window
+	 * @param valueFunction extracts the value from each element
+	 * @return a transformer producing the average of each window, using integer division (as MathObservable.averageInteger does)
+	 */
+	public static <T> Observable.Transformer<T, Integer> averageOfInts(int count, ToIntFunction<? super T> valueFunction) {
+		return windows(count, () -> new Accumulator<T, Integer>() {
+			long sum;
+			public void accumulate(T element) {
+				sum += valueFunction.applyAsInt(element);
+			}
+			public Integer result(int elements) {
+				int result = (int) (sum / elements);
+				sum = 0;
+				return result;
+			}
+		});
+	}
+
+	/**
+	 * @param count the number of elements in each window
+	 * @param valueFunction extracts the value from each element
+	 * @return a transformer producing the average of each window, using integer division (as MathObservable.averageLong does)
+	 */
+	public static <T> Observable.Transformer<T, Long> averageOfLongs(int count, ToLongFunction<? super T> valueFunction) {
+		return windows(count, () -> new Accumulator<T, Long>() {
+			long sum;
+			public void accumulate(T element) {
+				sum += valueFunction.applyAsLong(element);
+			}
+			public Long result(int elements) {
+				long result = sum / elements;
+				sum = 0;
+				return result;
+			}
+		});
+	}
+
+	/**
+	 * @param count the number of elements in each window
+	 * @param valueFunction extracts the value from each element
+	 * @return a transformer producing the average of each window
+	 */
+	public static <T> Observable.Transformer<T, Double> averageOfDoubles(int count, ToDoubleFunction<? super T> valueFunction) {
+		return windows(count, () -> new Accumulator<T, Double>() {
+			double sum;
+			public void accumulate(T element) {
+				sum += valueFunction.applyAsDouble(element);
+			}
+			public Double result(int elements) {
+				double result = sum / elements;
+				sum = 0;
+				return result;
+			}
+		});
+	}
+
+	/**
+	 * Accumulates the values of the elements in a window, an instance is used by one subscription.
+	 */
+	interface Accumulator<T, R> {
+
+		void accumulate(T element);
+
+		/**
+		 * @param elements how many elements were accumulated (less than the window size for a final partial window)
+		 * @return the result for the window, the accumulated state should be reset
+		 */
+		R result(int elements);
+
+		/**
+		 * @return how many elements of the first window the accumulator already holds (e.g. restored state)
+		 */
+		default int pending() {
+			return 0;
+		}
+
+		/**
+		 * @return true if the accumulated elements outlive the subscription (e.g. durable state), a partial window
+		 * is then left for the next subscriber rather than emitted on completion
+		 */
+		default boolean isDurable() {
+			return false;
+		}
+
+		/**
+		 * Called when the stream terminates or the subscription ends, to free any resources held. May be called more
+		 * than once.
+		 */
+		default void release() {
+		}
+
+	}
+
+	static <T, R> Observable.Transformer<T, R> windows(int count, Supplier<Accumulator<T, R>> accumulatorSupplier) {
+		if (count <= 0) {
+			throw new IllegalArgumentException("Window size must be greater than zero: " + count);
+		}
+		return source -> source.lift(child -> {
+			Accumulator<T, R> accumulator = accumulatorSupplier.get();
+			WindowSubscriber<T, R> parent = new WindowSubscriber<T, R>(child, count, accumulator);
+			child.add(parent);
+			child.add(Subscriptions.create(accumulator::release));
+			child.setProducer(new Producer() {
+				@Override
+				public void request(long n) {
+					if (n < 0) {
+						throw new IllegalArgumentException("n >= 0 required but it was " + n);
+					}
+					if (n > 0) {
+						// Each result needs a window of elements, careful not to overflow
+						parent.requestMore(n >= Long.MAX_VALUE / count ? Long.MAX_VALUE : n * count);
+					}
+				}
+			});
+			return parent;
+		});
+	}
+
+	/**
+	 * Accumulates elements until a window is full then emits the result. Each request from downstream for
+	 * n results becomes a request upstream for n windows worth of elements.
+	 */
+	static class WindowSubscriber<T, R> extends Subscriber<T> {
+
+		private final Subscriber<? super R> child;
+
+		private final int count;
+
+		private final Accumulator<T, R> accumulator;
+
+		private int elements;
+
+		private boolean started;
+
+		private boolean done;
+
+		WindowSubscriber(Subscriber<? super R> child, int count, Accumulator<T, R> accumulator) {
+			this.child = child;
+			this.count = count;
+			this.accumulator = accumulator;
+		}
+
+		@Override
+		public void onStart() {
+			// Nothing is requested until the child requests
+			request(0);
+		}
+
+		@Override
+		public void onNext(T element) {
+			if (done) {
+				return;
+			}
+			R result = null;
+			try {
+				if (!started) {
+					// Not asked on subscribe, restoring durable state may wait for a previous subscriber to finish with it
+					started = true;
+					elements = accumulator.pending();
+				}
+				// The value function (or codec) is user code
+				accumulator.accumulate(element);
+				if (++elements == count) {
+					elements = 0;
+					result = accumulator.result(count);
+				}
+			} catch (Throwable t) {
+				unsubscribe();
+				Exceptions.throwOrReport(t, this, element);
+				return;
+			}
+			if (result != null) {
+				child.onNext(result);
+			}
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			if (done) {
+				return;
+			}
+			done = true;
+			accumulator.release();
+			child.onError(throwable);
+		}
+
+		@Override
+		public void onCompleted() {
+			if (done) {
+				return;
+			}
+			if (elements != 0 && !accumulator.isDurable()) {
+				R result;
+				try {
+					result = accumulator.result(elements);
+				} catch (Throwable t) {
+					Exceptions.throwOrReport(t, this);
+					return;
+				}
+				child.onNext(result);
+			}
+			done = true;
+			// Release now, not on unsubscribe, so durable state is free for the next subscriber
+			accumulator.release();
+			child.onCompleted();
+		}
+
+		void requestMore(long n) {
+			request(n);
+		}
+	}
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The fixed size segments of memory, outside the Java heap, that off heap windows keep their elements in.
+ * Segments are direct buffers until the configured amount of direct memory is in use, then they are memory
+ * mapped temporary files (so the operating system pages them to disk as required). Released segments are
+ * kept for reuse, since allocating them is expensive and the memory is only freed by the garbage collector.
+ * The bytes allocated are published as the gauges prxj.offheap.direct.bytes and prxj.offheap.mapped.bytes.
+ *
+ * @author Andy Clement
+ */
+public class OffHeapSegments {
+
+	private static Logger logger = LoggerFactory.getLogger(OffHeapSegments.class);
+
+	public static final long DEFAULT_MAX_DIRECT_MEMORY = 64 * 1024 * 1024;
+
+	public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+	private static volatile long maxDirectMemory = DEFAULT_MAX_DIRECT_MEMORY;
+
+	private static volatile int segmentSize = DEFAULT_SEGMENT_SIZE;
+
+	private static volatile Path directory = Paths.get(System.getProperty("java.io.tmpdir"));
+
+	private static Queue<ByteBuffer> freeSegments = new ConcurrentLinkedQueue<>();
+
+	private static AtomicLong directBytes = ProcessorMetrics.gauge("offheap.direct.bytes");
+
+	private static AtomicLong mappedBytes = ProcessorMetrics.gauge("offheap.mapped.bytes");
+
+	/**
+	 * Configure the segments allocated from now on, segments already allocated are unaffected.
+	 *
+	 * @param maxDirect the maximum number of bytes of direct memory to allocate, beyond this segments are memory mapped files
+	 * @param size the size of each segment (elements larger than this are given a segment of their own)
+	 * @param mappedFileDirectory the directory the memory mapped files are created in, null for the default temporary directory
+	 */
+	public static void configure(long maxDirect, int size, String mappedFileDirectory) {
+		if (size != segmentSize) {
+			// Free segments are the old size, drop them
+			ByteBuffer segment;
+			while ((segment = freeSegments.poll()) != null) {
+				(segment instanceof MappedByteBuffer ? mappedBytes : directBytes).addAndGet(-segment.capacity());
+			}
+		}
+		maxDirectMemory = maxDirect;
+		segmentSize = size;
+		directory = Paths.get(mappedFileDirectory != null ? mappedFileDirectory : System.getProperty("java.io.tmpdir"));
+	}
+
+	/**
+	 * @param minimumSize the number of bytes needed
+	 * @return a cleared segment, at least that large
+	 */
+	public static ByteBuffer acquire(int minimumSize) {
+		if (minimumSize <= segmentSize) {
+			ByteBuffer segment = freeSegments.poll();
+			if (segment != null) {
+				segment.clear();
+				return segment;
+			}
+		}
+		int size = Math.max(minimumSize, segmentSize);
+		if (directBytes.addAndGet(size) <= maxDirectMemory) {
+			return ByteBuffer.allocateDirect(size);
+		}
+		directBytes.addAndGet(-size);
+		return map(size);
+	}
+
+	/**
+	 * @param segment a segment that is no longer in use
+	 */
+	public static void release(ByteBuffer segment) {
+		if (segment.capacity() == segmentSize) {
+			freeSegments.add(segment);
+		} else {
+			// An oversized segment, not worth keeping, the memory is freed when it is collected
+			(segment instanceof MappedByteBuffer ? mappedBytes : directBytes).addAndGet(-segment.capacity());
+		}
+	}
+
+	private static ByteBuffer map(int size) {
+		try {
+			Path file = Files.createTempFile(directory, "prxj-", ".segment");
+			// The mapping remains valid once the channel is closed (and the file deleted)
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+					StandardOpenOption.DELETE_ON_CLOSE)) {
+				MappedByteBuffer segment = channel.map(MapMode.READ_WRITE, 0, size);
+				mappedBytes.addAndGet(size);
+				logger.debug("Mapped a {} byte segment, {} mapped bytes in total", size, mappedBytes.get());
+				return segment;
+			}
+		} catch (IOException ioe) {
+			throw new IllegalStateException("Unable to map an off heap segment in " + directory, ioe);
+		}
+	}
+
+}
@@ -0,0 +1,520 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.stream.module.transform.NumericWindows.Accumulator;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Scheduler.Worker;
+import rx.Subscriber;
+import rx.exceptions.Exceptions;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Operators like <tt>buffer()</tt> that keep the pending elements of each buffer off the Java heap, encoded
+ * in the segments managed by {@link OffHeapSegments}, and only decode them when the buffer is emitted. Large
+ * buffers then do not fill the old generation. These are statically imported into the code template, for
+ * example:
+ * <pre>return input -> input.compose(offHeapBuffer(100000)).map(list -> list.size());</pre>
+ * The durableBuffer variants keep the pending elements in a {@link DurableStore} instead, so they survive a restart.
+ * The default codec handles null, String, Integer, Long, Double, byte[] and (using java serialization) any
+ * other Serializable element, a codec can be supplied for other types or a more compact encoding. Serialized
+ * classes are resolved using the context class loader when the buffer was created, the processor is built with
+ * that set to the loader of the code, so classes declared in the code can be buffered.
+ *
+ * @author Andy Clement
+ */
+public class OffHeapWindows {
+
+	private static Logger logger = LoggerFactory.getLogger(OffHeapWindows.class);
+
+	/**
+	 * @param count the number of elements in each buffer
+	 * @return a transformer producing lists of count elements (the last one may be smaller)
+	 */
+	public static <T> Observable.Transformer<T, List<T>> offHeapBuffer(int count) {
+		return offHeapBuffer(count, defaultCodec());
+	}
+
+	/**
+	 * @param count the number of elements in each buffer
+	 * @param codec converts elements to and from bytes
+	 * @return a transformer producing lists of count elements (the last one may be smaller)
+	 */
+	public static <T> Observable.Transformer<T, List<T>> offHeapBuffer(int count, ElementCodec<T> codec) {
+		return NumericWindows.windows(count, () -> new StoreAccumulator<>(codec));
+	}
+
+	/**
+	 * @param timespan how long each buffer collects elements for
+	 * @param unit the unit of the timespan
+	 * @param count the maximum number of elements in each buffer, a full buffer is emitted without waiting
+	 * @return a transformer producing a list of the elements received in each timespan (empty lists are not emitted)
+	 */
+	public static <T> Observable.Transformer<T, List<T>> offHeapBuffer(long timespan, TimeUnit unit, int count) {
+		return offHeapBuffer(timespan, unit, count, defaultCodec());
+	}
+
+	/**
+	 * @param timespan how long each buffer collects elements for
+	 * @param unit the unit of the timespan
+	 * @param count the maximum number of elements in each buffer, a full buffer is emitted without waiting
+	 * @param codec converts elements to and from bytes
+	 * @return a transformer producing a list of the elements received in each timespan (empty lists are not emitted)
+	 */
+	public static <T> Observable.Transformer<T, List<T>> offHeapBuffer(long timespan, TimeUnit unit, int count,
+			ElementCodec<T> codec) {
+		return timedWindows(timespan, unit, count, Schedulers.computation(), () -> new StoreAccumulator<>(codec));
+	}
+
+	/**
+	 * Like {@link #offHeapBuffer(int)} but the pending elements are kept in the named durable state, so a partially
+	 * filled buffer survives a restart. Use a different name for each buffer (e.g. include the key for a buffer per
+	 * group). Completion does not emit a partial buffer, it is kept for the next subscriber to the same name (e.g.
+	 * the processor replacing this one), which waits for this one to finish with the state. If no state directory
+	 * is configured this is an ordinary off heap buffer.
+	 *
+	 * @param name the name of the state
+	 * @param count the number of elements in each buffer
+	 * @return a transformer producing lists of count elements (the last one may be smaller)
+	 */
+	public static <T> Observable.Transformer<T, List<T>> durableBuffer(String name, int count) {
+		return durableBuffer(name, count, defaultCodec());
+	}
+
+	/**
+	 * @param name the name of the state
+	 * @param count the number of elements in each buffer
+	 * @param codec converts elements to and from bytes
+	 * @return a transformer producing lists of count elements (the last one may be smaller)
+	 * @see #durableBuffer(String, int)
+	 */
+	public static <T> Observable.Transformer<T, List<T>> durableBuffer(String name, int count, ElementCodec<T> codec) {
+		return NumericWindows.windows(count, () -> durableAccumulator(name, codec));
+	}
+
+	/**
+	 * @param name the name of the state
+	 * @param timespan how long each buffer collects elements for
+	 * @param unit the unit of the timespan
+	 * @param count the maximum number of elements in each buffer, a full buffer is emitted without waiting
+	 * @return a transformer producing a list of the elements received in each timespan (empty lists are not emitted)
+	 * @see #durableBuffer(String, int)
+	 */
+	public static <T> Observable.Transformer<T, List<T>> durableBuffer(String name, long timespan, TimeUnit unit,
+			int count) {
+		return durableBuffer(name, timespan, unit, count, defaultCodec());
+	}
+
+	/**
+	 * @param name the name of the state
+	 * @param timespan how long each buffer collects elements for
+	 * @param unit the unit of the timespan
+	 * @param count the maximum number of elements in each buffer, a full buffer is emitted without waiting
+	 * @param codec converts elements to and from bytes
+	 * @return a transformer producing a list of the elements received in each timespan (empty lists are not emitted)
+	 * @see #durableBuffer(String, int)
+	 */
+	public static <T> Observable.Transformer<T, List<T>> durableBuffer(String name, long timespan, TimeUnit unit,
+			int count, ElementCodec<T> codec) {
+		return timedWindows(timespan, unit, count, Schedulers.computation(), () -> durableAccumulator(name, codec));
+	}
+
+	/**
+	 * @return a codec for common element types, resolving serialized classes with the current context class loader
+	 */
+	public static <T> ElementCodec<T> defaultCodec() {
+		return defaultCodec(Thread.currentThread().getContextClassLoader());
+	}
+
+	/**
+	 * @param classLoader the loader serialized classes are resolved with (falling back to the usual
+	 * java serialization resolution), or null for just the usual resolution
+	 * @return a codec for common element types
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> ElementCodec<T> defaultCodec(ClassLoader classLoader) {
+		return (ElementCodec<T>) (classLoader == null ? DefaultCodec.INSTANCE : new DefaultCodec(classLoader));
+	}
+
+	static <T, R> Observable.Transformer<T, R> timedWindows(long timespan, TimeUnit unit, int count,
+			Scheduler scheduler, Supplier<Accumulator<T, R>> accumulatorSupplier) {
+		if (count <= 0) {
+			throw new IllegalArgumentException("Window size must be greater than zero: " + count);
+		}
+		return source -> source.lift(child -> {
+			Accumulator<T, R> accumulator = accumulatorSupplier.get();
+			TimedWindowSubscriber<T, R> parent = new TimedWindowSubscriber<T, R>(child, count, accumulator);
+			child.add(parent);
+			Worker worker = scheduler.createWorker();
+			parent.add(worker);
+			parent.add(Subscriptions.create(accumulator::release));
+			worker.schedulePeriodically(parent::emitWindow, timespan, timespan, unit);
+			return parent;
+		});
+	}
+
+	/**
+	 * Stores elements off heap until the window is complete.
+	 */
+	static class StoreAccumulator<T> implements Accumulator<T, List<T>> {
+
+		private final SegmentStore<T> store;
+
+		StoreAccumulator(ElementCodec<T> codec) {
+			this.store = new SegmentStore<>(codec);
+		}
+
+		public void accumulate(T element) {
+			store.append(element);
+		}
+
+		public List<T> result(int elements) {
+			List<T> result = store.readAll();
+			store.clear();
+			return result;
+		}
+
+		public void release() {
+			store.clear();
+		}
+	}
+
+	private static <T> Accumulator<T, List<T>> durableAccumulator(String name, ElementCodec<T> codec) {
+		if (!DurableStore.isAvailable()) {
+			logger.warn("No state directory is configured, the state of '{}' will not survive a restart", name);
+			return new StoreAccumulator<>(codec);
+		}
+		return new DurableAccumulator<>(name, codec);
+	}
+
+	/**
+	 * Stores elements in durable state until the window is complete. The state is closed, not cleared, when
+	 * the stream terminates so a partial window is restored next time. It is opened on first use rather than
+	 * on subscribe, as the previous subscriber (e.g. the processor being replaced) may still be draining.
+	 */
+	static class DurableAccumulator<T> implements Accumulator<T, List<T>> {
+
+		private final String name;
+
+		private final ElementCodec<T> codec;
+
+		private DurableStore<T> store;
+
+		DurableAccumulator(String name, ElementCodec<T> codec) {
+			this.name = name;
+			this.codec = codec;
+		}
+
+		public void accumulate(T element) {
+			store().append(element);
+		}
+
+		public List<T> result(int elements) {
+			List<T> result = store().readAll();
+			store.clear();
+			return result;
+		}
+
+		public int pending() {
+			return store().size();
+		}
+
+		public boolean isDurable() {
+			return true;
+		}
+
+		public void release() {
+			if (store != null) {
+				store.close();
+			}
+		}
+
+		private DurableStore<T> store() {
+			if (store == null) {
+				store = DurableStore.open(name, codec);
+			}
+			return store;
+		}
+	}
+
+	/**
+	 * Emits a window when it is full or when the timer fires, whichever is first. Input and the timer arrive
+	 * on different threads so both are handled holding the lock. There is no backpressure, as for <tt>buffer()</tt>
+	 * with a timespan.
+	 */
+	static class TimedWindowSubscriber<T, R> extends Subscriber<T> {
+
+		private final Subscriber<? super R> child;
+
+		private final int count;
+
+		private final Accumulator<T, R> accumulator;
+
+		private int elements;
+
+		private boolean done;
+
+		private boolean started;
+
+		TimedWindowSubscriber(Subscriber<? super R> child, int count, Accumulator<T, R> accumulator) {
+			this.child = child;
+			this.count = count;
+			this.accumulator = accumulator;
+		}
+
+		@Override
+		public synchronized void onNext(T element) {
+			if (done) {
+				return;
+			}
+			try {
+				start();
+				// The codec is user code
+				accumulator.accumulate(element);
+			} catch (Throwable t) {
+				unsubscribe();
+				Exceptions.throwOrReport(t, this, element);
+				return;
+			}
+			if (++elements == count) {
+				emitWindow();
+			}
+		}
+
+		@Override
+		public synchronized void onError(Throwable throwable) {
+			if (!done) {
+				done = true;
+				accumulator.release();
+				child.onError(throwable);
+			}
+		}
+
+		@Override
+		public synchronized void onCompleted() {
+			if (!done && !accumulator.isDurable()) {
+				emitWindow();
+			}
+			// Unless emitting the last window failed
+			if (!done) {
+				done = true;
+				// Release now, not on unsubscribe, so durable state is free for the next subscriber
+				accumulator.release();
+				child.onCompleted();
+			}
+		}
+
+		synchronized void emitWindow() {
+			R result;
+			try {
+				start();
+				if (elements == 0 || done) {
+					return;
+				}
+				int windowElements = elements;
+				elements = 0;
+				result = accumulator.result(windowElements);
+			} catch (Throwable t) {
+				unsubscribe();
+				Exceptions.throwOrReport(t, this);
+				return;
+			}
+			child.onNext(result);
+		}
+
+		private void start() {
+			if (!started && !done) {
+				// Not asked on subscribe, restoring durable state may wait for a previous subscriber to finish with it
+				started = true;
+				elements = accumulator.pending();
+			}
+		}
+	}
+
+	/**
+	 * Tags each element with its type, then writes it in the most compact form for that type.
+	 */
+	static class DefaultCodec implements ElementCodec<Object> {
+
+		static final DefaultCodec INSTANCE = new DefaultCodec(null);
+
+		private static final byte NULL = 0, STRING = 1, INTEGER = 2, LONG = 3, DOUBLE = 4, BYTES = 5, SERIALIZED = 6;
+
+		private final ClassLoader classLoader;
+
+		DefaultCodec(ClassLoader classLoader) {
+			this.classLoader = classLoader;
+		}
+
+		@Override
+		public void encode(Object element, DataOutput output) throws IOException {
+			if (element == null) {
+				output.writeByte(NULL);
+			} else if (element instanceof String) {
+				output.writeByte(STRING);
+				writeBytes(((String) element).getBytes(StandardCharsets.UTF_8), output);
+			} else if (element instanceof Integer) {
+				output.writeByte(INTEGER);
+				output.writeInt((Integer) element);
+			} else if (element instanceof Long) {
+				output.writeByte(LONG);
+				output.writeLong((Long) element);
+			} else if (element instanceof Double) {
+				output.writeByte(DOUBLE);
+				output.writeDouble((Double) element);
+			} else if (element instanceof byte[]) {
+				output.writeByte(BYTES);
+				writeBytes((byte[]) element, output);
+			} else if (element instanceof Serializable) {
+				output.writeByte(SERIALIZED);
+				ObjectOutputStream oos = new ObjectOutputStream(new DataOutputAdapter(output));
+				oos.writeObject(element);
+				oos.flush();
+			} else {
+				throw new IOException("No encoding for " + element.getClass().getName() + ", supply an ElementCodec");
+			}
+		}
+
+		@Override
+		public Object decode(DataInput input) throws IOException {
+			byte tag = input.readByte();
+			switch (tag) {
+			case NULL:
+				return null;
+			case STRING:
+				return new String(readBytes(input), StandardCharsets.UTF_8);
+			case INTEGER:
+				return input.readInt();
+			case LONG:
+				return input.readLong();
+			case DOUBLE:
+				return input.readDouble();
+			case BYTES:
+				return readBytes(input);
+			case SERIALIZED:
+				try {
+					return new ClassLoaderObjectInputStream(input instanceof InputStream ? (InputStream) input
+							: new DataInputAdapter(input), classLoader).readObject();
+				} catch (ClassNotFoundException cnfe) {
+					throw new IOException(cnfe);
+				}
+			default:
+				throw new IOException("Unknown element tag " + tag);
+			}
+		}
+
+		private static void writeBytes(byte[] bytes, DataOutput output) throws IOException {
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+
+		private static byte[] readBytes(DataInput input) throws IOException {
+			byte[] bytes = new byte[input.readInt()];
+			input.readFully(bytes);
+			return bytes;
+		}
+	}
+
+	/**
+	 * Resolves classes with a specific loader first. Left to itself ObjectInputStream uses the nearest loader on the
+	 * call stack, which does not see the classes of the code (they are in the loader of their generation).
+	 */
+	static class ClassLoaderObjectInputStream extends ObjectInputStream {
+
+		private final ClassLoader classLoader;
+
+		ClassLoaderObjectInputStream(InputStream input, ClassLoader classLoader) throws IOException {
+			super(input);
+			this.classLoader = classLoader;
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass descriptor) throws IOException, ClassNotFoundException {
+			if (classLoader != null) {
+				try {
+					return Class.forName(descriptor.getName(), false, classLoader);
+				} catch (ClassNotFoundException cnfe) {
+					// Try the usual way
+				}
+			}
+			return super.resolveClass(descriptor);
+		}
+	}
+
+	/**
+	 * Lets java serialization write to a DataOutput.
+	 */
+	static class DataOutputAdapter extends OutputStream {
+
+		private final DataOutput output;
+
+		DataOutputAdapter(DataOutput output) {
+			this.output = output;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			output.write(b);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			output.write(bytes, offset, length);
+		}
+	}
+
+	/**
+	 * Lets java serialization read from a DataInput.
+	 */
+	static class DataInputAdapter extends InputStream {
+
+		private final DataInput input;
+
+		DataInputAdapter(DataInput input) {
+			this.input = input;
+		}
+
+		@Override
+		public int read() throws IOException {
+			try {
+				return input.readUnsignedByte();
+			} catch (EOFException eofe) {
+				return -1;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Scheduler.Worker;
+import rx.Subscriber;
+import rx.exceptions.Exceptions;
+import rx.exceptions.OnErrorThrowable;
+import rx.functions.Func1;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Operators that apply a stateless function to the elements of a stream in parallel, on the workers of a
+ * scheduler, whilst keeping the original order. Results are held in a bounded reorder buffer until all the
+ * results before them have been emitted, if the buffer is full the thread supplying elements is blocked (the
+ * binder does not respond to backpressure). The occupancy of the buffer is published as the metric
+ * <tt>prxj.reorder.[name].occupancy</tt>. These are statically imported into the code template, for example:
+ * <pre>return input -> input.compose(parallelMap(s -> expensiveParse((String)s)));</pre>
+ * The function must not depend on state shared between elements, as elements are processed concurrently.
+ *
+ * @author Andy Clement
+ */
+public class ParallelOperators {
+
+	public static final int DEFAULT_BUFFER_SIZE = 256;
+
+	public static final String DEFAULT_NAME = "parallel";
+
+	// Stored in the reorder buffer for elements that are filtered out and for null results
+	private static final Object SKIP = new Object();
+
+	private static final Object NULL = new Object();
+
+	/**
+	 * @param mapper the function to apply to each element
+	 * @return a transformer applying the function on as many computation workers as there are processors
+	 */
+	public static <T, R> Observable.Transformer<T, R> parallelMap(Func1<? super T, ? extends R> mapper) {
+		return parallelMap(DEFAULT_NAME, Runtime.getRuntime().availableProcessors(), DEFAULT_BUFFER_SIZE, mapper);
+	}
+
+	/**
+	 * @param name the name to publish the reorder buffer occupancy under
+	 * @param parallelism how many elements may be processed concurrently
+	 * @param bufferSize the maximum number of elements that can be in progress or awaiting emission
+	 * @param mapper the function to apply to each element
+	 * @return a transformer applying the function in parallel
+	 */
+	public static <T, R> Observable.Transformer<T, R> parallelMap(String name, int parallelism, int bufferSize,
+			Func1<? super T, ? extends R> mapper) {
+		return ordered(name, parallelism, bufferSize, ProcessorSchedulers.scheduler(ProcessorSchedulers.COMPUTATION),
+				element -> mapper.call(element));
+	}
+
+	/**
+	 * @param predicate decides whether each element is kept
+	 * @return a transformer applying the predicate on as many computation workers as there are processors
+	 */
+	public static <T> Observable.Transformer<T, T> parallelFilter(Func1<? super T, Boolean> predicate) {
+		return parallelFilter(DEFAULT_NAME, Runtime.getRuntime().availableProcessors(), DEFAULT_BUFFER_SIZE, predicate);
+	}
+
+	/**
+	 * @param name the name to publish the reorder buffer occupancy under
+	 * @param parallelism how many elements may be processed concurrently
+	 * @param bufferSize the maximum number of elements that can be in progress or awaiting emission
+	 * @param predicate decides whether each element is kept
+	 * @return a transformer applying the predicate in parallel
+	 */
+	public static <T> Observable.Transformer<T, T> parallelFilter(String name, int parallelism, int bufferSize,
+			Func1<? super T, Boolean> predicate) {
+		return ordered(name, parallelism, bufferSize, ProcessorSchedulers.scheduler(ProcessorSchedulers.COMPUTATION),
+				element -> predicate.call(element) ? element : SKIP);
+	}
+
+	static <T, R> Observable.Transformer<T, R> ordered(String name, int parallelism, int bufferSize,
+			Scheduler scheduler, Func1<? super T, Object> function) {
+		if (parallelism <= 0 || bufferSize <= 0) {
+			throw new IllegalArgumentException("Parallelism and buffer size must be greater than zero: " + parallelism
+					+ " " + bufferSize);
+		}
+		AtomicLong occupancy = ProcessorMetrics.gauge("reorder." + name + ".occupancy");
+		return source -> source.lift(child -> {
+			ReorderingSubscriber<T, R> parent = new ReorderingSubscriber<T, R>(child, parallelism, bufferSize,
+					scheduler, function, occupancy);
+			child.add(parent);
+			child.setProducer(parent::requestMore);
+			return parent;
+		});
+	}
+
+	/**
+	 * Hands each element to a worker (round robin), workers store results in the reorder buffer slot for the
+	 * sequence number of the element. Results are emitted from the head of the buffer, in sequence order, as
+	 * they become available and are requested. Emission is serialized by the usual queue-drain approach.
+	 */
+	static class ReorderingSubscriber<T, R> extends Subscriber<T> {
+
+		private final Subscriber<? super R> child;
+
+		private final Func1<? super T, Object> function;
+
+		private final Worker[] workers;
+
+		// Guarded by itself
+		private final Object[] results;
+
+		private final AtomicLong occupancy;
+
+		private final AtomicLong requested = new AtomicLong();
+
+		private final AtomicInteger wip = new AtomicInteger();
+
+		private long submitted;
+
+		private long emitted;
+
+		private volatile boolean done;
+
+		private volatile Throwable error;
+
+		private boolean terminated;
+
+		ReorderingSubscriber(Subscriber<? super R> child, int parallelism, int bufferSize, Scheduler scheduler,
+				Func1<? super T, Object> function, AtomicLong occupancy) {
+			this.child = child;
+			this.function = function;
+			this.results = new Object[bufferSize];
+			this.occupancy = occupancy;
+			this.workers = new Worker[parallelism];
+			for (int i = 0; i < parallelism; i++) {
+				workers[i] = scheduler.createWorker();
+				add(workers[i]);
+			}
+			add(Subscriptions.create(() -> {
+				synchronized (results) {
+					// Anything still in the buffer will never be emitted
+					occupancy.addAndGet(emitted - submitted);
+					emitted = submitted;
+					results.notifyAll();
+				}
+			}));
+		}
+
+		@Override
+		public void onStart() {
+			request(results.length);
+		}
+
+		@Override
+		public void onNext(T element) {
+			long sequence;
+			synchronized (results) {
+				while (submitted - emitted >= results.length && !isUnsubscribed()) {
+					try {
+						results.wait();
+					} catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+						onError(ie);
+						return;
+					}
+				}
+				if (isUnsubscribed()) {
+					return;
+				}
+				sequence = submitted++;
+				occupancy.incrementAndGet();
+			}
+			workers[(int) (sequence % workers.length)].schedule(() -> complete(sequence, element));
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+			drain();
+		}
+
+		@Override
+		public void onCompleted() {
+			done = true;
+			drain();
+		}
+
+		void requestMore(long n) {
+			if (n < 0) {
+				throw new IllegalArgumentException("n >= 0 required but it was " + n);
+			}
+			if (n > 0) {
+				long current;
+				do {
+					current = requested.get();
+				} while (!requested.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+				drain();
+			}
+		}
+
+		private void complete(long sequence, T element) {
+			Object result;
+			try {
+				result = function.call(element);
+			} catch (Throwable t) {
+				Exceptions.throwIfFatal(t);
+				onError(OnErrorThrowable.addValueAsLastCause(t, element));
+				return;
+			}
+			synchronized (results) {
+				if (sequence >= emitted) {
+					results[(int) (sequence % results.length)] = result == null ? NULL : result;
+				}
+			}
+			drain();
+		}
+
+		@SuppressWarnings("unchecked")
+		private void drain() {
+			if (wip.getAndIncrement() != 0) {
+				return;
+			}
+			int missed = 1;
+			while (true) {
+				while (!terminated) {
+					if (child.isUnsubscribed()) {
+						return;
+					}
+					if (error != null) {
+						terminated = true;
+						unsubscribe();
+						child.onError(error);
+						return;
+					}
+					Object result;
+					boolean finished = false;
+					synchronized (results) {
+						int index = (int) (emitted % results.length);
+						result = results[index];
+						if (result == null || (result != SKIP && requested.get() == 0)) {
+							result = null;
+							finished = done && emitted == submitted;
+						} else {
+							results[index] = null;
+							emitted++;
+							occupancy.decrementAndGet();
+							results.notifyAll();
+						}
+					}
+					if (result == null) {
+						if (finished) {
+							terminated = true;
+							child.onCompleted();
+						}
+						break;
+					}
+					if (result != SKIP) {
+						child.onNext(result == NULL ? null : (R) result);
+						if (requested.get() != Long.MAX_VALUE) {
+							requested.decrementAndGet();
+						}
+					}
+					request(1);
+				}
+				missed = wip.addAndGet(-missed);
+				if (missed == 0) {
+					return;
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.springframework.cloud.stream.annotation.rxjava.RxJavaProcessor;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import rx.Observable;
+import rx.Scheduler;
+
+/**
+ * Runs several copies of a processor in parallel. Each element is routed to a copy (a partition) by the hash
+ * of a key computed from the element by a SpEL expression, so all the elements with the same key are processed,
+ * in order, by the same copy. A copy sees the elements of every key routed to it, interleaved, so state the code
+ * keeps (windows, buffers) is only per key if the code groups by the key itself, e.g. with <tt>groupBy</tt>. Each
+ * copy observes its input on its own worker of the scheduler, the output of all the copies is merged.
+ *
+ * @author Andy Clement
+ */
+public class PartitionedRxJavaProcessor implements RxJavaProcessor<Object, Object> {
+
+	private final List<RxJavaProcessor<Object, Object>> processors = new ArrayList<>();
+
+	private final Expression keyExpression;
+
+	private final EvaluationContext evaluationContext = new StandardEvaluationContext();
+
+	private final Scheduler scheduler;
+
+	/**
+	 * @param processorSupplier supplies a copy of the processor for each partition
+	 * @param partitions the number of partitions
+	 * @param keyExpression a SpEL expression evaluated against each element to compute its key, e.g. <tt>#root</tt> or <tt>customerId</tt>
+	 * @param scheduler the scheduler each partition runs on
+	 */
+	public PartitionedRxJavaProcessor(Supplier<RxJavaProcessor<Object, Object>> processorSupplier, int partitions,
+			String keyExpression, Scheduler scheduler) {
+		if (partitions < 1) {
+			throw new IllegalArgumentException("There must be at least one partition, not " + partitions);
+		}
+		for (int i = 0; i < partitions; i++) {
+			processors.add(processorSupplier.get());
+		}
+		this.keyExpression = new SpelExpressionParser().parseExpression(keyExpression);
+		this.scheduler = scheduler;
+	}
+
+	@Override
+	public Observable<Object> process(Observable<Object> input) {
+		// The binder does not respond to backpressure, so each partition queues what it has not yet processed
+		return input.groupBy(this::partition).flatMap(partition -> processors.get(partition.getKey())
+				.process(partition.onBackpressureBuffer().observeOn(scheduler)));
+	}
+
+	/**
+	 * @return the number of partitions
+	 */
+	public int getPartitionCount() {
+		return processors.size();
+	}
+
+	int partition(Object element) {
+		Object key = keyExpression.getValue(evaluationContext, element);
+		int hash = key == null ? 0 : key.hashCode();
+		// Spread the high bits, like HashMap, as hashes of similar keys often only differ in those
+		return Math.floorMod(hash ^ (hash >>> 16), processors.size());
+	}
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import java.util.List;
+
+import org.springframework.cloud.stream.module.transform.javacompiler.CompilationMessage;
+
+/**
+ * Thrown when the code for a processor does not compile, carries the messages produced by the compiler.
+ *
+ * @author Andy Clement
+ */
+@SuppressWarnings("serial")
+public class ProcessorCompilationException extends IllegalStateException {
+
+	private final List<CompilationMessage> compilationMessages;
+
+	public ProcessorCompilationException(List<CompilationMessage> compilationMessages) {
+		super("Compilation failed with " + compilationMessages.size() + " messages");
+		this.compilationMessages = compilationMessages;
+	}
+
+	/**
+	 * @return the messages produced by the compiler
+	 */
+	public List<CompilationMessage> getCompilationMessages() {
+		return compilationMessages;
+	}
+
+}
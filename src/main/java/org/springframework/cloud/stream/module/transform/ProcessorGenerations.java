@@ -0,0 +1,232 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.cloud.stream.module.transform.javacompiler.CompilationResult;
+
+/**
+ * Tracks the classloader of each generation of the processor (the initial code and every refresh). A generation
+ * is live until it has been replaced and its pipelines have drained, then it is released: the strong reference
+ * to the classloader is dropped and it is only weakly reachable from here. Once the garbage collector has
+ * collected it the classes compiled for that generation are unloaded. A released classloader that has not been
+ * collected after the leak threshold is reported as leaked, something (e.g. a thread or static started by the
+ * code) is still holding on to it.
+ * <p>
+ * Published through the actuator are:<ul>
+ * <li>prxj.classloader.generations.live/released/collected/leaked: classloaders in each state
+ * <li>prxj.classloader.generation.[n].classes/bytes: the classes compiled for each live generation and the size
+ * of their class files, an approximation of the metaspace they occupy
+ * <li>prxj.jvm.classes.loaded/unloaded and prxj.jvm.metaspace.used: for the whole JVM
+ * </ul>
+ *
+ * @author Andy Clement
+ */
+public class ProcessorGenerations implements PublicMetrics {
+
+	private static Logger logger = LoggerFactory.getLogger(ProcessorGenerations.class);
+
+	private static final String PREFIX = "prxj.";
+
+	public static final long DEFAULT_LEAK_THRESHOLD = 60000;
+
+	private final long leakThreshold;
+
+	private final Map<Integer, LiveGeneration> live = new ConcurrentSkipListMap<>();
+
+	private final Map<Integer, ReleasedGeneration> released = new ConcurrentHashMap<>();
+
+	private final ReferenceQueue<ClassLoader> collectedLoaders = new ReferenceQueue<>();
+
+	private final AtomicLong collected = new AtomicLong();
+
+	public ProcessorGenerations() {
+		this(DEFAULT_LEAK_THRESHOLD);
+	}
+
+	/**
+	 * @param leakThreshold how long (ms) after being released a classloader should have been collected by
+	 */
+	public ProcessorGenerations(long leakThreshold) {
+		this.leakThreshold = leakThreshold;
+	}
+
+	/**
+	 * Start tracking the classloader that defined the classes for a generation.
+	 *
+	 * @param generation the generation number
+	 * @param compilationResult the compilation the processor for that generation was created from
+	 */
+	public void register(int generation, CompilationResult compilationResult) {
+		ClassLoader classLoader = compilationResult.getClassLoader();
+		if (classLoader == null) {
+			return;
+		}
+		live.put(generation, new LiveGeneration(classLoader, compilationResult.getCompiledClassNames().size(),
+				compilationResult.getCompiledBytes()));
+	}
+
+	/**
+	 * Stop holding the classloader for a generation whose pipelines have drained. From now on it is expected
+	 * to be collected.
+	 *
+	 * @param generation the generation number
+	 */
+	public void release(int generation) {
+		LiveGeneration liveGeneration = live.remove(generation);
+		if (liveGeneration == null) {
+			return;
+		}
+		ClassLoader classLoader = liveGeneration.classLoader;
+		if (classLoader instanceof Closeable) {
+			try {
+				((Closeable) classLoader).close();
+			} catch (IOException ioe) {
+				logger.debug("Unexpected exception closing classloader", ioe);
+			}
+		}
+		released.put(generation, new ReleasedGeneration(generation, classLoader, collectedLoaders));
+		logger.info("Released classloader for generation {} ({} classes)", generation, liveGeneration.classes);
+		poll();
+	}
+
+	/**
+	 * @return the number of generations whose classloader is still in use
+	 */
+	public int getLive() {
+		return live.size();
+	}
+
+	/**
+	 * @return the number of released classloaders not yet collected
+	 */
+	public int getReleased() {
+		poll();
+		return released.size();
+	}
+
+	/**
+	 * @return the number of released classloaders that have been collected
+	 */
+	public long getCollected() {
+		poll();
+		return collected.get();
+	}
+
+	/**
+	 * @return the generations whose classloader was released more than the leak threshold ago and has
+	 * not been collected
+	 */
+	public List<Integer> getLeaked() {
+		poll();
+		List<Integer> leaked = new ArrayList<>();
+		long now = System.currentTimeMillis();
+		for (ReleasedGeneration releasedGeneration : released.values()) {
+			if (now - releasedGeneration.releasedAt > leakThreshold) {
+				leaked.add(releasedGeneration.generation);
+				if (!releasedGeneration.reported) {
+					releasedGeneration.reported = true;
+					logger.warn("Classloader for generation {} was released {}ms ago and has not been collected, "
+							+ "something is still referencing the compiled classes", releasedGeneration.generation,
+							now - releasedGeneration.releasedAt);
+				}
+			}
+		}
+		return leaked;
+	}
+
+	private void poll() {
+		Reference<? extends ClassLoader> reference;
+		while ((reference = collectedLoaders.poll()) != null) {
+			ReleasedGeneration releasedGeneration = (ReleasedGeneration) reference;
+			released.remove(releasedGeneration.generation);
+			collected.incrementAndGet();
+			logger.debug("Classloader for generation {} has been collected", releasedGeneration.generation);
+		}
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<>();
+		metrics.add(new Metric<Integer>(PREFIX + "classloader.generations.live", getLive()));
+		metrics.add(new Metric<Integer>(PREFIX + "classloader.generations.released", getReleased()));
+		metrics.add(new Metric<Long>(PREFIX + "classloader.generations.collected", getCollected()));
+		metrics.add(new Metric<Integer>(PREFIX + "classloader.generations.leaked", getLeaked().size()));
+		for (Map.Entry<Integer, LiveGeneration> entry : live.entrySet()) {
+			String prefix = PREFIX + "classloader.generation." + entry.getKey() + ".";
+			metrics.add(new Metric<Integer>(prefix + "classes", entry.getValue().classes));
+			metrics.add(new Metric<Long>(prefix + "bytes", entry.getValue().bytes));
+		}
+		ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+		metrics.add(new Metric<Integer>(PREFIX + "jvm.classes.loaded", classLoading.getLoadedClassCount()));
+		metrics.add(new Metric<Long>(PREFIX + "jvm.classes.unloaded", classLoading.getUnloadedClassCount()));
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getName().equals("Metaspace")) {
+				metrics.add(new Metric<Long>(PREFIX + "jvm.metaspace.used", pool.getUsage().getUsed()));
+			}
+		}
+		return metrics;
+	}
+
+	private static class LiveGeneration {
+
+		final ClassLoader classLoader;
+
+		final int classes;
+
+		final long bytes;
+
+		LiveGeneration(ClassLoader classLoader, int classes, long bytes) {
+			this.classLoader = classLoader;
+			this.classes = classes;
+			this.bytes = bytes;
+		}
+	}
+
+	private static class ReleasedGeneration extends WeakReference<ClassLoader> {
+
+		final int generation;
+
+		final long releasedAt = System.currentTimeMillis();
+
+		volatile boolean reported;
+
+		ReleasedGeneration(int generation, ClassLoader classLoader, ReferenceQueue<ClassLoader> queue) {
+			super(classLoader, queue);
+			this.generation = generation;
+		}
+	}
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.cloud.stream.module.transform.javacompiler.CompilationTimings;
+
+import rx.Observable.Transformer;
+
+/**
+ * Publishes metrics for the processor through the actuator (e.g. <tt>/metrics</tt>). For each measured
+ * stage (the whole processor when the metrics property is set, plus any stages measured by the code
+ * using {@link #meter(String, Transformer)}) there are:<ul>
+ * <li>prxj.stage.[name].in/out: elements in and out of the stage
+ * <li>prxj.stage.[name].pending: elements in the stage that have not yet resulted in output
+ * <li>prxj.stage.[name].latency.mean/p50/p99/max: how long (ms) elements wait in the stage before resulting in output
+ * <li>prxj.stage.[name].downstream.mean/max: how long (ms) downstream of the stage takes to accept each element
+ * </ul>
+ * Also published are any gauges (e.g. the reorder buffer occupancy of {@link ParallelOperators}), the compile
+ * times (prxj.compile.*) and how much input is buffered awaiting the processor (prxj.startup.buffered).
+ *
+ * @author Andy Clement
+ */
+public class ProcessorMetrics implements PublicMetrics {
+
+	private static final String PREFIX = "prxj.";
+
+	// Shared so the code compiled at runtime can measure stages without any reference to this bean
+	private static Map<String, StageMetrics> stages = new ConcurrentHashMap<>();
+
+	private static Map<String, AtomicLong> gauges = new ConcurrentHashMap<>();
+
+	private CompilationTimings compilationTimings;
+
+	private DeferredRxJavaProcessor deferredProcessor;
+
+	public ProcessorMetrics(CompilationTimings compilationTimings, DeferredRxJavaProcessor deferredProcessor) {
+		this.compilationTimings = compilationTimings;
+		this.deferredProcessor = deferredProcessor;
+	}
+
+	/**
+	 * @param name the stage name
+	 * @return the metrics for the named stage, created if this is the first request for it
+	 */
+	public static StageMetrics stage(String name) {
+		return stages.computeIfAbsent(name, StageMetrics::new);
+	}
+
+	/**
+	 * @param name the gauge name, published with the prefix prxj.
+	 * @return the value of the named gauge, created (as zero) if this is the first request for it
+	 */
+	public static AtomicLong gauge(String name) {
+		return gauges.computeIfAbsent(name, key -> new AtomicLong());
+	}
+
+	/**
+	 * Measure a segment of the pipeline, for example
+	 * <tt>input.compose(meter("window", o -> o.buffer(5)))</tt>.
+	 *
+	 * @param name the stage name to publish metrics under
+	 * @param segment the segment to measure
+	 * @return a transformer that applies the segment
+	 */
+	public static <T, R> Transformer<T, R> meter(String name, Transformer<T, R> segment) {
+		return stage(name).measure(segment);
+	}
+
+	/**
+	 * Count the elements passing a point in the pipeline, for example <tt>input.compose(meter("parsed"))</tt>.
+	 *
+	 * @param name the stage name to publish metrics under
+	 * @return a transformer that passes elements through unchanged
+	 */
+	public static <T> Transformer<T, T> meter(String name) {
+		return meter(name, observable -> observable);
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<>();
+		for (StageMetrics stage : stages.values()) {
+			String prefix = PREFIX + "stage." + stage.getName() + ".";
+			metrics.add(new Metric<Long>(prefix + "in", stage.getIn()));
+			metrics.add(new Metric<Long>(prefix + "out", stage.getOut()));
+			metrics.add(new Metric<Long>(prefix + "pending", stage.getPending()));
+			LatencyHistogram latency = stage.getLatency();
+			metrics.add(new Metric<Double>(prefix + "latency.mean", latency.getMean()));
+			metrics.add(new Metric<Double>(prefix + "latency.p50", latency.getPercentile(50)));
+			metrics.add(new Metric<Double>(prefix + "latency.p99", latency.getPercentile(99)));
+			metrics.add(new Metric<Double>(prefix + "latency.max", latency.getMax()));
+			LatencyHistogram downstream = stage.getDownstream();
+			metrics.add(new Metric<Double>(prefix + "downstream.mean", downstream.getMean()));
+			metrics.add(new Metric<Double>(prefix + "downstream.max", downstream.getMax()));
+		}
+		for (Map.Entry<String, AtomicLong> gauge : gauges.entrySet()) {
+			metrics.add(new Metric<Long>(PREFIX + gauge.getKey(), gauge.getValue().get()));
+		}
+		metrics.add(new Metric<Long>(PREFIX + "compile.cold", compilationTimings.getColdCompileTime()));
+		metrics.add(new Metric<Long>(PREFIX + "compile.last", compilationTimings.getLastCompileTime()));
+		metrics.add(new Metric<Integer>(PREFIX + "compile.warm.count", compilationTimings.getWarmCompileCount()));
+		metrics.add(new Metric<Long>(PREFIX + "compile.warm.mean", compilationTimings.getAverageWarmCompileTime()));
+		metrics.add(new Metric<Integer>(PREFIX + "startup.buffered", deferredProcessor.getBufferedCount()));
+		metrics.add(new Metric<Integer>(PREFIX + "generation", deferredProcessor.getGeneration()));
+		return metrics;
+	}
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.Endpoint;
+import org.springframework.boot.actuate.endpoint.mvc.MvcEndpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.stream.module.transform.javacompiler.CompilationMessage;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Accepts new code for the processor. The code (the request body, not escaped in the way the code
+ * property is) is compiled in the background whilst the current processor keeps running. If it compiles
+ * the new processor replaces the current one, otherwise the compilation messages are returned and the
+ * current processor is left in place.
+ * <p>
+ * Code can also be validated, e.g. by an editor as it is typed, without affecting the running processor.
+ * The problems found are returned with positions relative to the code.
+ * <p>
+ * Accepting code means anyone who can reach the endpoint can run code in this JVM, so it only exists when
+ * the refreshEnabled property is set. It is a sensitive actuator endpoint, served under the management
+ * context path and protected by the same security as the other sensitive endpoints (e.g. /env).
+ *
+ * @author Andy Clement
+ */
+@Component
+@ConditionalOnProperty(name = "refresh-enabled", havingValue = "true")
+public class ProcessorRefreshController implements MvcEndpoint {
+
+	private static Logger logger = LoggerFactory.getLogger(ProcessorRefreshController.class);
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "prxj-recompiler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	@Autowired
+	private RxJavaTransformer transformer;
+
+	@Override
+	public String getPath() {
+		return "/processor";
+	}
+
+	@Override
+	public boolean isSensitive() {
+		return true;
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Class<? extends Endpoint> getEndpointType() {
+		return null;
+	}
+
+	@RequestMapping(value = "/code", method = RequestMethod.POST)
+	@ResponseBody
+	public CompletableFuture<ResponseEntity<Map<String, Object>>> refresh(@RequestBody String code) {
+		return CompletableFuture.supplyAsync(() -> {
+			Map<String, Object> result = new LinkedHashMap<>();
+			try {
+				transformer.refresh(code);
+				result.put("status", "refreshed");
+				result.put("generation", transformer.getGeneration());
+				return new ResponseEntity<>(result, HttpStatus.OK);
+			} catch (ProcessorCompilationException pce) {
+				List<String> messages = new ArrayList<>();
+				for (CompilationMessage compilationMessage : pce.getCompilationMessages()) {
+					messages.add(compilationMessage.toString());
+				}
+				result.put("status", "failed");
+				result.put("messages", messages);
+				return new ResponseEntity<>(result, HttpStatus.BAD_REQUEST);
+			} catch (IllegalStateException ise) {
+				logger.warn("Processor not refreshed", ise);
+				result.put("status", "rejected");
+				result.put("error", ise.getMessage());
+				return new ResponseEntity<>(result, HttpStatus.CONFLICT);
+			}
+		}, executor);
+	}
+
+	/**
+	 * Check code for problems. This runs on the request thread, not queued behind any recompilation, and
+	 * does not define or load the compiled classes.
+	 *
+	 * @param code the code to check, not escaped in the way the code property is
+	 * @return whether the code is valid and a diagnostic (kind, message, line, column, start, end) for each problem
+	 */
+	@RequestMapping(value = "/validate", method = RequestMethod.POST)
+	@ResponseBody
+	public Map<String, Object> validate(@RequestBody String code) {
+		long stime = System.currentTimeMillis();
+		List<CompilationMessage> compilationMessages = transformer.validate(code);
+		boolean valid = true;
+		List<Map<String, Object>> diagnostics = new ArrayList<>();
+		for (CompilationMessage compilationMessage : compilationMessages) {
+			valid &= compilationMessage.getKind() != CompilationMessage.Kind.ERROR;
+			Map<String, Object> diagnostic = new LinkedHashMap<>();
+			diagnostic.put("kind", compilationMessage.getKind().name());
+			diagnostic.put("message", compilationMessage.getMessage());
+			diagnostic.put("line", compilationMessage.getLineNumber());
+			diagnostic.put("column", compilationMessage.getColumnNumber());
+			diagnostic.put("start", compilationMessage.getStartPosition());
+			diagnostic.put("end", compilationMessage.getEndPosition());
+			diagnostics.add(diagnostic);
+		}
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("valid", valid);
+		result.put("diagnostics", diagnostics);
+		result.put("time", System.currentTimeMillis() - stime);
+		return result;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+}
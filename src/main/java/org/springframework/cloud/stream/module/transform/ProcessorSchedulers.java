@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * The schedulers available to run the processor on, and for the code to use, for example to make blocking
+ * calls without holding up the binder: <tt>input.flatMap(s -> Observable.defer(() -> Observable.just(lookup(s))).subscribeOn(scheduler("lookup")))</tt>.
+ * The names understood are:<ul>
+ * <li>computation/io: the RxJava computation/io schedulers
+ * <li>bounded: a shared pool with a fixed number of threads
+ * <li>virtual: a new virtual thread per task, on runtimes that support them, otherwise the bounded pool
+ * <li>any other name: a dedicated pool, with a fixed number of threads, for that name
+ * </ul>
+ *
+ * @author Andy Clement
+ */
+public class ProcessorSchedulers {
+
+	private static Logger logger = LoggerFactory.getLogger(ProcessorSchedulers.class);
+
+	public static final String NONE = "none";
+
+	public static final String COMPUTATION = "computation";
+
+	public static final String IO = "io";
+
+	public static final String BOUNDED = "bounded";
+
+	public static final String VIRTUAL = "virtual";
+
+	private static Map<String, Scheduler> schedulers = new ConcurrentHashMap<>();
+
+	private static List<ExecutorService> executors = new ArrayList<>();
+
+	private static volatile int poolSize = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * @param name the name of a scheduler
+	 * @return the scheduler, created if this is the first request for it
+	 */
+	public static Scheduler scheduler(String name) {
+		switch (name) {
+		case COMPUTATION:
+			return Schedulers.computation();
+		case IO:
+			return Schedulers.io();
+		default:
+			return schedulers.computeIfAbsent(name, ProcessorSchedulers::createScheduler);
+		}
+	}
+
+	/**
+	 * @param name the name of a scheduler, or none
+	 * @return the scheduler or null if the name is empty or none
+	 */
+	public static Scheduler schedulerOrNull(String name) {
+		if (name == null || name.trim().isEmpty() || name.trim().equals(NONE)) {
+			return null;
+		}
+		return scheduler(name.trim());
+	}
+
+	/**
+	 * @param size the number of threads in each pool created from now on
+	 */
+	public static void setPoolSize(int size) {
+		poolSize = size;
+	}
+
+	/**
+	 * Shut down the pools that have been created. Subsequent requests for a scheduler create new pools.
+	 */
+	public static void shutdown() {
+		synchronized (executors) {
+			schedulers.clear();
+			for (ExecutorService executor : executors) {
+				executor.shutdownNow();
+			}
+			executors.clear();
+		}
+	}
+
+	private static Scheduler createScheduler(String name) {
+		ExecutorService executor = name.equals(VIRTUAL) ? createVirtualThreadExecutor() : null;
+		if (executor == null) {
+			AtomicInteger threadCount = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(poolSize, runnable -> {
+				Thread thread = new Thread(runnable, "prxj-" + name + "-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+			logger.info("Created scheduler '{}' with {} threads", name, poolSize);
+		}
+		synchronized (executors) {
+			executors.add(executor);
+		}
+		return Schedulers.from(executor);
+	}
+
+	private static ExecutorService createVirtualThreadExecutor() {
+		try {
+			// Looked up reflectively so this still builds and runs on Java 8
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			logger.info("Created scheduler '{}' with a virtual thread per task", VIRTUAL);
+			return (ExecutorService) factory.invoke(null);
+		} catch (Exception e) {
+			logger.warn("Virtual threads are not available on this runtime, the '{}' scheduler is a bounded pool", VIRTUAL);
+			return null;
+		}
+	}
+
+}
@@ -46,6 +46,159 @@ public class ProgrammableRxJavaProcessorProperties {
 	 */
 	private String code;
 
+	/**
+	 * The type of the input elements (e.g. String), the code should then return an RxJavaProcessor with that input type.
+	 */
+	private String inputType = "Object";
+
+	/**
+	 * The type of the output elements (e.g. Integer), the code should then return an RxJavaProcessor with that output type.
+	 */
+	private String outputType = "Object";
+
+	/**
+	 * A directory in which compiled code is cached, so a restart with unchanged code does not need to compile.
+	 */
+	private String cacheDirectory;
+
+	/**
+	 * Whether compiled code should also be cached in Redis, shared by all instances using it.
+	 */
+	private boolean sharedCache = false;
+
+	/**
+	 * How many compilations are kept in memory, the least recently used is dropped beyond this.
+	 */
+	private int memoryCacheSize = 16;
+
+	/**
+	 * The compiler used to compile the code, either javac or ecj. If javac is requested but not available (running on a JRE) ecj is used.
+	 */
+	private String compiler = "javac";
+
+	/**
+	 * Whether to compile the code on a separate thread, so application startup is not held up waiting for it.
+	 */
+	private boolean asyncCompile = true;
+
+	/**
+	 * How many messages are buffered whilst the code is being compiled, beyond this the sender is blocked.
+	 */
+	private int startupBufferSize = 1000;
+
+	/**
+	 * Whether new code can be POSTed to the running processor (and code validated), off by default because
+	 * it allows whoever can reach the endpoint to run code.
+	 */
+	private boolean refreshEnabled = false;
+
+	/**
+	 * If greater than 0 the code receives Lists of up to this many messages rather than individual messages.
+	 */
+	private int inputBatchSize = 0;
+
+	/**
+	 * The maximum time (ms) to wait to fill an input batch before passing on a partial batch, 0 waits for a full batch.
+	 */
+	private long inputBatchTimeout = 0;
+
+	/**
+	 * If greater than 0 the output of the code is sent as Lists of up to this many elements, each List as one message.
+	 */
+	private int outputBatchSize = 0;
+
+	/**
+	 * The maximum time (ms) to wait to fill an output batch before sending a partial batch, 0 waits for a full batch.
+	 */
+	private long outputBatchTimeout = 0;
+
+	/**
+	 * Whether output elements that are Lists (or other Iterables) should be sent as individual messages.
+	 */
+	private boolean splitOutput = false;
+
+	/**
+	 * Whether to record metrics (counts, latency, pending elements) for the processor, published through the actuator.
+	 */
+	private boolean metrics = false;
+
+	/**
+	 * The scheduler the processor observes its input on, so the binder thread is not held up by it: none,
+	 * computation, io, bounded, virtual or the name of a dedicated pool.
+	 */
+	private String observeOn = ProcessorSchedulers.NONE;
+
+	/**
+	 * The scheduler the processor is subscribed on: none, computation, io, bounded, virtual or the name of a dedicated pool.
+	 */
+	private String subscribeOn = ProcessorSchedulers.NONE;
+
+	/**
+	 * The number of threads in the bounded pool and in each dedicated pool (by default the number of processors).
+	 */
+	private int schedulerPoolSize = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * If greater than 1, that many copies of the processor run in parallel, each message is routed to one by the hash of its key.
+	 */
+	private int partitions = 1;
+
+	/**
+	 * A SpEL expression evaluated against each message payload to compute the key it is partitioned by.
+	 */
+	private String partitionKeyExpression = "#root";
+
+	/**
+	 * The scheduler each partition runs on: computation, io, bounded, virtual or the name of a dedicated pool.
+	 * Code that blocks (e.g. enrichment calls) should not use computation, it would hold up its few threads.
+	 */
+	private String partitionScheduler = ProcessorSchedulers.COMPUTATION;
+
+	/**
+	 * The maximum number of bytes of direct memory the off heap buffers (offHeapBuffer()) use, beyond this they use memory mapped files.
+	 */
+	private long offHeapMemory = OffHeapSegments.DEFAULT_MAX_DIRECT_MEMORY;
+
+	/**
+	 * The size in bytes of each segment of memory the off heap buffers allocate.
+	 */
+	private int offHeapSegmentSize = OffHeapSegments.DEFAULT_SEGMENT_SIZE;
+
+	/**
+	 * The directory in which the memory mapped files used by off heap buffers are created, by default the temporary directory.
+	 */
+	private String offHeapDirectory;
+
+	/**
+	 * A directory in which the state of durable buffers (durableBuffer()) is kept, so it survives a restart. If not set their state is not durable.
+	 */
+	private String stateDirectory;
+
+	/**
+	 * How often (ms) durable state is forced to disk, 0 leaves it to the operating system (state still survives the process crashing).
+	 */
+	private long stateSyncInterval = 1000;
+
+	/**
+	 * If greater than 0, messages are handed from the binder thread to the processor thread through a ring buffer of this size (rounded up to a power of two).
+	 */
+	private int ringBufferSize = 0;
+
+	/**
+	 * Whether the binder may deliver messages on several threads concurrently, if not a cheaper single producer ring buffer is used.
+	 */
+	private boolean ringBufferMultiProducer = true;
+
+	/**
+	 * How threads wait on the ring buffer: spin, yield or park.
+	 */
+	private String ringBufferWaitStrategy = "park";
+
+	/**
+	 * What happens to a message that arrives when the ring buffer is full: drop, block (the binder thread) or spill (to an unbounded overflow queue).
+	 */
+	private String ringBufferFullPolicy = "block";
+
 	@NotNull
 	public String getCode() {
 		return code;
@@ -54,4 +207,244 @@ public class ProgrammableRxJavaProcessorProperties {
 	public void setCode(String code) {
 		this.code = code;
 	}
+
+	public String getInputType() {
+		return inputType;
+	}
+
+	public void setInputType(String inputType) {
+		this.inputType = inputType;
+	}
+
+	public String getOutputType() {
+		return outputType;
+	}
+
+	public void setOutputType(String outputType) {
+		this.outputType = outputType;
+	}
+
+	public String getCacheDirectory() {
+		return cacheDirectory;
+	}
+
+	public void setCacheDirectory(String cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	public boolean isSharedCache() {
+		return sharedCache;
+	}
+
+	public void setSharedCache(boolean sharedCache) {
+		this.sharedCache = sharedCache;
+	}
+
+	public int getMemoryCacheSize() {
+		return memoryCacheSize;
+	}
+
+	public void setMemoryCacheSize(int memoryCacheSize) {
+		this.memoryCacheSize = memoryCacheSize;
+	}
+
+	public String getCompiler() {
+		return compiler;
+	}
+
+	public void setCompiler(String compiler) {
+		this.compiler = compiler;
+	}
+
+	public boolean isAsyncCompile() {
+		return asyncCompile;
+	}
+
+	public void setAsyncCompile(boolean asyncCompile) {
+		this.asyncCompile = asyncCompile;
+	}
+
+	public int getStartupBufferSize() {
+		return startupBufferSize;
+	}
+
+	public void setStartupBufferSize(int startupBufferSize) {
+		this.startupBufferSize = startupBufferSize;
+	}
+
+	public boolean isRefreshEnabled() {
+		return refreshEnabled;
+	}
+
+	public void setRefreshEnabled(boolean refreshEnabled) {
+		this.refreshEnabled = refreshEnabled;
+	}
+
+	public int getInputBatchSize() {
+		return inputBatchSize;
+	}
+
+	public void setInputBatchSize(int inputBatchSize) {
+		this.inputBatchSize = inputBatchSize;
+	}
+
+	public long getInputBatchTimeout() {
+		return inputBatchTimeout;
+	}
+
+	public void setInputBatchTimeout(long inputBatchTimeout) {
+		this.inputBatchTimeout = inputBatchTimeout;
+	}
+
+	public int getOutputBatchSize() {
+		return outputBatchSize;
+	}
+
+	public void setOutputBatchSize(int outputBatchSize) {
+		this.outputBatchSize = outputBatchSize;
+	}
+
+	public long getOutputBatchTimeout() {
+		return outputBatchTimeout;
+	}
+
+	public void setOutputBatchTimeout(long outputBatchTimeout) {
+		this.outputBatchTimeout = outputBatchTimeout;
+	}
+
+	public boolean isSplitOutput() {
+		return splitOutput;
+	}
+
+	public void setSplitOutput(boolean splitOutput) {
+		this.splitOutput = splitOutput;
+	}
+
+	public boolean isMetrics() {
+		return metrics;
+	}
+
+	public void setMetrics(boolean metrics) {
+		this.metrics = metrics;
+	}
+
+	public String getObserveOn() {
+		return observeOn;
+	}
+
+	public void setObserveOn(String observeOn) {
+		this.observeOn = observeOn;
+	}
+
+	public String getSubscribeOn() {
+		return subscribeOn;
+	}
+
+	public void setSubscribeOn(String subscribeOn) {
+		this.subscribeOn = subscribeOn;
+	}
+
+	public int getSchedulerPoolSize() {
+		return schedulerPoolSize;
+	}
+
+	public void setSchedulerPoolSize(int schedulerPoolSize) {
+		this.schedulerPoolSize = schedulerPoolSize;
+	}
+
+	public int getPartitions() {
+		return partitions;
+	}
+
+	public void setPartitions(int partitions) {
+		this.partitions = partitions;
+	}
+
+	public String getPartitionKeyExpression() {
+		return partitionKeyExpression;
+	}
+
+	public void setPartitionKeyExpression(String partitionKeyExpression) {
+		this.partitionKeyExpression = partitionKeyExpression;
+	}
+
+	public String getPartitionScheduler() {
+		return partitionScheduler;
+	}
+
+	public void setPartitionScheduler(String partitionScheduler) {
+		this.partitionScheduler = partitionScheduler;
+	}
+
+	public long getOffHeapMemory() {
+		return offHeapMemory;
+	}
+
+	public void setOffHeapMemory(long offHeapMemory) {
+		this.offHeapMemory = offHeapMemory;
+	}
+
+	public int getOffHeapSegmentSize() {
+		return offHeapSegmentSize;
+	}
+
+	public void setOffHeapSegmentSize(int offHeapSegmentSize) {
+		this.offHeapSegmentSize = offHeapSegmentSize;
+	}
+
+	public String getOffHeapDirectory() {
+		return offHeapDirectory;
+	}
+
+	public void setOffHeapDirectory(String offHeapDirectory) {
+		this.offHeapDirectory = offHeapDirectory;
+	}
+
+	public String getStateDirectory() {
+		return stateDirectory;
+	}
+
+	public void setStateDirectory(String stateDirectory) {
+		this.stateDirectory = stateDirectory;
+	}
+
+	public long getStateSyncInterval() {
+		return stateSyncInterval;
+	}
+
+	public void setStateSyncInterval(long stateSyncInterval) {
+		this.stateSyncInterval = stateSyncInterval;
+	}
+
+	public int getRingBufferSize() {
+		return ringBufferSize;
+	}
+
+	public void setRingBufferSize(int ringBufferSize) {
+		this.ringBufferSize = ringBufferSize;
+	}
+
+	public boolean isRingBufferMultiProducer() {
+		return ringBufferMultiProducer;
+	}
+
+	public void setRingBufferMultiProducer(boolean ringBufferMultiProducer) {
+		this.ringBufferMultiProducer = ringBufferMultiProducer;
+	}
+
+	public String getRingBufferWaitStrategy() {
+		return ringBufferWaitStrategy;
+	}
+
+	public void setRingBufferWaitStrategy(String ringBufferWaitStrategy) {
+		this.ringBufferWaitStrategy = ringBufferWaitStrategy;
+	}
+
+	public String getRingBufferFullPolicy() {
+		return ringBufferFullPolicy;
+	}
+
+	public void setRingBufferFullPolicy(String ringBufferFullPolicy) {
+		this.ringBufferFullPolicy = ringBufferFullPolicy;
+	}
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded queue backed by a preallocated array, elements are handed over without allocating. There is one
+ * consumer and either a single producer or, if multiple producers are allowed, several that claim slots by
+ * compare-and-set. Each slot records the sequence number of the element published in it, so the consumer
+ * never reads a slot a producer has claimed but not yet filled.
+ *
+ * @author Andy Clement
+ */
+public class RingBuffer {
+
+	// Stands in for a null element, so null can mean empty
+	private static final Object NULL = new Object();
+
+	private final Object[] slots;
+
+	private final AtomicLongArray published;
+
+	private final int mask;
+
+	private final boolean multipleProducers;
+
+	private final AtomicLong producerSequence = new AtomicLong();
+
+	private final AtomicLong consumerSequence = new AtomicLong();
+
+	/**
+	 * @param capacity the number of slots, rounded up to a power of two
+	 * @param multipleProducers whether offer() may be called by several threads concurrently
+	 */
+	public RingBuffer(int capacity, boolean multipleProducers) {
+		if (capacity <= 0 || capacity > (1 << 30)) {
+			throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.slots = new Object[size];
+		this.published = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			published.set(i, -1);
+		}
+		this.mask = size - 1;
+		this.multipleProducers = multipleProducers;
+	}
+
+	/**
+	 * @param element the element to add
+	 * @return true if it was added, false if the buffer is full
+	 */
+	public boolean offer(Object element) {
+		long sequence;
+		if (multipleProducers) {
+			do {
+				sequence = producerSequence.get();
+				if (sequence - consumerSequence.get() >= slots.length) {
+					return false;
+				}
+			} while (!producerSequence.compareAndSet(sequence, sequence + 1));
+		} else {
+			sequence = producerSequence.get();
+			if (sequence - consumerSequence.get() >= slots.length) {
+				return false;
+			}
+			producerSequence.lazySet(sequence + 1);
+		}
+		int index = (int) sequence & mask;
+		slots[index] = element == null ? NULL : element;
+		// Publishing the sequence makes the element visible to the consumer
+		published.lazySet(index, sequence);
+		return true;
+	}
+
+	/**
+	 * Called only by the consumer.
+	 *
+	 * @param holder receives the element, so null elements can be distinguished from empty
+	 * @return true if an element was removed, false if the buffer is empty
+	 */
+	public boolean poll(Object[] holder) {
+		long sequence = consumerSequence.get();
+		int index = (int) sequence & mask;
+		if (published.get(index) != sequence) {
+			return false;
+		}
+		Object element = slots[index];
+		slots[index] = null;
+		consumerSequence.lazySet(sequence + 1);
+		holder[0] = element == NULL ? null : element;
+		return true;
+	}
+
+	/**
+	 * @return true if there is nothing to poll
+	 */
+	public boolean isEmpty() {
+		long sequence = consumerSequence.get();
+		return published.get((int) sequence & mask) != sequence;
+	}
+
+	/**
+	 * @return the approximate number of elements in the buffer
+	 */
+	public int size() {
+		return (int) Math.max(0, producerSequence.get() - consumerSequence.get());
+	}
+
+	/**
+	 * @return the number of slots
+	 */
+	public int capacity() {
+		return slots.length;
+	}
+
+}
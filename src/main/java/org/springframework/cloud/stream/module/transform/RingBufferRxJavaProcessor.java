@@ -0,0 +1,269 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.stream.annotation.rxjava.RxJavaProcessor;
+
+import rx.Observable;
+import rx.Subscription;
+import rx.subjects.PublishSubject;
+import rx.subjects.Subject;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Wraps a processor so the binder thread only places each message into a {@link RingBuffer}, a dedicated
+ * thread takes them from there and drives the processor. A slow processor then does not hold up the binder
+ * until the buffer is full, at which point the policy decides what happens: drop the message, block the binder
+ * thread until there is space, or spill messages into an (unbounded) overflow queue that is drained, in order,
+ * once the buffer has been. Threads with nothing to do wait by spinning, yielding or parking. The numbers of
+ * dropped and spilled messages are published as the gauges prxj.ring.dropped and prxj.ring.spilled.
+ *
+ * @author Andy Clement
+ */
+public class RingBufferRxJavaProcessor implements RxJavaProcessor<Object, Object> {
+
+	private static Logger logger = LoggerFactory.getLogger(RingBufferRxJavaProcessor.class);
+
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	// Stands in for a null element in the overflow queue
+	private static final Object NULL = new Object();
+
+	// The longest a parked thread waits before checking again
+	private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+	/**
+	 * How a thread waits for an element (the consumer) or for space (a blocked producer).
+	 */
+	public enum WaitStrategy {
+		/** Busy wait, lowest latency but burns a core */
+		SPIN,
+		/** Yield the processor between checks */
+		YIELD,
+		/** Park the thread, woken by the other side or after a short time */
+		PARK;
+
+		void idle() {
+			switch (this) {
+			case SPIN:
+				break;
+			case YIELD:
+				Thread.yield();
+				break;
+			case PARK:
+				LockSupport.parkNanos(PARK_NANOS);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * What happens to a message that arrives when the buffer is full.
+	 */
+	public enum FullPolicy {
+		DROP, BLOCK, SPILL
+	}
+
+	private final RxJavaProcessor<Object, Object> delegate;
+
+	private final int capacity;
+
+	private final boolean multipleProducers;
+
+	private final WaitStrategy waitStrategy;
+
+	private final FullPolicy fullPolicy;
+
+	private final AtomicLong dropped = ProcessorMetrics.gauge("ring.dropped");
+
+	private final AtomicLong spilled = ProcessorMetrics.gauge("ring.spilled");
+
+	/**
+	 * @param delegate the processor to wrap
+	 * @param capacity the number of slots in the buffer (rounded up to a power of two)
+	 * @param multipleProducers whether the binder may deliver messages on several threads concurrently
+	 * @param waitStrategy how threads wait
+	 * @param fullPolicy what to do with messages that arrive when the buffer is full
+	 */
+	public RingBufferRxJavaProcessor(RxJavaProcessor<Object, Object> delegate, int capacity, boolean multipleProducers,
+			WaitStrategy waitStrategy, FullPolicy fullPolicy) {
+		this.delegate = delegate;
+		this.capacity = capacity;
+		this.multipleProducers = multipleProducers;
+		this.waitStrategy = waitStrategy;
+		this.fullPolicy = fullPolicy;
+	}
+
+	@Override
+	public Observable<Object> process(Observable<Object> input) {
+		return Observable.create(subscriber -> {
+			Handoff handoff = new Handoff();
+			delegate.process(handoff.feed).unsafeSubscribe(subscriber);
+			handoff.start();
+			Subscription inputSubscription = input.subscribe(handoff::offer, handoff::error, handoff::complete);
+			subscriber.add(inputSubscription);
+			subscriber.add(Subscriptions.create(handoff::stop));
+		});
+	}
+
+	/**
+	 * @return the processor this one wraps
+	 */
+	public RxJavaProcessor<Object, Object> getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * The buffer for one subscription, with the thread that consumes it.
+	 */
+	class Handoff implements Runnable {
+
+		final Subject<Object, Object> feed = PublishSubject.create();
+
+		private final RingBuffer ring = new RingBuffer(capacity, multipleProducers);
+
+		private final Queue<Object> overflow = new ConcurrentLinkedQueue<>();
+
+		private final Thread consumer = new Thread(this, "prxj-ring-" + threadCount.incrementAndGet());
+
+		private volatile boolean running = true;
+
+		private volatile boolean consumerParked;
+
+		private volatile boolean completed;
+
+		private volatile Throwable error;
+
+		// Set if the consumer thread fails, no more elements are accepted
+		private volatile Throwable failure;
+
+		void start() {
+			consumer.setDaemon(true);
+			consumer.start();
+		}
+
+		void stop() {
+			running = false;
+			LockSupport.unpark(consumer);
+		}
+
+		void offer(Object element) {
+			checkNotFailed();
+			if (fullPolicy == FullPolicy.SPILL) {
+				// Once spilling, keep spilling until the overflow is drained, to keep the order
+				if (!overflow.isEmpty() || !ring.offer(element)) {
+					spilled.incrementAndGet();
+					overflow.add(element == null ? NULL : element);
+				}
+			} else if (!ring.offer(element)) {
+				if (fullPolicy == FullPolicy.DROP) {
+					dropped.incrementAndGet();
+					logger.debug("Buffer full, dropped {}", element);
+					return;
+				}
+				do {
+					waitStrategy.idle();
+				} while (!ring.offer(element) && running);
+				checkNotFailed();
+			}
+			if (consumerParked) {
+				LockSupport.unpark(consumer);
+			}
+		}
+
+		private void checkNotFailed() {
+			Throwable t = failure;
+			if (t != null) {
+				// Thrown to the input subscription, which unsubscribes from the binder
+				throw new IllegalStateException("The processor consuming the buffer has failed", t);
+			}
+		}
+
+		void error(Throwable throwable) {
+			error = throwable;
+			LockSupport.unpark(consumer);
+		}
+
+		void complete() {
+			completed = true;
+			LockSupport.unpark(consumer);
+		}
+
+		@Override
+		public void run() {
+			try {
+				consume();
+			} catch (Throwable t) {
+				// Stop taking input, otherwise a blocked producer waits forever and spilling grows without limit
+				failure = t;
+				running = false;
+				overflow.clear();
+				logger.error("Failure consuming the buffer, the processor has stopped", t);
+				try {
+					feed.onError(t);
+				} catch (Throwable t2) {
+					logger.debug("Unable to pass on the failure", t2);
+				}
+			}
+		}
+
+		private void consume() {
+			Object[] holder = new Object[1];
+			while (running) {
+				if (ring.poll(holder)) {
+					feed.onNext(holder[0]);
+					continue;
+				}
+				Object spilt = overflow.poll();
+				if (spilt != null) {
+					feed.onNext(spilt == NULL ? null : spilt);
+					continue;
+				}
+				// Check the terminal state before the final emptiness check, the producer sets it after its last offer
+				boolean finished = completed || error != null;
+				if (ring.isEmpty() && overflow.isEmpty()) {
+					if (finished) {
+						if (error != null) {
+							feed.onError(error);
+						} else {
+							feed.onCompleted();
+						}
+						return;
+					}
+					if (waitStrategy == WaitStrategy.PARK) {
+						consumerParked = true;
+						if (ring.isEmpty() && overflow.isEmpty() && !completed && error == null) {
+							waitStrategy.idle();
+						}
+						consumerParked = false;
+					} else {
+						waitStrategy.idle();
+					}
+				}
+			}
+		}
+	}
+
+}
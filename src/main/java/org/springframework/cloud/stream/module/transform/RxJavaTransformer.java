@@ -15,12 +15,21 @@
  */
 package org.springframework.cloud.stream.module.transform;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.stream.annotation.rxjava.EnableRxJavaProcessor;
 import org.springframework.cloud.stream.annotation.rxjava.RxJavaProcessor;
@@ -50,72 +59,315 @@ public class RxJavaTransformer {
 
 	private final static String MAIN_COMPILED_CLASS_NAME = "org.springframework.cloud.stream.module.transform.RxClass";
 	
-	/**
-	 * The user supplied code snippet is inserted into the template and then the result is compiled
-	 */
-	private static String SOURCE_CODE_TEMPLATE = 
+	private static String SOURCE_CODE_IMPORTS =
 			"package org.springframework.cloud.stream.module.transform;\n"+
 			"import java.util.*;\n"+ // Helpful to include this, what about also rx java math packages?
 			"import rx.observables.MathObservable;\n"+
 			"import static rx.observables.MathObservable.*;\n"+
-			"import org.springframework.cloud.stream.annotation.rxjava.*;\n"+
+			"import static org.springframework.cloud.stream.module.transform.NumericWindows.*;\n"+
+			"import static org.springframework.cloud.stream.module.transform.ParallelOperators.*;\n"+
+			"import static org.springframework.cloud.stream.module.transform.OffHeapWindows.*;\n"+
+			"import static org.springframework.cloud.stream.module.transform.ProcessorMetrics.meter;\n"+
+			"import static org.springframework.cloud.stream.module.transform.ProcessorSchedulers.scheduler;\n"+
+			"import org.springframework.cloud.stream.annotation.rxjava.*;\n";
+
+	/**
+	 * The user supplied code snippet is inserted into the template and then the result is compiled
+	 */
+	private static String SOURCE_CODE_TEMPLATE = 
+			SOURCE_CODE_IMPORTS+
 			"public class RxClass implements ProcessorFactory {\n"+
 			" public RxJavaProcessor<Object,Object> getProcessor() {\n"+
 			"  %s\n"+
 			" }\n"+
 			"}\n";
 
+	/**
+	 * Used when input/output types are specified. The snippet produces a typed processor, that is adapted
+	 * to the Object based processor the binder requires by casting the observables (not each element).
+	 */
+	private static String TYPED_SOURCE_CODE_TEMPLATE = 
+			SOURCE_CODE_IMPORTS+
+			"public class RxClass implements ProcessorFactory {\n"+
+			" @SuppressWarnings({\"unchecked\",\"rawtypes\"})\n"+
+			" public RxJavaProcessor<Object,Object> getProcessor() {\n"+
+			"  RxJavaProcessor<%2$s,%3$s> processor = getTypedProcessor();\n"+
+			"  return input -> (rx.Observable)processor.process((rx.Observable)input);\n"+
+			" }\n"+
+			" public RxJavaProcessor<%2$s,%3$s> getTypedProcessor() {\n"+
+			"  %1$s\n"+
+			" }\n"+
+			"}\n";
+
+	// Stands in for the code to find where it goes in the templates, cannot occur in them
+	private static final String SNIPPET_MARKER = "\u0000snippet\u0000";
+
 	@Autowired
 	private RuntimeJavaCompiler compiler;
 	
 	@Autowired
 	private ProgrammableRxJavaProcessorProperties properties;
 
+	private DeferredRxJavaProcessor deferredProcessor;
+
+	private ProcessorGenerations processorGenerations = new ProcessorGenerations();
+
 	/**
-	 * Produce an RxJavaProcessor instance by:<ul>
-	 * <li>Decoding the code property to process any newlines/double-double-quotes
-	 * <li>Insert the code into the source code template for a class
-	 * <li>Compiling the class using the JDK provided Java Compiler
-	 * <li>Loading the compiled class
-	 * <li>Invoking a well known method on the class to produce an RxJavaProcessor instance
-	 * <li>Returning that instance.
-	 * </ul>
-	 * 
+	 * Configure the helpers available to the code then start compiling the code as soon as this configuration
+	 * is initialized. Unless asyncCompile is switched off this happens on a separate thread, so the rest of the
+	 * application context (binder, web, actuator) can start in parallel.
+	 */
+	@PostConstruct
+	public void startCompilation() {
+		ProcessorSchedulers.setPoolSize(properties.getSchedulerPoolSize());
+		OffHeapSegments.configure(properties.getOffHeapMemory(), properties.getOffHeapSegmentSize(),
+				properties.getOffHeapDirectory());
+		DurableStore.configure(properties.getStateDirectory(), properties.getStateSyncInterval());
+		deferredProcessor = new DeferredRxJavaProcessor(properties.getStartupBufferSize());
+		deferredProcessor.setDrainedListener(processorGenerations::release);
+		if (properties.isAsyncCompile()) {
+			Thread compilerThread = new Thread(this::compileAndAttach, "prxj-compiler");
+			compilerThread.setDaemon(true);
+			compilerThread.start();
+		} else {
+			compileAndAttach();
+		}
+	}
+
+	/**
+	 * Shut down the scheduler pools created for the processor and force any durable state to disk.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		ProcessorSchedulers.shutdown();
+		DurableStore.syncAll();
+	}
+
+	/**
+	 * Produce the RxJavaProcessor bean. This is a proxy that the processor built from the code is
+	 * attached to once compilation completes, input arriving before then is buffered.
+	 *
 	 * @return an RxJavaProcessor instance
 	 */
 	@Bean
 	public RxJavaProcessor<Object,Object> processor() {
-		logger.info("Initial code property value :'{}'",properties.getCode());
- 		String code = decode(properties.getCode());
- 		if (code.startsWith("\"") && code.endsWith("\"")) {
- 			code = code.substring(1,code.length()-1);
- 		}
-		logger.info("Processed code property value :\n{}\n",code);
-		CompilationResult compilationResult = buildAndCompileSourceCode(code);
-		if (compilationResult.wasSuccessful()) {
-			List<Class<?>> clazzes = compilationResult.getCompiledClasses();
-			logger.info("Compilation resulted in this many classes: #{}",clazzes.size());
-			for (Class<?> clazz: clazzes) { 
-				if (clazz.getName().equals(MAIN_COMPILED_CLASS_NAME)) {
-					try {
-						ProcessorFactory processorFactory = (ProcessorFactory)clazz.newInstance();
-						return processorFactory.getProcessor();
-					} catch (Exception e) {
-						logger.error("Unexpected problem during retrieval of processor from compiled class",e);
-					}
+		return deferredProcessor;
+	}
+
+	/**
+	 * @return a health indicator that reports OUT_OF_SERVICE whilst the code is compiling, DOWN if the processor
+	 * could not be created and UP once the processor built from the code is attached
+	 */
+	@Bean
+	public HealthIndicator processorHealthIndicator() {
+		return new AbstractHealthIndicator() {
+			@Override
+			protected void doHealthCheck(Health.Builder builder) throws Exception {
+				if (deferredProcessor.isAttached()) {
+					builder.up();
+				} else if (deferredProcessor.isFailed()) {
+					builder.down().withDetail("error", String.valueOf(deferredProcessor.getFailure()));
+				} else {
+					builder.outOfService().withDetail("status", "compiling")
+							.withDetail("buffered", deferredProcessor.getBufferedCount());
 				}
 			}
-			logger.error("Failed to find the expected compiled class");
-		} else {
+		};
+	}
+
+	/**
+	 * Compile new code and, if it compiles, replace the running processor with the one it produces. Input
+	 * is switched to the new processor and the input of the old one completed. If the code does not compile
+	 * the old processor keeps running.
+	 *
+	 * @param code the code, not escaped in the way the code property is
+	 * @throws ProcessorCompilationException if the code does not compile
+	 * @throws IllegalStateException if the initial processor is not yet running or the new one cannot be created
+	 */
+	public synchronized void refresh(String code) {
+		if (!deferredProcessor.isAttached()) {
+			throw new IllegalStateException("The processor cannot be refreshed until the initial code has been compiled");
+		}
+		logger.info("Refreshing processor with code:\n{}\n", code);
+		CompilationResult compilationResult = compile(code);
+		processorGenerations.register(deferredProcessor.replace(createProcessor(compilationResult)), compilationResult);
+		logger.info("Processor refreshed, now at generation {}", deferredProcessor.getGeneration());
+	}
+
+	/**
+	 * Check code for problems without creating a processor from it. The classes are not defined or loaded.
+	 *
+	 * @param code the code, not escaped in the way the code property is
+	 * @return the compilation messages, with positions relative to the code rather than the class it is inserted into
+	 */
+	public List<CompilationMessage> validate(String code) {
+		String sourceCode = makeSourceClassDefinition(code, properties.getInputType(), properties.getOutputType());
+		int offset = getSnippetOffset(properties.getInputType(), properties.getOutputType());
+		List<CompilationMessage> compilationMessages = new ArrayList<>();
+		for (CompilationMessage compilationMessage : compiler.validate(MAIN_COMPILED_CLASS_NAME, sourceCode).getCompilationMessages()) {
+			compilationMessages.add(compilationMessage.forRegion(offset, code.length()));
+		}
+		return compilationMessages;
+	}
+
+	/**
+	 * @return how many processors have been created from code, 1 for the initial code and one more for each refresh
+	 */
+	public int getGeneration() {
+		return deferredProcessor.getGeneration();
+	}
+
+	/**
+	 * @return the actuator metrics for the processor
+	 */
+	@Bean
+	public PublicMetrics processorMetrics() {
+		return new ProcessorMetrics(compiler.getCompilationTimings(), deferredProcessor);
+	}
+
+	/**
+	 * @return the classloader lifecycle of each processor generation, also published as actuator metrics
+	 */
+	@Bean
+	public ProcessorGenerations processorGenerations() {
+		return processorGenerations;
+	}
+
+	private void compileAndAttach() {
+		try {
+			logger.info("Initial code property value :'{}'",properties.getCode());
+			String code = decode(properties.getCode());
+			if (code.startsWith("\"") && code.endsWith("\"")) {
+				code = code.substring(1,code.length()-1);
+			}
+			logger.info("Processed code property value :\n{}\n",code);
+			CompilationResult compilationResult = compile(code);
+			synchronized (this) {
+				processorGenerations.register(deferredProcessor.attach(createProcessor(compilationResult)), compilationResult);
+			}
+		} catch (Exception e) {
+			logger.error("Unable to create the processor", e);
+			deferredProcessor.fail(e);
+		}
+	}
+
+	/**
+	 * Compile the code by inserting it into the source code template for a class and compiling that
+	 * class using the JDK provided Java Compiler. The compiled classes are loaded by a new classloader
+	 * that lives as long as the processor generation created from them.
+	 *
+	 * @param code the (decoded) code snippet
+	 * @return the successful compilation result
+	 * @throws ProcessorCompilationException if the code does not compile
+	 */
+	private CompilationResult compile(String code) {
+		CompilationResult compilationResult = buildAndCompileSourceCode(code);
+		if (!compilationResult.wasSuccessful()) {
 			List<CompilationMessage> compilationMessages = compilationResult.getCompilationMessages();
 			logger.error("Compilation failed");
 			for (CompilationMessage compilationMessage: compilationMessages) {
 				logger.error("{}",compilationMessage);
 			}
+			throw new ProcessorCompilationException(compilationMessages);
+		}
+		return compilationResult;
+	}
+
+	/**
+	 * Produce an RxJavaProcessor instance by:<ul>
+	 * <li>Loading the compiled class
+	 * <li>Invoking a well known method on the class to produce an RxJavaProcessor instance
+	 * <li>Wrapping that instance if input/output batching, partitioning, schedulers, a ring buffer or metrics are configured
+	 * <li>Returning that instance.
+	 * </ul>
+	 * 
+	 * @param compilationResult the result of compiling the code snippet
+	 * @return an RxJavaProcessor instance
+	 */
+	private RxJavaProcessor<Object,Object> createProcessor(CompilationResult compilationResult) {
+		logger.info("Compilation resulted in this many classes: #{}",compilationResult.getCompiledClassNames().size());
+		// Only the main class is requested, the others are defined if and when it uses them
+		Class<?> clazz = compilationResult.getCompiledClass(MAIN_COMPILED_CLASS_NAME);
+		if (clazz == null) {
+			throw new IllegalStateException("Failed to find the expected compiled class");
+		}
+		try {
+			ProcessorFactory processorFactory = (ProcessorFactory)clazz.newInstance();
+			return metered(ringBuffered(scheduled(partitioned(() -> batching(
+					withContextClassLoader(processorFactory.getProcessor(), clazz.getClassLoader()))))));
+		} catch (Exception e) {
+			throw new IllegalStateException("Unexpected problem during retrieval of processor from compiled class",e);
 		}
-		return null;
 	} 
 
+	/**
+	 * Build the pipeline with the loader of the code as the context class loader, so that anything capturing it
+	 * (e.g. the default codec of off heap buffers) can resolve the classes declared in the code.
+	 */
+	private static RxJavaProcessor<Object,Object> withContextClassLoader(RxJavaProcessor<Object,Object> processor,
+			ClassLoader classLoader) {
+		return input -> {
+			Thread thread = Thread.currentThread();
+			ClassLoader previous = thread.getContextClassLoader();
+			thread.setContextClassLoader(classLoader);
+			try {
+				return processor.process(input);
+			} finally {
+				thread.setContextClassLoader(previous);
+			}
+		};
+	}
+
+	/**
+	 * Wrap the processor if batching is configured.
+	 */
+	private RxJavaProcessor<Object,Object> batching(RxJavaProcessor<Object,Object> processor) {
+		BatchingRxJavaProcessor batchingProcessor = new BatchingRxJavaProcessor(processor,
+				properties.getInputBatchSize(), properties.getInputBatchTimeout(),
+				properties.getOutputBatchSize(), properties.getOutputBatchTimeout(), properties.isSplitOutput());
+		return batchingProcessor.isBatching() ? batchingProcessor : processor;
+	}
+
+	/**
+	 * Create a partitioned processor, with a processor from the supplier per partition, if partitions are configured.
+	 */
+	private RxJavaProcessor<Object,Object> partitioned(Supplier<RxJavaProcessor<Object,Object>> processorSupplier) {
+		if (properties.getPartitions() > 1) {
+			return new PartitionedRxJavaProcessor(processorSupplier, properties.getPartitions(),
+					properties.getPartitionKeyExpression(), ProcessorSchedulers.scheduler(properties.getPartitionScheduler().trim()));
+		}
+		return processorSupplier.get();
+	}
+
+	/**
+	 * Wrap the processor if schedulers are configured.
+	 */
+	private RxJavaProcessor<Object,Object> scheduled(RxJavaProcessor<Object,Object> processor) {
+		ScheduledRxJavaProcessor scheduledProcessor = new ScheduledRxJavaProcessor(processor,
+				ProcessorSchedulers.schedulerOrNull(properties.getSubscribeOn()),
+				ProcessorSchedulers.schedulerOrNull(properties.getObserveOn()));
+		return scheduledProcessor.isScheduled() ? scheduledProcessor : processor;
+	}
+
+	/**
+	 * Wrap the processor if a ring buffer is configured.
+	 */
+	private RxJavaProcessor<Object,Object> ringBuffered(RxJavaProcessor<Object,Object> processor) {
+		if (properties.getRingBufferSize() <= 0) {
+			return processor;
+		}
+		return new RingBufferRxJavaProcessor(processor, properties.getRingBufferSize(), properties.isRingBufferMultiProducer(),
+				RingBufferRxJavaProcessor.WaitStrategy.valueOf(properties.getRingBufferWaitStrategy().trim().toUpperCase()),
+				RingBufferRxJavaProcessor.FullPolicy.valueOf(properties.getRingBufferFullPolicy().trim().toUpperCase()));
+	}
+
+	/**
+	 * Wrap the processor if metrics are configured.
+	 */
+	private RxJavaProcessor<Object,Object> metered(RxJavaProcessor<Object,Object> processor) {
+		return properties.isMetrics() ? new MeteredRxJavaProcessor(processor, ProcessorMetrics.stage("processor")) : processor;
+	}
+
 	/**
 	 * Create the source for and then compile and load a class that embodies
 	 * the supplied methodBody. The methodBody is inserted into a class template that
@@ -127,7 +379,7 @@ public class RxJavaTransformer {
 	 * @return the list of Classes produced by compiling and then loading the snippet of code
 	 */
 	private CompilationResult buildAndCompileSourceCode(String methodBody) {
-		String sourceCode = makeSourceClassDefinition(methodBody);
+		String sourceCode = makeSourceClassDefinition(methodBody, properties.getInputType(), properties.getOutputType());
 		return compiler.compile(MAIN_COMPILED_CLASS_NAME,sourceCode);
 	}
 
@@ -145,5 +397,64 @@ public class RxJavaTransformer {
 	public static String makeSourceClassDefinition(String methodBody) {
 		return String.format(SOURCE_CODE_TEMPLATE, methodBody);
 	}
+
+	/**
+	 * Make a full source code definition for a class by applying the specified method body to the RxJava
+	 * template. The method body should return an <tt>RxJavaProcessor&lt;inputType,outputType&gt;</tt>.
+	 * Primitive type names are replaced with their wrapper types (e.g. int becomes Integer).
+	 * 
+	 * @param methodBody the code to insert into the RxJava source class template
+	 * @param inputType the type of the elements in the input observable
+	 * @param outputType the type of the elements in the output observable
+	 * @return a complete Java Class definition
+	 */
+	public static String makeSourceClassDefinition(String methodBody, String inputType, String outputType) {
+		inputType = toReferenceType(inputType);
+		outputType = toReferenceType(outputType);
+		if (inputType.equals("Object") && outputType.equals("Object")) {
+			return makeSourceClassDefinition(methodBody);
+		}
+		return String.format(TYPED_SOURCE_CODE_TEMPLATE, methodBody, inputType, outputType);
+	}
+
+	/**
+	 * @param inputType the processor input type, or null
+	 * @param outputType the processor output type, or null
+	 * @return where the code snippet starts in the source made by {@link #makeSourceClassDefinition(String, String, String)}
+	 */
+	public static int getSnippetOffset(String inputType, String outputType) {
+		// Found by making the source, rather than by working through the template, so it always agrees with it
+		return makeSourceClassDefinition(SNIPPET_MARKER, inputType, outputType).indexOf(SNIPPET_MARKER);
+	}
+
+	private static String toReferenceType(String type) {
+		if (type == null) {
+			return "Object";
+		}
+		type = type.trim();
+		switch (type) {
+		case "int":
+			return "Integer";
+		case "long":
+			return "Long";
+		case "double":
+			return "Double";
+		case "float":
+			return "Float";
+		case "short":
+			return "Short";
+		case "byte":
+			return "Byte";
+		case "char":
+			return "Character";
+		case "boolean":
+			return "Boolean";
+		case "":
+		case "java.lang.Object":
+			return "Object";
+		default:
+			return type;
+		}
+	}
 	
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import org.springframework.cloud.stream.annotation.rxjava.RxJavaProcessor;
+
+import rx.Observable;
+import rx.Scheduler;
+
+/**
+ * Wraps a processor so that it runs on a scheduler rather than the thread the binder delivers input on.
+ * With an observeOn scheduler the binder thread only queues each message, the processor sees it on the
+ * scheduler (the queue is unbounded, the binder does not respond to backpressure). With a subscribeOn
+ * scheduler the subscription to the processor (and any work the code does when subscribed) happens on that
+ * scheduler.
+ *
+ * @author Andy Clement
+ */
+public class ScheduledRxJavaProcessor implements RxJavaProcessor<Object, Object> {
+
+	private final RxJavaProcessor<Object, Object> delegate;
+
+	private final Scheduler subscribeOn;
+
+	private final Scheduler observeOn;
+
+	/**
+	 * @param delegate the processor to wrap
+	 * @param subscribeOn the scheduler to subscribe to the processor on, or null
+	 * @param observeOn the scheduler the processor observes its input on, or null
+	 */
+	public ScheduledRxJavaProcessor(RxJavaProcessor<Object, Object> delegate, Scheduler subscribeOn, Scheduler observeOn) {
+		this.delegate = delegate;
+		this.subscribeOn = subscribeOn;
+		this.observeOn = observeOn;
+	}
+
+	@Override
+	public Observable<Object> process(Observable<Object> input) {
+		if (observeOn != null) {
+			input = input.onBackpressureBuffer().observeOn(observeOn);
+		}
+		Observable<Object> output = delegate.process(input);
+		if (subscribeOn != null) {
+			output = output.subscribeOn(subscribeOn);
+		}
+		return output;
+	}
+
+	/**
+	 * @return true if any scheduler is configured, otherwise there is no need to wrap a processor
+	 */
+	public boolean isScheduled() {
+		return subscribeOn != null || observeOn != null;
+	}
+
+	/**
+	 * @return the processor this one wraps
+	 */
+	public RxJavaProcessor<Object, Object> getDelegate() {
+		return delegate;
+	}
+
+}
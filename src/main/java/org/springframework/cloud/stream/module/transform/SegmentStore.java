@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.cloud.stream.module.transform.javacompiler.ByteBufferInputStream;
+
+/**
+ * An append only store of encoded elements in off heap segments (see {@link OffHeapSegments}). Each element
+ * is written as its length followed by its encoded form, an element never spans segments. Not thread safe.
+ *
+ * @author Andy Clement
+ */
+public class SegmentStore<T> {
+
+	private final ElementCodec<T> codec;
+
+	private final List<ByteBuffer> segments = new ArrayList<>();
+
+	private final EncodingBuffer encodingBuffer = new EncodingBuffer();
+
+	private final DataOutputStream encoder = new DataOutputStream(encodingBuffer);
+
+	private int size;
+
+	public SegmentStore(ElementCodec<T> codec) {
+		this.codec = codec;
+	}
+
+	/**
+	 * @param element the element to store
+	 */
+	public void append(T element) {
+		encodingBuffer.reset();
+		try {
+			codec.encode(element, encoder);
+			encoder.flush();
+		} catch (IOException ioe) {
+			throw new IllegalStateException("Unable to encode " + element, ioe);
+		}
+		int length = encodingBuffer.size();
+		ByteBuffer segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+		if (segment == null || segment.remaining() < length + 4) {
+			segment = OffHeapSegments.acquire(length + 4);
+			segments.add(segment);
+		}
+		segment.putInt(length);
+		segment.put(encodingBuffer.bytes(), 0, length);
+		size++;
+	}
+
+	/**
+	 * @return the elements stored, in the order they were appended
+	 */
+	public List<T> readAll() {
+		List<T> elements = new ArrayList<>(size);
+		for (ByteBuffer segment : segments) {
+			ByteBuffer contents = segment.duplicate();
+			contents.flip();
+			while (contents.hasRemaining()) {
+				int length = contents.getInt();
+				ByteBuffer encoded = contents.slice();
+				encoded.limit(length);
+				contents.position(contents.position() + length);
+				try {
+					elements.add(codec.decode(new DataInputStream(new ByteBufferInputStream(encoded))));
+				} catch (IOException ioe) {
+					throw new IllegalStateException("Unable to decode element " + elements.size(), ioe);
+				}
+			}
+		}
+		return elements;
+	}
+
+	/**
+	 * @return the number of elements stored
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Remove all the elements, releasing the segments they were stored in.
+	 */
+	public void clear() {
+		for (ByteBuffer segment : segments) {
+			OffHeapSegments.release(segment);
+		}
+		segments.clear();
+		size = 0;
+	}
+
+	/**
+	 * Reused for encoding each element, exposing its buffer avoids a copy.
+	 */
+	static class EncodingBuffer extends ByteArrayOutputStream {
+
+		byte[] bytes() {
+			return buf;
+		}
+	}
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Observable;
+import rx.Observable.Operator;
+import rx.Observable.Transformer;
+import rx.Subscriber;
+
+/**
+ * Metrics for one stage of a pipeline: how many elements went in and came out, how many went in
+ * that have not yet resulted in output (e.g. held by a buffering operator), how long elements wait
+ * before resulting in output and how long it takes whatever is downstream of the stage to accept
+ * each output element.
+ * <p>
+ * Input and output are not correlated element by element (a stage may filter, buffer or window), so
+ * the latency recorded for an output element is the time since the oldest input element that arrived
+ * after the previous output element. For a 1:1 stage that is the processing time, for a buffer it is
+ * the time taken to fill the buffer.
+ *
+ * @author Andy Clement
+ */
+public class StageMetrics {
+
+	private final String name;
+
+	private final AtomicLong in = new AtomicLong();
+
+	private final AtomicLong out = new AtomicLong();
+
+	private final AtomicLong pending = new AtomicLong();
+
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	private final LatencyHistogram downstream = new LatencyHistogram();
+
+	public StageMetrics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Measure a segment of a pipeline.
+	 *
+	 * @param segment the segment to measure
+	 * @return a transformer that applies the segment, recording metrics as elements pass through it
+	 */
+	public <T, R> Transformer<T, R> measure(Transformer<T, R> segment) {
+		return input -> Observable.defer(() -> {
+			Tracker<R> tracker = new Tracker<>();
+			return segment.call(input.doOnNext(element -> tracker.received())).lift(tracker);
+		});
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the number of elements that have entered the stage
+	 */
+	public long getIn() {
+		return in.get();
+	}
+
+	/**
+	 * @return the number of elements that have left the stage
+	 */
+	public long getOut() {
+		return out.get();
+	}
+
+	/**
+	 * @return the number of elements that have entered the stage since the stage last produced output
+	 */
+	public long getPending() {
+		return pending.get();
+	}
+
+	/**
+	 * @return how long elements wait in the stage before resulting in output
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * @return how long it takes downstream of the stage to accept each output element
+	 */
+	public LatencyHistogram getDownstream() {
+		return downstream;
+	}
+
+	/**
+	 * Tracks one subscription through the stage. The input and output may be on different threads.
+	 */
+	private class Tracker<R> implements Operator<R, R> {
+
+		private long oldestPending = -1;
+
+		private long pendingCount = 0;
+
+		synchronized void received() {
+			in.incrementAndGet();
+			pending.incrementAndGet();
+			if (pendingCount++ == 0) {
+				oldestPending = System.nanoTime();
+			}
+		}
+
+		synchronized void emitted() {
+			out.incrementAndGet();
+			if (pendingCount != 0) {
+				latency.record(System.nanoTime() - oldestPending);
+				pending.addAndGet(-pendingCount);
+				pendingCount = 0;
+			}
+		}
+
+		@Override
+		public Subscriber<? super R> call(Subscriber<? super R> child) {
+			return new Subscriber<R>(child) {
+
+				@Override
+				public void onNext(R element) {
+					emitted();
+					long start = System.nanoTime();
+					child.onNext(element);
+					downstream.record(System.nanoTime() - start);
+				}
+
+				@Override
+				public void onError(Throwable throwable) {
+					finished();
+					child.onError(throwable);
+				}
+
+				@Override
+				public void onCompleted() {
+					finished();
+					child.onCompleted();
+				}
+			};
+		}
+
+		private synchronized void finished() {
+			pending.addAndGet(-pendingCount);
+			pendingCount = 0;
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform.javacompiler;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.tools.JavaFileObject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An index of the classes available on a classpath, keyed by package name. Building
+ * the index walks the classpath (including nested jars in a spring boot uberjar) once,
+ * after that listing the contents of a package is a map lookup. Indexes are built on
+ * first use and then shared for the life of the JVM, so all compilations reuse them.
+ * <p>
+ * The archives opened whilst building an index are deliberately left open because
+ * the indexed JavaFileObjects read their content from them on demand.
+ *
+ * @author Andy Clement
+ */
+public class ClasspathIndex {
+
+	private static Logger logger = LoggerFactory.getLogger(ClasspathIndex.class);
+
+	private static Map<String, ClasspathIndex> indexes = new ConcurrentHashMap<>();
+
+	// Package name (dotted form, e.g. java.util) to the classes in that package, in classpath order
+	private NavigableMap<String, List<JavaFileObject>> packages = new TreeMap<>();
+
+	private List<JavaFileObject> allEntries = new ArrayList<>();
+
+	/**
+	 * Retrieve the index for a classpath, building it if this is the first request for it.
+	 *
+	 * @param classpath a classpath of jars/directories
+	 * @return the index for that classpath
+	 */
+	public static ClasspathIndex forClasspath(String classpath) {
+		return indexes.computeIfAbsent(classpath, ClasspathIndex::new);
+	}
+
+	ClasspathIndex(String classpath) {
+		long stime = System.currentTimeMillis();
+		IterableClasspath iterableClasspath = new IterableClasspath(classpath, null, false, true);
+		for (JavaFileObject jfo : iterableClasspath) {
+			String packageName = getPackageName(jfo.getName());
+			List<JavaFileObject> packageEntries = packages.get(packageName);
+			if (packageEntries == null) {
+				packageEntries = new ArrayList<>();
+				packages.put(packageName, packageEntries);
+			}
+			packageEntries.add(jfo);
+			allEntries.add(jfo);
+		}
+		logger.debug("Indexed {} classes in {} packages in {}ms", allEntries.size(), packages.size(),
+				(System.currentTimeMillis() - stime));
+	}
+
+	/**
+	 * Return the classes in a package, and optionally those in its subpackages.
+	 *
+	 * @param packageName the package of interest (e.g. com.example), or null for all classes
+	 * @param includeSubpackages if true, include results in subpackages of the specified package
+	 * @return the classes found
+	 */
+	public List<JavaFileObject> list(String packageName, boolean includeSubpackages) {
+		if (packageName == null) {
+			return Collections.unmodifiableList(allEntries);
+		}
+		if (packageName.contains(File.separator)) {
+			throw new IllegalArgumentException("Package names should use dots to separate components: "+packageName);
+		}
+		List<JavaFileObject> packageEntries = packages.get(packageName);
+		if (!includeSubpackages) {
+			return packageEntries == null ? Collections.<JavaFileObject>emptyList()
+					: Collections.unmodifiableList(packageEntries);
+		}
+		List<JavaFileObject> result = new ArrayList<>();
+		if (packageEntries != null) {
+			result.addAll(packageEntries);
+		}
+		// Subpackages of a.b all have keys starting "a.b." - since '/' follows '.' they
+		// sort between "a.b." and "a.b/" (for the unnamed package every other package is a subpackage)
+		Map<String, List<JavaFileObject>> subpackages = packageName.length() == 0 ? packages.tailMap("", false)
+				: packages.subMap(packageName + ".", true, packageName + "/", false);
+		for (List<JavaFileObject> subpackageEntries : subpackages.values()) {
+			result.addAll(subpackageEntries);
+		}
+		return result;
+	}
+
+	/**
+	 * @param packageName a package name in dotted form
+	 * @return true if the package, or one of its subpackages, contains a class
+	 */
+	public boolean hasPackage(String packageName) {
+		if (packages.containsKey(packageName)) {
+			return true;
+		}
+		// Packages like 'java' contain no classes themselves but are the parent of packages that do
+		String subpackage = packages.ceilingKey(packageName + ".");
+		return subpackage != null && subpackage.startsWith(packageName + ".");
+	}
+
+	/**
+	 * @return the number of classes in the index
+	 */
+	public int size() {
+		return allEntries.size();
+	}
+
+	private static String getPackageName(String entryName) {
+		// Example entry name: a/b/C.class
+		int lastSlash = Math.max(entryName.lastIndexOf('/'), entryName.lastIndexOf(File.separatorChar));
+		return lastSlash == -1 ? "" : entryName.substring(0, lastSlash).replace('/', '.').replace(File.separatorChar, '.');
+	}
+
+}
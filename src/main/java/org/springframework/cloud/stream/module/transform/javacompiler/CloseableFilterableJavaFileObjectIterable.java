@@ -42,7 +42,12 @@ public abstract class CloseableFilterableJavaFileObjectIterable implements Itera
 		if (packageNameFilter!=null && packageNameFilter.contains(File.separator)) {
 			throw new IllegalArgumentException("Package name filters should use dots to separate components: "+packageNameFilter);
 		}
-		this.packageNameFilter = packageNameFilter==null?null:packageNameFilter.replace('.', File.separatorChar) + "/";
+		if (packageNameFilter == null || packageNameFilter.isEmpty()) {
+			// An empty filter is the unnamed package, the classes at the root
+			this.packageNameFilter = packageNameFilter;
+		} else {
+			this.packageNameFilter = packageNameFilter.replace('.', File.separatorChar) + "/";
+		}
 		this.includeSubpackages = includeSubpackages;
 	}
 	
@@ -67,5 +72,20 @@ public abstract class CloseableFilterableJavaFileObjectIterable implements Itera
 		}
 	}
 
+	/**
+	 * @return the directory (e.g. com/example/) for the package the consumer is interested in, the empty
+	 * string for the unnamed package or null for all packages
+	 */
+	String getPackageDirectory() {
+		return packageNameFilter;
+	}
+
+	/**
+	 * @return true if classes in subpackages of the package filter should be included
+	 */
+	boolean isIncludeSubpackages() {
+		return includeSubpackages;
+	}
+
 	abstract void close();
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform.javacompiler;
+
+import java.util.List;
+
+/**
+ * A store for the output of successful compilations. Keys are content addressed (computed
+ * from the source, the compiler and the classpath) so an entry never becomes stale, a hit
+ * means the classes can be defined without running the compiler.
+ *
+ * @author Andy Clement
+ */
+public interface CompilationCache {
+
+	/**
+	 * @param key the key computed for a compilation
+	 * @return the classes previously stored for that key, or null if there are none
+	 */
+	List<CompiledClassDefinition> get(String key);
+
+	/**
+	 * @param key the key computed for a compilation
+	 * @param compiledClasses the classes produced by that compilation
+	 */
+	void put(String key, List<CompiledClassDefinition> compiledClasses);
+
+}
@@ -31,7 +31,7 @@ public class CompilationMessage {
 	private int startPosition;
 	private int endPosition;
 
-	enum Kind {
+	public enum Kind {
 		ERROR, OTHER
 	};
 
@@ -78,6 +78,52 @@ public class CompilationMessage {
 		return this.endPosition;
 	}
 
+	/**
+	 * @return the line (starting at 1) on which the message starts, or -1 if the source is not available
+	 */
+	public int getLineNumber() {
+		if (sourceCode == null || startPosition < 0) {
+			return -1;
+		}
+		int line = 1;
+		for (int i = 0, max = Math.min(startPosition, sourceCode.length()); i < max; i++) {
+			if (sourceCode.charAt(i) == '\n') {
+				line++;
+			}
+		}
+		return line;
+	}
+
+	/**
+	 * @return the column (starting at 1) at which the message starts, or -1 if the source is not available
+	 */
+	public int getColumnNumber() {
+		if (sourceCode == null || startPosition < 0) {
+			return -1;
+		}
+		int position = Math.min(startPosition, sourceCode.length());
+		return position - (sourceCode.lastIndexOf('\n', position - 1) + 1) + 1;
+	}
+
+	/**
+	 * Produce a message relative to a region of the source, for example a snippet that was inserted into
+	 * a template. Positions outside the region (e.g. a problem reported against the template) are moved to
+	 * the nearest end of it.
+	 *
+	 * @param offset where the region starts in the source
+	 * @param length the length of the region
+	 * @return a message whose source is the region and whose positions are offsets within it
+	 */
+	public CompilationMessage forRegion(int offset, int length) {
+		String regionSource = sourceCode == null ? null : sourceCode.substring(offset, offset + length);
+		if (startPosition < 0) {
+			return new CompilationMessage(kind, message, regionSource, startPosition, endPosition);
+		}
+		int regionStart = Math.max(0, Math.min(length, startPosition - offset));
+		int regionEnd = Math.max(regionStart, Math.min(length, endPosition - offset));
+		return new CompilationMessage(kind, message, regionSource, regionStart, regionEnd);
+	}
+
 	public String toString() {
 		StringBuilder s = new StringBuilder();
 		s.append("==========\n");
@@ -42,11 +42,22 @@ public class CompilationOutputCollector {
 	 * @return list of compiled classes
 	 */
 	public List<CompiledClassDefinition> getCompiledClasses() {
+		return getCompiledClasses(null);
+	}
+
+	/**
+	 * Retrieve compiled classes that were produced from a particular source file.
+	 *
+	 * @param source the source file of interest, or null for the classes from all sources
+	 * @return list of compiled classes
+	 */
+	public List<CompiledClassDefinition> getCompiledClasses(FileObject source) {
 		List<CompiledClassDefinition> compiledClassDefinitions = new ArrayList<>();
 		for (InMemoryJavaFileObject outputFile : outputFiles) {
-			if (outputFile.getKind() == Kind.CLASS) {
+			if (outputFile.getKind() == Kind.CLASS && (source == null || outputFile.getSibling() == source)) {
+				// Shares the buffer the class file was written into, it is not copied
 				CompiledClassDefinition compiledClassDefinition = new CompiledClassDefinition(outputFile.getName(),
-						outputFile.getBytes());
+						outputFile.getContentBuffer());
 				compiledClassDefinitions.add(compiledClassDefinition);
 			}
 		}
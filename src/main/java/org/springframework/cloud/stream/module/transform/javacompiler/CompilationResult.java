@@ -34,7 +34,14 @@ public class CompilationResult {
 
 	List<CompilationMessage> compilationMessages = new ArrayList<>();
 
-	List<Class<?>> compiledClasses = new ArrayList<>();
+	// Names of the compiled classes, they are only defined when first requested from the classloader
+	List<String> compiledClassNames = new ArrayList<>();
+
+	private List<Class<?>> compiledClasses;
+
+	private ClassLoader classLoader;
+
+	private long compiledBytes;
 
 	public CompilationResult(boolean successfulCompilation) {
 		this.successfulCompilation = successfulCompilation;
@@ -44,9 +51,45 @@ public class CompilationResult {
 		return successfulCompilation;
 	}
 
+	/**
+	 * @return the compiled classes, all of them are defined if they have not been already
+	 * @throws IllegalStateException if a class cannot be defined
+	 */
 	public List<Class<?>> getCompiledClasses() {
+		if (compiledClasses == null) {
+			List<Class<?>> classes = new ArrayList<>();
+			for (String compiledClassName : compiledClassNames) {
+				classes.add(getCompiledClass(compiledClassName));
+			}
+			compiledClasses = classes;
+		}
 		return compiledClasses;
 	}
+
+	/**
+	 * @return the names (dotted form) of the compiled classes, without defining them
+	 */
+	public List<String> getCompiledClassNames() {
+		return Collections.unmodifiableList(compiledClassNames);
+	}
+
+	/**
+	 * Retrieve one compiled class, defining it (and the compiled classes it depends on) if it has not been already.
+	 *
+	 * @param name the class name (dotted form, e.g. com.foo.bar.Goo)
+	 * @return the class, or null if it was not produced by this compilation
+	 * @throws IllegalStateException if the class cannot be defined
+	 */
+	public Class<?> getCompiledClass(String name) {
+		if (!compiledClassNames.contains(name)) {
+			return null;
+		}
+		try {
+			return Class.forName(name, false, classLoader);
+		} catch (ClassNotFoundException | LinkageError e) {
+			throw new IllegalStateException("Unable to define compiled class " + name, e);
+		}
+	}
 	
 	public List<CompilationMessage> getCompilationMessages() {
 		return Collections.unmodifiableList(compilationMessages);
@@ -58,12 +101,42 @@ public class CompilationResult {
 
 	public void setCompiledClasses(List<Class<?>> compiledClasses) {
 		this.compiledClasses = compiledClasses;
+		this.compiledClassNames = new ArrayList<>();
+		for (Class<?> compiledClass : compiledClasses) {
+			compiledClassNames.add(compiledClass.getName());
+		}
+	}
+
+	void setCompiledClasses(SimpleClassLoader classLoader, List<CompiledClassDefinition> compiledClasses) {
+		this.classLoader = classLoader;
+		this.compiledClasses = null;
+		this.compiledClassNames = new ArrayList<>();
+		this.compiledBytes = 0;
+		for (CompiledClassDefinition compiledClass : compiledClasses) {
+			compiledClassNames.add(compiledClass.getClassName());
+			compiledBytes += compiledClass.getSize();
+		}
 	}
 	
+	/**
+	 * @return the classloader that defined the compiled classes, or null if there are none. It is not
+	 * closed or tracked by the compiler, it stays alive for as long as the classes (or it) are referenced.
+	 */
+	public ClassLoader getClassLoader() {
+		return classLoader;
+	}
+
+	/**
+	 * @return the total size of the class files defined from this compilation
+	 */
+	public long getCompiledBytes() {
+		return compiledBytes;
+	}
+
 	public String toString() {
 		StringBuilder s = new StringBuilder();
-		s.append("Compilation result: #classes="+compiledClasses.size()+"  #messages="+compilationMessages.size()+"\n");
-		s.append("Compiled classes:\n").append(compiledClasses).append("\n");
+		s.append("Compilation result: #classes="+compiledClassNames.size()+"  #messages="+compilationMessages.size()+"\n");
+		s.append("Compiled classes:\n").append(compiledClassNames).append("\n");
 		s.append("Compilation messages:\n").append(compilationMessages).append("\n");
 		return s.toString();
 	}
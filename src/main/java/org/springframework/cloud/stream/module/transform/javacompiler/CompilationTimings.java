@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform.javacompiler;
+
+/**
+ * Records how long compilations take. The first compilation in a JVM is the cold one, it pays for
+ * building the classpath indexes and resolving the commonly used types. Later (warm) compilations,
+ * for example when the code is changed, reuse that work.
+ *
+ * @author Andy Clement
+ */
+public class CompilationTimings {
+
+	private long coldCompileTime = -1;
+
+	private long lastCompileTime = -1;
+
+	private int warmCompileCount;
+
+	private long totalWarmCompileTime;
+
+	/**
+	 * @param millis how long a compilation took
+	 * @return true if this was the first (cold) compilation recorded
+	 */
+	public synchronized boolean record(long millis) {
+		lastCompileTime = millis;
+		if (coldCompileTime == -1) {
+			coldCompileTime = millis;
+			return true;
+		}
+		warmCompileCount++;
+		totalWarmCompileTime += millis;
+		return false;
+	}
+
+	/**
+	 * @return the time in ms taken by the first compilation, or -1 if there has not been one
+	 */
+	public synchronized long getColdCompileTime() {
+		return coldCompileTime;
+	}
+
+	/**
+	 * @return the time in ms taken by the most recent compilation, or -1 if there has not been one
+	 */
+	public synchronized long getLastCompileTime() {
+		return lastCompileTime;
+	}
+
+	/**
+	 * @return the number of compilations after the first
+	 */
+	public synchronized int getWarmCompileCount() {
+		return warmCompileCount;
+	}
+
+	/**
+	 * @return the mean time in ms taken by compilations after the first, or -1 if there have not been any
+	 */
+	public synchronized long getAverageWarmCompileTime() {
+		return warmCompileCount == 0 ? -1 : totalWarmCompileTime / warmCompileCount;
+	}
+
+	public synchronized String toString() {
+		return "CompilationTimings(cold=" + coldCompileTime + "ms,#warm=" + warmCompileCount + ",averageWarm="
+				+ getAverageWarmCompileTime() + "ms,last=" + lastCompileTime + "ms)";
+	}
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform.javacompiler;
+
+/**
+ * The source code for a class to be compiled, see {@link RuntimeJavaCompiler#compile(java.util.List)}.
+ *
+ * @author Andy Clement
+ */
+public class CompilationUnit {
+
+	private String className;
+
+	private String sourceCode;
+
+	/**
+	 * @param className the name of the class (dotted form, e.g. com.foo.bar.Goo)
+	 * @param sourceCode the full source code for the class
+	 */
+	public CompilationUnit(String className, String sourceCode) {
+		this.className = className;
+		this.sourceCode = sourceCode;
+	}
+
+	public String getClassName() {
+		return this.className;
+	}
+
+	public String getSourceCode() {
+		return this.sourceCode;
+	}
+
+	public String toString() {
+		return "CompilationUnit(className=" + className + ")";
+	}
+
+}
@@ -15,7 +15,15 @@
  */
 package org.springframework.cloud.stream.module.transform.javacompiler;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Encapsulates a name with the bytes for its class definition.
@@ -24,13 +32,22 @@ import java.io.File;
  */
 public class CompiledClassDefinition {
 
-	private byte[] bytes;
+	// Position and limit of this buffer are never changed, users are given duplicates
+	private volatile ByteBuffer bytes;
 	private String filename;
 	private String classname;
 
 	public CompiledClassDefinition(String filename, byte[] bytes) {
+		this(filename, ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * @param filename the class file name, e.g. /a/b/C.class
+	 * @param bytes the class file content, between the position and limit, which is not copied
+	 */
+	public CompiledClassDefinition(String filename, ByteBuffer bytes) {
 		this.filename = filename;
-		this.bytes = bytes;
+		this.bytes = bytes.slice();
 		this.classname = filename;
 		if (classname.startsWith(File.separator)) {
 			classname = classname.substring(1);
@@ -42,16 +59,86 @@ public class CompiledClassDefinition {
 		return filename;
 	}
 
+	/**
+	 * @return the class file content as an array, which is only copied if the content is part of a larger buffer
+	 */
 	public byte[] getBytes() {
-		return bytes;
+		ByteBuffer buffer = bytes;
+		if (!buffer.hasArray() || buffer.arrayOffset() != 0 || buffer.array().length != buffer.limit()) {
+			byte[] copy = new byte[buffer.remaining()];
+			buffer.duplicate().get(copy);
+			buffer = ByteBuffer.wrap(copy);
+			bytes = buffer;
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * @return a view of the class file content, suitable for passing to defineClass without a copy
+	 */
+	public ByteBuffer getByteBuffer() {
+		return bytes.duplicate();
+	}
+
+	/**
+	 * @return the size of the class file
+	 */
+	public int getSize() {
+		return bytes.remaining();
 	}
 
 	public String toString() {
-		return "CompiledClassDefinition(name=" + getName() + ",#bytes=" + getBytes().length + ")";
+		return "CompiledClassDefinition(name=" + getName() + ",#bytes=" + getSize() + ")";
 	}
 
 	public String getClassName() {
 		return this.classname;
 	}
 
+	/**
+	 * Encode a list of definitions, for example to store them in a cache.
+	 *
+	 * @param compiledClassDefinitions the definitions to encode
+	 * @return the encoded form
+	 * @throws IOException if there is a problem encoding them
+	 */
+	public static byte[] toBytes(List<CompiledClassDefinition> compiledClassDefinitions) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (DataOutputStream dos = new DataOutputStream(baos)) {
+			dos.writeInt(compiledClassDefinitions.size());
+			for (CompiledClassDefinition compiledClassDefinition : compiledClassDefinitions) {
+				dos.writeUTF(compiledClassDefinition.getName());
+				ByteBuffer bytes = compiledClassDefinition.getByteBuffer();
+				dos.writeInt(bytes.remaining());
+				if (bytes.hasArray()) {
+					dos.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+				} else {
+					dos.write(compiledClassDefinition.getBytes());
+				}
+			}
+		}
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Decode a list of definitions produced by {@link #toBytes(List)}.
+	 *
+	 * @param bytes the encoded definitions
+	 * @return the list of definitions
+	 * @throws IOException if the data is not a valid encoding
+	 */
+	public static List<CompiledClassDefinition> fromBytes(byte[] bytes) throws IOException {
+		try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			int count = dis.readInt();
+			List<CompiledClassDefinition> compiledClassDefinitions = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				String filename = dis.readUTF();
+				byte[] classBytes = new byte[dis.readInt()];
+				dis.readFully(classBytes);
+				compiledClassDefinitions.add(new CompiledClassDefinition(filename, classBytes));
+			}
+			return compiledClassDefinitions;
+		}
+	}
+
 }
\ No newline at end of file
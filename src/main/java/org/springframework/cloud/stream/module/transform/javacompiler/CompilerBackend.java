@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform.javacompiler;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaFileObject;
+
+/**
+ * A compiler that the {@link RuntimeJavaCompiler} can delegate to. Implementations read
+ * dependencies and write their output through the supplied file manager, so whichever backend
+ * is in use the same classpath is visible and the compiled classes are collected in memory. Output
+ * files should be created with the source they were compiled from as their sibling, so that when
+ * multiple sources are compiled together each class can be attributed to its source.
+ *
+ * @author Andy Clement
+ */
+public interface CompilerBackend {
+
+	/**
+	 * @return a short name identifying the backend (e.g. javac), used in logging and cache keys
+	 */
+	String getName();
+
+	/**
+	 * Compile some sources. Any classes produced are written to the CLASS_OUTPUT location of the file manager.
+	 *
+	 * @param sources the source files to compile
+	 * @param fileManager the file manager through which types are resolved and output is written
+	 * @param compilationMessages collects errors/warnings produced during compilation, keyed by the source they
+	 * relate to (the key is null for a message not related to a particular source)
+	 * @return true if compilation of all the sources was successful
+	 */
+	boolean compile(List<JavaFileObject> sources, MemoryBasedJavaFileManager fileManager,
+			Map<JavaFileObject, List<CompilationMessage>> compilationMessages);
+
+	/**
+	 * Check some sources for problems without needing the compiled classes. By default this compiles them and
+	 * the output is ignored, backends that can stop before generating class files should do so.
+	 *
+	 * @param sources the source files to check
+	 * @param fileManager the file manager through which types are resolved
+	 * @param compilationMessages collects errors/warnings, as for {@link #compile(List, MemoryBasedJavaFileManager, Map)}
+	 * @return true if there were no errors
+	 */
+	default boolean validate(List<JavaFileObject> sources, MemoryBasedJavaFileManager fileManager,
+			Map<JavaFileObject, List<CompilationMessage>> compilationMessages) {
+		return compile(sources, fileManager, compilationMessages);
+	}
+
+}
@@ -37,10 +37,21 @@ public class DirEntryJavaFileObject implements JavaFileObject {
 
 	private File file;
 	private File basedir;
+	private String name;
 
 	public DirEntryJavaFileObject(File basedir, File file) {
+		this(basedir, file, file.getPath().substring(basedir.getPath().length()+1));
+	}
+
+	/**
+	 * @param basedir the directory on the classpath
+	 * @param file the file below it
+	 * @param name the path of the file relative to the base directory
+	 */
+	public DirEntryJavaFileObject(File basedir, File file, String name) {
 		this.basedir = basedir;
 		this.file = file;
+		this.name = name;
 	}
 
 	@Override
@@ -53,9 +64,7 @@ public class DirEntryJavaFileObject implements JavaFileObject {
 	 */
 	@Override
 	public String getName() {
-		String basedirPath = basedir.getPath();
-		String filePath = file.getPath();
-		return filePath.substring(basedirPath.length()+1);
+		return name;
 	}
 
 	@Override
@@ -16,77 +16,157 @@
 package org.springframework.cloud.stream.module.transform.javacompiler;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * Walks a directory hierarchy from some base directory discovering files.
+ * Walks a directory hierarchy from some base directory discovering files. The walk can start in a
+ * directory below the base (e.g. the directory for a package) and need not descend into subdirectories.
+ * By default each directory is read (with a DirectoryStream, closed straight away) only when the files
+ * found so far have been consumed. For very large hierarchies the walk can instead be done up front,
+ * reading directories in parallel.
  * 
  * @author Andy Clement
  */
 public class DirEnumeration implements Enumeration<File> {
 	
-//	private final static Logger logger = LoggerFactory.getLogger(DirEnumeration.class);
+	private final static Logger logger = LoggerFactory.getLogger(DirEnumeration.class);
 	
 	// The starting point
 	private File basedir; 
-	
+
+	// Where the walk starts, the base directory or one below it
+	private Path startDirectory;
+
+	private boolean recurse;
+
+	private boolean parallel;
+
 	// Candidates collected so far
-	private List<File> filesToReturn; 
+	private ArrayDeque<Path> filesToReturn; 
 
 	// Places still to explore for candidates
-	private List<File> directoriesToExplore; 
+	private ArrayDeque<Path> directoriesToExplore; 
 
 	public DirEnumeration(File basedir) {
+		this(basedir, null, true, false);
+	}
+
+	/**
+	 * @param basedir the base directory, names are relative to this
+	 * @param relativeDirectory the directory below the base to start from (e.g. a/b), or null or empty to start at the base
+	 * @param recurse if false only the files directly in the start directory are returned
+	 * @param parallel if true the whole hierarchy is walked, in parallel, when the first element is requested
+	 */
+	public DirEnumeration(File basedir, String relativeDirectory, boolean recurse, boolean parallel) {
 		this.basedir = basedir;
+		// Drop any trailing separator, a bare "/" would otherwise resolve to the filesystem root
+		while (relativeDirectory != null && (relativeDirectory.endsWith("/") || relativeDirectory.endsWith(File.separator))) {
+			relativeDirectory = relativeDirectory.substring(0, relativeDirectory.length() - 1);
+		}
+		this.startDirectory = relativeDirectory == null || relativeDirectory.isEmpty() ? basedir.toPath()
+				: basedir.toPath().resolve(relativeDirectory);
+		this.recurse = recurse;
+		this.parallel = parallel;
 	}
 
 	private void computeValue() {
 		if (filesToReturn == null) { // Indicates we haven't started yet
-			filesToReturn = new ArrayList<>();
-			directoriesToExplore = new ArrayList<>();
-			visitDirectory(basedir);
-		}
-		if (filesToReturn.size() == 0) {
-			while (filesToReturn.size() == 0 && directoriesToExplore.size() != 0) {
-				File nextDir = directoriesToExplore.get(0);
-				directoriesToExplore.remove(0);
-				visitDirectory(nextDir);
+			filesToReturn = new ArrayDeque<>();
+			directoriesToExplore = new ArrayDeque<>();
+			if (Files.isDirectory(startDirectory)) {
+				if (parallel) {
+					filesToReturn.addAll(ForkJoinPool.commonPool().invoke(new DirectoryWalk(startDirectory, recurse)));
+				} else {
+					visitDirectory(startDirectory, filesToReturn, recurse ? directoriesToExplore : null);
+				}
 			}
 		}
+		while (filesToReturn.isEmpty() && !directoriesToExplore.isEmpty()) {
+			visitDirectory(directoriesToExplore.poll(), filesToReturn, directoriesToExplore);
+		}
 	}
 	
 	@Override
 	public boolean hasMoreElements() {
 		computeValue();
-		return filesToReturn.size() != 0;
+		return !filesToReturn.isEmpty();
 	}
 
 	@Override
 	public File nextElement() {
 		computeValue();
-		if (filesToReturn.size()==0) {
+		if (filesToReturn.isEmpty()) {
 			throw new NoSuchElementException();
 		}
-		File toReturn = filesToReturn.get(0);
-		filesToReturn.remove(0);
-		return toReturn;
+		return filesToReturn.poll().toFile();
 	}
 
-	private void visitDirectory(File dir) {
-		File[] files = dir.listFiles();
-		if (files != null) {
-			for (File file: files) {
-				if (file.isDirectory()) {
-					directoriesToExplore.add(file);
+	/**
+	 * Read a directory, adding the files to one collection and the subdirectories (if a collection
+	 * for them is supplied) to another.
+	 */
+	private static void visitDirectory(Path dir, Collection<Path> files, Collection<Path> directories) {
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+			for (Path entry: entries) {
+				if (Files.isDirectory(entry)) {
+					if (directories != null) {
+						directories.add(entry);
+					}
 				} else {
-					filesToReturn.add(file);
+					files.add(entry);
 				}
 			}
+		} catch (IOException ioe) {
+			logger.debug("Unable to read directory {}", dir, ioe);
+		}
+	}
+
+	/**
+	 * Reads a directory then walks each subdirectory as a separate task, so they are read in parallel. The
+	 * files are returned in a consistent order, those in a directory then those in each subdirectory in turn.
+	 */
+	@SuppressWarnings("serial")
+	private static class DirectoryWalk extends RecursiveTask<List<Path>> {
+
+		private final Path directory;
+
+		private final boolean recurse;
+
+		DirectoryWalk(Path directory, boolean recurse) {
+			this.directory = directory;
+			this.recurse = recurse;
+		}
+
+		@Override
+		protected List<Path> compute() {
+			List<Path> files = new ArrayList<>();
+			List<Path> subdirectories = new ArrayList<>();
+			visitDirectory(directory, files, recurse ? subdirectories : null);
+			List<DirectoryWalk> walks = new ArrayList<>();
+			for (Path subdirectory : subdirectories) {
+				DirectoryWalk walk = new DirectoryWalk(subdirectory, true);
+				walk.fork();
+				walks.add(walk);
+			}
+			for (DirectoryWalk walk : walks) {
+				files.addAll(walk.join());
+			}
+			return files;
 		}
-//		logger.debug("after visiting {} filesToReturn=#{} dirsToExplore=#{}",dir,filesToReturn.size(), directoriesToExplore.size());
 	}
 
 	public File getDirectory() {
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform.javacompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A compilation cache that keeps one file per entry in a local directory, so that entries
+ * survive a restart. Problems accessing the directory are logged and treated as a miss,
+ * the compiler can always fall back to compiling.
+ *
+ * @author Andy Clement
+ */
+public class DirectoryCompilationCache implements CompilationCache {
+
+	private static Logger logger = LoggerFactory.getLogger(DirectoryCompilationCache.class);
+
+	private File directory;
+
+	public DirectoryCompilationCache(File directory) {
+		this.directory = directory;
+	}
+
+	@Override
+	public List<CompiledClassDefinition> get(String key) {
+		File file = getFile(key);
+		if (!file.exists()) {
+			return null;
+		}
+		try {
+			return CompiledClassDefinition.fromBytes(Files.readAllBytes(file.toPath()));
+		} catch (IOException ioe) {
+			logger.warn("Unable to read cached compilation {}", file, ioe);
+			return null;
+		}
+	}
+
+	@Override
+	public void put(String key, List<CompiledClassDefinition> compiledClasses) {
+		try {
+			Files.createDirectories(directory.toPath());
+			// Write to a temporary file then move it so a reader never sees a partial entry
+			Path temp = Files.createTempFile(directory.toPath(), key, ".tmp");
+			Files.write(temp, CompiledClassDefinition.toBytes(compiledClasses));
+			Files.move(temp, getFile(key).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException ioe) {
+			logger.warn("Unable to store compilation in cache directory {}", directory, ioe);
+		}
+	}
+
+	private File getFile(String key) {
+		return new File(directory, key + ".classes");
+	}
+
+	public String toString() {
+		return "DirectoryCompilationCache(directory=" + directory + ")";
+	}
+
+}
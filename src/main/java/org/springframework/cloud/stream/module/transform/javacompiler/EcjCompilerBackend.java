@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform.javacompiler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.StandardLocation;
+
+import org.eclipse.jdt.core.compiler.CategorizedProblem;
+import org.eclipse.jdt.core.compiler.CharOperation;
+import org.eclipse.jdt.internal.compiler.ClassFile;
+import org.eclipse.jdt.internal.compiler.CompilationResult;
+import org.eclipse.jdt.internal.compiler.Compiler;
+import org.eclipse.jdt.internal.compiler.DefaultErrorHandlingPolicies;
+import org.eclipse.jdt.internal.compiler.ICompilerRequestor;
+import org.eclipse.jdt.internal.compiler.batch.CompilationUnit;
+import org.eclipse.jdt.internal.compiler.env.ICompilationUnit;
+import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
+import org.eclipse.jdt.internal.compiler.problem.DefaultProblemFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compiles in process using the Eclipse Java compiler (ECJ). This works on a JRE and, for the small
+ * compilations done here, starts faster and allocates less than javac. Types are resolved through an
+ * {@link EcjNameEnvironment} over the same file manager javac would use. That environment lives as long
+ * as the backend, so the classpath types resolved by one compilation are reused by the next.
+ *
+ * @author Andy Clement
+ */
+public class EcjCompilerBackend implements CompilerBackend {
+
+	private static Logger logger = LoggerFactory.getLogger(EcjCompilerBackend.class);
+
+	private Map<String, String> settings = new HashMap<>();
+
+	private EcjNameEnvironment nameEnvironment = new EcjNameEnvironment(new MemoryBasedJavaFileManager());
+
+	public EcjCompilerBackend() {
+		settings.put(CompilerOptions.OPTION_Source, CompilerOptions.VERSION_1_8);
+		settings.put(CompilerOptions.OPTION_Compliance, CompilerOptions.VERSION_1_8);
+		settings.put(CompilerOptions.OPTION_TargetPlatform, CompilerOptions.VERSION_1_8);
+		settings.put(CompilerOptions.OPTION_LineNumberAttribute, CompilerOptions.GENERATE);
+		settings.put(CompilerOptions.OPTION_SourceFileAttribute, CompilerOptions.GENERATE);
+	}
+
+	/**
+	 * @return the environment through which this backend resolves classpath types
+	 */
+	public EcjNameEnvironment getNameEnvironment() {
+		return nameEnvironment;
+	}
+
+	@Override
+	public String getName() {
+		return "ecj";
+	}
+
+	@Override
+	public synchronized boolean compile(List<JavaFileObject> sources, MemoryBasedJavaFileManager fileManager,
+			Map<JavaFileObject, List<CompilationMessage>> compilationMessages) {
+		// Remember which source each unit came from, it is the sibling for the output files
+		Map<ICompilationUnit, JavaFileObject> units = new IdentityHashMap<>();
+		for (JavaFileObject source : sources) {
+			try {
+				String sourceCode = source.getCharContent(true).toString();
+				String fileName = source.getName().startsWith("/") ? source.getName().substring(1) : source.getName();
+				units.put(new CompilationUnit(sourceCode.toCharArray(), fileName, null), source);
+			} catch (IOException ioe) {
+				throw new IllegalStateException("Unable to read source " + source.getName(), ioe);
+			}
+		}
+		OutputRequestor requestor = new OutputRequestor(units, fileManager, compilationMessages);
+		Compiler compiler = new Compiler(nameEnvironment, DefaultErrorHandlingPolicies.proceedWithAllProblems(),
+				new CompilerOptions(settings), requestor, new DefaultProblemFactory(Locale.getDefault()));
+		compiler.compile(units.keySet().toArray(new ICompilationUnit[units.size()]));
+		return requestor.success;
+	}
+
+	/**
+	 * Receives the result of compiling each unit, recording problems and (if there were
+	 * no errors) writing the class files to the file manager.
+	 */
+	static class OutputRequestor implements ICompilerRequestor {
+
+		private Map<ICompilationUnit, JavaFileObject> units;
+
+		private MemoryBasedJavaFileManager fileManager;
+
+		private Map<JavaFileObject, List<CompilationMessage>> compilationMessages;
+
+		boolean success = true;
+
+		OutputRequestor(Map<ICompilationUnit, JavaFileObject> units, MemoryBasedJavaFileManager fileManager,
+				Map<JavaFileObject, List<CompilationMessage>> compilationMessages) {
+			this.units = units;
+			this.fileManager = fileManager;
+			this.compilationMessages = compilationMessages;
+		}
+
+		@Override
+		public void acceptResult(CompilationResult result) {
+			String sourceCode = new String(result.getCompilationUnit().getContents());
+			JavaFileObject source = units.get(result.getCompilationUnit());
+			if (result.getProblems() != null) {
+				for (CategorizedProblem problem : result.getProblems()) {
+					CompilationMessage.Kind kind = problem.isError() ? CompilationMessage.Kind.ERROR : CompilationMessage.Kind.OTHER;
+					// ECJ end positions are inclusive
+					compilationMessages.computeIfAbsent(source, s -> new ArrayList<>()).add(new CompilationMessage(kind, problem.getMessage(), sourceCode,
+							problem.getSourceStart(), problem.getSourceEnd() + 1));
+				}
+			}
+			if (result.hasErrors()) {
+				success = false;
+				return;
+			}
+			// ECJ produces nested types before their enclosing type, write top level types first as javac does
+			List<ClassFile> classFiles = new ArrayList<>();
+			int topLevelTypes = 0;
+			for (ClassFile classFile : result.getClassFiles()) {
+				classFiles.add(classFile.isNestedType ? classFiles.size() : topLevelTypes++, classFile);
+			}
+			for (ClassFile classFile : classFiles) {
+				String className = new String(CharOperation.concatWith(classFile.getCompoundName(), '.'));
+				try {
+					JavaFileObject output = fileManager.getJavaFileForOutput(StandardLocation.CLASS_OUTPUT, className, Kind.CLASS, source);
+					try (OutputStream os = output.openOutputStream()) {
+						os.write(classFile.getBytes());
+					}
+				} catch (IOException ioe) {
+					logger.error("Unexpected problem writing out class {}", className, ioe);
+					success = false;
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform.javacompiler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.tools.JavaFileManager.Location;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.StandardLocation;
+
+import org.eclipse.jdt.core.compiler.CharOperation;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFileReader;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFormatException;
+import org.eclipse.jdt.internal.compiler.env.INameEnvironment;
+import org.eclipse.jdt.internal.compiler.env.NameEnvironmentAnswer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Adapts a {@link MemoryBasedJavaFileManager} to the ECJ name environment interface, so that ECJ
+ * resolves types against the same (indexed) boot and application classpaths as javac.
+ * <p>
+ * The environment is intended to be long lived. The classpath does not change whilst the JVM is
+ * running so the parsed form of each type found, the names of types that could not be found and
+ * the package lookups are all remembered, later compilations do not repeat that work. Cached
+ * class file readers are not safe for concurrent use by multiple compilations, callers should
+ * ensure only one compilation at a time uses an environment.
+ *
+ * @author Andy Clement
+ */
+public class EcjNameEnvironment implements INameEnvironment {
+
+	private static Logger logger = LoggerFactory.getLogger(EcjNameEnvironment.class);
+
+	private static final Set<Kind> CLASS_KIND = EnumSet.of(Kind.CLASS);
+
+	private static final Location[] SEARCH_ORDER = new Location[] { StandardLocation.PLATFORM_CLASS_PATH, StandardLocation.CLASS_PATH };
+
+	private MemoryBasedJavaFileManager fileManager;
+
+	// Keyed by class file name, e.g. java/util/Map$Entry.class
+	private Map<String, ClassFileReader> types = new ConcurrentHashMap<>();
+
+	private Set<String> missingTypes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private Map<String, Boolean> packages = new ConcurrentHashMap<>();
+
+	public EcjNameEnvironment(MemoryBasedJavaFileManager fileManager) {
+		this.fileManager = fileManager;
+	}
+
+	@Override
+	public NameEnvironmentAnswer findType(char[][] compoundTypeName) {
+		int length = compoundTypeName.length;
+		return findType(compoundTypeName[length - 1], CharOperation.subarray(compoundTypeName, 0, length - 1));
+	}
+
+	@Override
+	public NameEnvironmentAnswer findType(char[] typeName, char[][] packageName) {
+		String dottedPackageName = new String(CharOperation.concatWith(packageName, '.'));
+		// Example: java/util/Map$Entry.class
+		String fileName = (dottedPackageName.length() == 0 ? "" : dottedPackageName.replace('.', '/') + "/")
+				+ new String(typeName) + Kind.CLASS.extension;
+		ClassFileReader type = types.get(fileName);
+		if (type == null) {
+			if (missingTypes.contains(fileName)) {
+				return null;
+			}
+			type = lookupType(dottedPackageName, fileName);
+			if (type == null) {
+				missingTypes.add(fileName);
+				return null;
+			}
+			types.put(fileName, type);
+		}
+		return new NameEnvironmentAnswer(type, null);
+	}
+
+	private ClassFileReader lookupType(String dottedPackageName, String fileName) {
+		try {
+			for (Location location : SEARCH_ORDER) {
+				for (JavaFileObject jfo : fileManager.list(location, dottedPackageName, CLASS_KIND, false)) {
+					if (jfo.getName().equals(fileName)) {
+						return readClassFile(jfo, fileName);
+					}
+				}
+			}
+		} catch (IOException | ClassFormatException e) {
+			logger.debug("Unable to load type {}", fileName, e);
+		}
+		return null;
+	}
+
+	@Override
+	public boolean isPackage(char[][] parentPackageName, char[] packageName) {
+		String dottedPackageName = new String(CharOperation.concatWith(parentPackageName, packageName, '.'));
+		Boolean isPackage = packages.get(dottedPackageName);
+		if (isPackage == null) {
+			isPackage = fileManager.isPackage(dottedPackageName);
+			packages.put(dottedPackageName, isPackage);
+		}
+		return isPackage;
+	}
+
+	@Override
+	public void cleanup() {
+		// Called by ECJ when a compilation finishes, the cached lookups are deliberately retained
+	}
+
+	/**
+	 * @return the number of types whose parsed form is cached
+	 */
+	public int getCachedTypeCount() {
+		return types.size();
+	}
+
+	private ClassFileReader readClassFile(JavaFileObject jfo, String fileName) throws IOException, ClassFormatException {
+		try (InputStream is = jfo.openInputStream()) {
+			return new ClassFileReader(StreamUtils.copyToByteArray(is), fileName.toCharArray());
+		}
+	}
+
+}
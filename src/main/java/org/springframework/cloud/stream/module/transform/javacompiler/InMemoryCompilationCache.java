@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform.javacompiler;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compilation cache that lives for the life of the JVM. It holds a limited number of
+ * entries, the least recently used is evicted to make room.
+ *
+ * @author Andy Clement
+ */
+public class InMemoryCompilationCache implements CompilationCache {
+
+	public static final int DEFAULT_MAX_ENTRIES = 16;
+
+	private final Map<String, List<CompiledClassDefinition>> cache;
+
+	public InMemoryCompilationCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * @param maxEntries how many compilations to hold
+	 */
+	@SuppressWarnings("serial")
+	public InMemoryCompilationCache(int maxEntries) {
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("Cache size must be greater than zero: " + maxEntries);
+		}
+		// Access ordered, so the eldest entry is the least recently used
+		cache = new LinkedHashMap<String, List<CompiledClassDefinition>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, List<CompiledClassDefinition>> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	@Override
+	public List<CompiledClassDefinition> get(String key) {
+		synchronized (cache) {
+			return cache.get(key);
+		}
+	}
+
+	@Override
+	public void put(String key, List<CompiledClassDefinition> compiledClasses) {
+		synchronized (cache) {
+			cache.put(key, compiledClasses);
+		}
+	}
+
+	public int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+}
@@ -15,19 +15,22 @@
  */
 package org.springframework.cloud.stream.module.transform.javacompiler;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.CharArrayWriter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.StringReader;
 import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.NestingKind;
@@ -44,12 +47,20 @@ import org.slf4j.LoggerFactory;
  * artifact producing during compilation (a .class file or some other thing if an annotation
  * processor has run). In order to be clear what it is being used for there are static factory
  * methods that ask for specific types of file.
+ * <p>
+ * Content is held in a single buffer: when an output stream is closed what was written is trimmed to an
+ * exactly sized array (unless it already is one), that is then viewed through a ByteBuffer that is passed
+ * on as is (e.g. to define a class) and returned from getBytes() of the class definition without a copy.
+ * Text is encoded and decoded as UTF-8 and the text of a source file is kept so getCharContent()
+ * does not decode it each time.
  * 
  * @author Andy Clement
  */
 public class InMemoryJavaFileObject implements JavaFileObject {
 
 	private final static Logger logger = LoggerFactory.getLogger(InMemoryJavaFileObject.class);
+
+	static final Charset CHARSET = StandardCharsets.UTF_8;
 	
 	private Location location;
 	private String packageName;
@@ -58,7 +69,9 @@ public class InMemoryJavaFileObject implements JavaFileObject {
 	private String className;
 	private Kind kind;
 	
-	private byte[] content = null;
+	// A view of the content, the position and limit of this buffer are never changed
+	private ByteBuffer content = null;
+	private String charContent = null;
 	private long lastModifiedTime = 0;
 	private URI uri = null;
 	
@@ -88,12 +101,46 @@ public class InMemoryJavaFileObject implements JavaFileObject {
 		retval.location = StandardLocation.SOURCE_PATH;
 		retval.className = className;
 		retval.kind = Kind.SOURCE;
-		retval.content = content.getBytes();
+		retval.charContent = content;
 		return retval;
 	}
-	
+
+	/**
+	 * @return a copy of the content, or null if there is none. Use {@link #getContent()} to avoid the copy.
+	 */
 	public byte[] getBytes() {
-		return content;
+		ByteBuffer buffer = getContent();
+		if (buffer == null) {
+			return null;
+		}
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * @return a read only view of the content, or null if there is none
+	 */
+	public ByteBuffer getContent() {
+		if (content == null && charContent != null) {
+			content = ByteBuffer.wrap(charContent.getBytes(CHARSET));
+		}
+		return content == null ? null : content.asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return a writable view of the content, so the backing array can be used directly, or null if there is none
+	 */
+	ByteBuffer getContentBuffer() {
+		getContent();
+		return content == null ? null : content.duplicate();
+	}
+
+	/**
+	 * @return for an output file, the file (typically the source) it was produced from, if known
+	 */
+	public FileObject getSibling() {
+		return sibling;
 	}
 
 	public String toString() {
@@ -131,11 +178,12 @@ public class InMemoryJavaFileObject implements JavaFileObject {
 
 	@Override
 	public InputStream openInputStream() throws IOException {
-		if (content == null) {
+		ByteBuffer buffer = getContent();
+		if (buffer == null) {
 			throw new FileNotFoundException();
 		}
 		logger.debug("opening input stream for {}",getName());
-		return new ByteArrayInputStream(content);
+		return new ByteBufferInputStream(buffer);
 	}
 
 	@Override
@@ -146,14 +194,20 @@ public class InMemoryJavaFileObject implements JavaFileObject {
 			public void close() throws IOException {
 				super.close();
 				lastModifiedTime = System.currentTimeMillis();
-				content = this.toByteArray();
+				// The stream is finished with, so its buffer can be kept if it is exactly the right size. Otherwise it is
+				// trimmed, once, so an oversized array is not kept alive and users of the content get an exact array.
+				content = ByteBuffer.wrap(count == buf.length ? buf : Arrays.copyOf(buf, count));
+				charContent = null;
 			}
 		};
 	}
 
 	@Override
 	public Reader openReader(boolean ignoreEncodingErrors) throws IOException {
-		return new InputStreamReader(openInputStream(), Charset.defaultCharset());
+		if (charContent != null) {
+			return new StringReader(charContent);
+		}
+		return new InputStreamReader(openInputStream(), CHARSET);
 	}
 
 	@Override
@@ -161,8 +215,10 @@ public class InMemoryJavaFileObject implements JavaFileObject {
 		if (kind!=Kind.SOURCE) {
 			throw new UnsupportedOperationException("getCharContent() not supported on file object: " + getName());
 		}
-		// Not yet supporting encodings
-		return (content==null?null:new String(content));
+		if (charContent == null && content != null) {
+			charContent = CHARSET.decode(content.duplicate()).toString();
+		}
+		return charContent;
 	}
 
 	@Override
@@ -171,13 +227,7 @@ public class InMemoryJavaFileObject implements JavaFileObject {
 //		if (kind == Kind.CLASS) {
 //			throw new UnsupportedOperationException("openWriter() not supported on file object: " + getName());
 //		}
-		return new CharArrayWriter() {
-			@Override
-			public void close() {
-				lastModifiedTime = System.currentTimeMillis();
-				content = new String(toCharArray()).getBytes(); // Ignoring encoding...
-			};
-		};
+		return new OutputStreamWriter(openOutputStream(), CHARSET);
 	}
 
 	@Override
@@ -18,15 +18,11 @@ package org.springframework.cloud.stream.module.transform.javacompiler;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Stack;
 import java.util.StringTokenizer;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
 
 import javax.tools.JavaFileObject;
 
@@ -37,7 +33,8 @@ import org.slf4j.LoggerFactory;
  * Iterable that will produce an iterator that returns classes found
  * on a specified classpath that meet specified criteria. For jars it finds, the
  * iterator will go into nested jars - this handles the situation with a 
- * spring boot uberjar.
+ * spring boot uberjar. Jars are memory mapped and read via their central
+ * directory (see {@link ZipDirectory}).
  * 
  * @author Andy Clement
  */
@@ -47,7 +44,9 @@ public class IterableClasspath extends CloseableFilterableJavaFileObjectIterable
 	
 	private List<File> classpathEntries = new ArrayList<>();
 	
-	private List<ZipFile> openArchives = new ArrayList<>();
+	private List<ZipDirectory> openArchives = new ArrayList<>();
+
+	private boolean parallelDirectoryWalk;
 
 	/**
 	 * @param classpath a classpath of jars/directories
@@ -55,7 +54,19 @@ public class IterableClasspath extends CloseableFilterableJavaFileObjectIterable
 	 * @param includeSubpackages if true, include results in subpackages of the specified package filter
 	 */
 	IterableClasspath(String classpath, String packageNameFilter, boolean includeSubpackages) {
+		this(classpath, packageNameFilter, includeSubpackages, false);
+	}
+
+	/**
+	 * @param classpath a classpath of jars/directories
+	 * @param packageNameFilter an optional package name if choosing to filter (e.g. com.example)
+	 * @param includeSubpackages if true, include results in subpackages of the specified package filter
+	 * @param parallelDirectoryWalk if true directories are walked using several threads, worthwhile when
+	 * all of a large directory is going to be read (e.g. to index it)
+	 */
+	IterableClasspath(String classpath, String packageNameFilter, boolean includeSubpackages, boolean parallelDirectoryWalk) {
 		super(packageNameFilter, includeSubpackages);
+		this.parallelDirectoryWalk = parallelDirectoryWalk;
 		StringTokenizer tokenizer = new StringTokenizer(classpath, File.pathSeparator);
 		while (tokenizer.hasMoreElements()) {
 			String nextEntry = tokenizer.nextToken();
@@ -69,13 +80,7 @@ public class IterableClasspath extends CloseableFilterableJavaFileObjectIterable
 	}
 
 	public void close() {
-		for (ZipFile openArchive : openArchives) {
-			try {
-				openArchive.close();
-			} catch (IOException ioe) {
-				logger.debug("Unexpected error closing archive {}",openArchive,ioe);
-			}
-		}
+		// Nothing to release explicitly, the mappings are freed when the archives are no longer referenced
 		openArchives.clear();
 	}
 
@@ -90,76 +95,85 @@ public class IterableClasspath extends CloseableFilterableJavaFileObjectIterable
 		private File openDirectory = null;
 		private DirEnumeration openDirectoryEnumeration = null;
 
-		private ZipFile openArchive = null;
+		private ZipDirectory openArchive = null;
 		private File openFile = null;
-		private ZipEntry nestedZip = null;
-		private Stack<Enumeration<? extends ZipEntry>> openArchiveEnumeration = null;
+		private ZipDirectory.Entry nestedZip = null;
+		private ZipDirectory nestedZipDirectory = null;
+		private Stack<Iterator<ZipDirectory.Entry>> openArchiveEnumeration = null;
 
 		private JavaFileObject nextEntry = null;
 
 		private void findNext() {
 			if (nextEntry == null) {
-				try {
-					while (openArchive!=null || openDirectory!=null || currentClasspathEntriesIndex < classpathEntries.size()) {
-						if (openArchive == null && openDirectory == null) {
-							// Open the next item
-							File nextFile = classpathEntries.get(currentClasspathEntriesIndex);
-							if (nextFile.isDirectory()) {
-								openDirectory = nextFile;
-								openDirectoryEnumeration = new DirEnumeration(nextFile);
-							} else {
-								openFile = nextFile;
-								openArchive = new ZipFile(nextFile);
-								openArchives.add(openArchive);
-								openArchiveEnumeration = new Stack<Enumeration<? extends ZipEntry>>();
-								openArchiveEnumeration.push(openArchive.entries());
+				while (openArchive!=null || openDirectory!=null || currentClasspathEntriesIndex < classpathEntries.size()) {
+					if (openArchive == null && openDirectory == null) {
+						// Open the next item
+						File nextFile = classpathEntries.get(currentClasspathEntriesIndex++);
+						if (nextFile.isDirectory()) {
+							openDirectory = nextFile;
+							// Only the directory for the package of interest (and perhaps its subdirectories) is walked
+							String packageDirectory = getPackageDirectory();
+							openDirectoryEnumeration = new DirEnumeration(nextFile, packageDirectory,
+									packageDirectory == null || isIncludeSubpackages(), parallelDirectoryWalk);
+						} else {
+							try {
+								openArchive = new ZipDirectory(nextFile);
+							} catch (IOException ioe) {
+								// Skip just this entry, the rest of the classpath is still usable
+								logger.debug("Unable to open archive {}, skipping it",nextFile,ioe);
+								continue;
 							}
-							currentClasspathEntriesIndex++;
+							openFile = nextFile;
+							openArchives.add(openArchive);
+							openArchiveEnumeration = new Stack<Iterator<ZipDirectory.Entry>>();
+							openArchiveEnumeration.push(openArchive.getEntries().iterator());
 						}
-						if (openArchiveEnumeration != null) {
-							while (!openArchiveEnumeration.isEmpty()) {
-								while (openArchiveEnumeration.peek().hasMoreElements()) {
-									ZipEntry entry = openArchiveEnumeration.peek().nextElement();
-									String entryName = entry.getName();
-									if (accept(entryName)) {
-										if (nestedZip!=null) {
-											nextEntry = new NestedZipEntryJavaFileObject(openFile, openArchive,nestedZip, entry);										
-										} else {
-											nextEntry = new ZipEntryJavaFileObject(openFile, openArchive, entry);
-										}
-										return;
-									} else if (nestedZip == null && entryName.startsWith("lib/") && entryName.endsWith(".jar")) {
-										// nested jar in uber jar
-										logger.debug("opening nested archive {}",entry.getName());
-										ZipInputStream zis = new ZipInputStream(openArchive.getInputStream(entry));
-	//									nextEntry = new NestedZipEntryJavaFileObject(openArchive.firstElement(),openArchive.peek(),entry);
-										Enumeration<? extends ZipEntry> nestedZipEnumerator = new ZipEnumerator(zis);
-										nestedZip = entry;
-										openArchiveEnumeration.push(nestedZipEnumerator);
+					}
+					if (openArchiveEnumeration != null) {
+						while (!openArchiveEnumeration.isEmpty()) {
+							while (openArchiveEnumeration.peek().hasNext()) {
+								ZipDirectory.Entry entry = openArchiveEnumeration.peek().next();
+								String entryName = entry.getName();
+								if (accept(entryName)) {
+									if (nestedZip!=null) {
+										nextEntry = new NestedZipEntryJavaFileObject(openFile, nestedZip, nestedZipDirectory, entry);
+									} else {
+										nextEntry = new ZipEntryJavaFileObject(openFile, openArchive, entry);
 									}
-								}
-								openArchiveEnumeration.pop();
-								if (nestedZip ==null) { openArchive = null; openFile = null; }
-								else nestedZip = null;
-							}
-							openArchiveEnumeration = null;
-							openArchive = null;
-							openFile = null;
-						} else if (openDirectoryEnumeration != null) {
-							while (openDirectoryEnumeration.hasMoreElements()) {
-								File entry = openDirectoryEnumeration.nextElement();
-								String name = openDirectoryEnumeration.getName(entry);
-								if (accept(name)) {
-									nextEntry = new DirEntryJavaFileObject(openDirectoryEnumeration.getDirectory(), entry);
 									return;
+								} else if (nestedZip == null && entryName.startsWith("lib/") && entryName.endsWith(".jar")) {
+									// nested jar in uber jar, a view onto the outer archive if it is stored uncompressed
+									logger.debug("opening nested archive {}",entry.getName());
+									try {
+										nestedZipDirectory = openArchive.getNestedDirectory(entry);
+									} catch (IOException ioe) {
+										// Skip just this nested jar and carry on with the rest of the outer archive
+										logger.debug("Unable to open nested archive {} in {}, skipping it",entryName,openFile,ioe);
+										continue;
+									}
+									nestedZip = entry;
+									openArchiveEnumeration.push(nestedZipDirectory.getEntries().iterator());
 								}
 							}
-							openDirectoryEnumeration = null;
-							openDirectory = null;
+							openArchiveEnumeration.pop();
+							if (nestedZip ==null) { openArchive = null; openFile = null; }
+							else { nestedZip = null; nestedZipDirectory = null; }
 						}
+						openArchiveEnumeration = null;
+						openArchive = null;
+						openFile = null;
+					} else if (openDirectoryEnumeration != null) {
+						while (openDirectoryEnumeration.hasMoreElements()) {
+							File entry = openDirectoryEnumeration.nextElement();
+							String name = openDirectoryEnumeration.getName(entry);
+							if (accept(name)) {
+								nextEntry = new DirEntryJavaFileObject(openDirectoryEnumeration.getDirectory(), entry, name);
+								return;
+							}
+						}
+						openDirectoryEnumeration = null;
+						openDirectory = null;
 					}
-				} catch (IOException ioe) {
-					logger.debug("Unexpected error whilst processing classpath entries",ioe);
 				}
 			}
 		}
@@ -181,31 +195,4 @@ public class IterableClasspath extends CloseableFilterableJavaFileObjectIterable
 
 	}
 
-	static class ZipEnumerator implements Enumeration<ZipEntry>{
-
-		private ZipInputStream zis;
-		private ZipEntry nextEntry = null;
-
-		public ZipEnumerator(ZipInputStream zis) {
-			this.zis = zis;
-		}
-
-		@Override
-		public boolean hasMoreElements() {
-			try {
-				nextEntry = zis.getNextEntry();
-			} catch (IOException ioe) {
-				nextEntry=null;
-			}
-			return nextEntry!=null;
-		}
-
-		@Override
-		public ZipEntry nextElement() {
-			ZipEntry retval = nextEntry;
-			nextEntry = null;
-			return retval;
-		}
-		
-	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform.javacompiler;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.Diagnostic;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.JavaFileObject;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles using the JDK provided compiler (javac). Only available when running on a JDK, a JRE
+ * does not include a system Java compiler.
+ *
+ * @author Andy Clement
+ */
+public class JavacCompilerBackend implements CompilerBackend {
+
+	private JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+	public JavacCompilerBackend() {
+		if (compiler == null) {
+			throw new IllegalStateException("No system Java compiler is available, is this running on a JRE rather than a JDK?");
+		}
+	}
+
+	/**
+	 * @return true if the JVM provides a system Java compiler
+	 */
+	public static boolean isAvailable() {
+		return ToolProvider.getSystemJavaCompiler() != null;
+	}
+
+	@Override
+	public String getName() {
+		return "javac";
+	}
+
+	@Override
+	public boolean compile(List<JavaFileObject> sources, MemoryBasedJavaFileManager fileManager,
+			Map<JavaFileObject, List<CompilationMessage>> compilationMessages) {
+		DiagnosticCollector<JavaFileObject> diagnosticCollector = new DiagnosticCollector<JavaFileObject>();
+		CompilationTask task = compiler.getTask(null, fileManager, diagnosticCollector, null, null, sources);
+		boolean success = task.call();
+		collectMessages(diagnosticCollector, compilationMessages);
+		return success;
+	}
+
+	/**
+	 * Parse, attribute and flow analyze the sources (using JavacTask.analyze()) but do not generate class
+	 * files. JavacTask is not on the default compile classpath of a JDK 8 so it is called reflectively, if
+	 * that is not possible the sources are compiled.
+	 */
+	@Override
+	public boolean validate(List<JavaFileObject> sources, MemoryBasedJavaFileManager fileManager,
+			Map<JavaFileObject, List<CompilationMessage>> compilationMessages) {
+		DiagnosticCollector<JavaFileObject> diagnosticCollector = new DiagnosticCollector<JavaFileObject>();
+		CompilationTask task = compiler.getTask(null, fileManager, diagnosticCollector, null, null, sources);
+		Method analyze = getAnalyzeMethod(task);
+		if (analyze == null) {
+			task.call();
+		} else {
+			try {
+				analyze.invoke(task);
+			} catch (InvocationTargetException ite) {
+				if (ite.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) ite.getCause();
+				}
+				throw new IllegalStateException("Unexpected problem analyzing sources", ite.getCause());
+			} catch (IllegalAccessException iae) {
+				task.call();
+			}
+		}
+		collectMessages(diagnosticCollector, compilationMessages);
+		for (Diagnostic<? extends JavaFileObject> diagnostic : diagnosticCollector.getDiagnostics()) {
+			if (diagnostic.getKind() == Kind.ERROR) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Method getAnalyzeMethod(CompilationTask task) {
+		try {
+			Class<?> javacTask = Class.forName("com.sun.source.util.JavacTask", false, task.getClass().getClassLoader());
+			return javacTask.isInstance(task) ? javacTask.getMethod("analyze") : null;
+		} catch (ClassNotFoundException | NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static void collectMessages(DiagnosticCollector<JavaFileObject> diagnosticCollector,
+			Map<JavaFileObject, List<CompilationMessage>> compilationMessages) {
+		// If successful there may be no errors but there might be info/warnings
+		for (Diagnostic<? extends JavaFileObject> diagnostic : diagnosticCollector.getDiagnostics()) {
+			CompilationMessage.Kind kind = (diagnostic.getKind()==Kind.ERROR?CompilationMessage.Kind.ERROR:CompilationMessage.Kind.OTHER);
+			String sourceCode = null;
+			if (diagnostic.getSource() != null) {
+				try {
+					sourceCode = (String)diagnostic.getSource().getCharContent(true);
+				} catch (IOException ioe) {
+					// Unexpected, but leave sourceCode null to indicate it was not retrievable
+				}
+			}
+			int startPosition = (int)diagnostic.getPosition();
+			if (startPosition == Diagnostic.NOPOS) {
+				startPosition = (int)diagnostic.getStartPosition();
+			}
+			compilationMessages.computeIfAbsent(diagnostic.getSource(), source -> new ArrayList<>()).add(new CompilationMessage(kind,diagnostic.getMessage(null),sourceCode,startPosition,(int)diagnostic.getEndPosition()));
+		}
+	}
+
+}
@@ -16,10 +16,13 @@
 package org.springframework.cloud.stream.module.transform.javacompiler;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.tools.FileObject;
 import javax.tools.JavaFileManager;
@@ -43,7 +46,15 @@ public class MemoryBasedJavaFileManager implements JavaFileManager {
 	
 	private CompilationOutputCollector outputCollector;
 
-	private List<CloseableFilterableJavaFileObjectIterable> toClose = new ArrayList<>();
+	// The compiler probes many packages that do not exist (e.g. for each import-on-demand whilst resolving
+	// a simple name). Packages known to contain no classes, not even in subpackages, are remembered per location
+	// and, as the classpath does not change, shared by all file managers.
+	private static Map<Location, Set<String>> emptyPackages = new HashMap<>();
+
+	static {
+		emptyPackages.put(StandardLocation.PLATFORM_CLASS_PATH, Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()));
+		emptyPackages.put(StandardLocation.CLASS_PATH, Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()));
+	}
 
 	public MemoryBasedJavaFileManager() {
 		outputCollector = new CompilationOutputCollector();
@@ -67,17 +78,23 @@ public class MemoryBasedJavaFileManager implements JavaFileManager {
 	public Iterable<JavaFileObject> list(Location location, String packageName, Set<Kind> kinds, boolean recurse)
 			throws IOException {
 		logger.debug("list({},{},{},{})",location,packageName,kinds,recurse);
-		CloseableFilterableJavaFileObjectIterable resultIterable = null;
-		if (location == StandardLocation.PLATFORM_CLASS_PATH && (kinds==null || kinds.contains(Kind.CLASS))) {
-			String sunBootClassPath = System.getProperty("sun.boot.class.path");
-			logger.debug("Creating iterable for boot class path: {}",sunBootClassPath);
-			resultIterable = new IterableClasspath(sunBootClassPath, packageName, recurse);
-			toClose.add(resultIterable);
-		} else if (location == StandardLocation.CLASS_PATH && (kinds==null || kinds.contains(Kind.CLASS))) {
-			String javaClassPath = System.getProperty("java.class.path");
-			logger.debug("Creating iterable for class path: {}",javaClassPath);
-			resultIterable = new IterableClasspath(javaClassPath, packageName, recurse);
-			toClose.add(resultIterable);
+		Iterable<JavaFileObject> resultIterable = null;
+		if ((location == StandardLocation.PLATFORM_CLASS_PATH || location == StandardLocation.CLASS_PATH) &&
+				(kinds==null || kinds.contains(Kind.CLASS))) {
+			Set<String> emptyPackagesForLocation = emptyPackages.get(location);
+			if (packageName != null && emptyPackagesForLocation.contains(packageName)) {
+				resultIterable = EmptyIterable.instance;
+			} else {
+				// The index is built on first use then shared across all compilations
+				ClasspathIndex classpathIndex = getClasspathIndex(location);
+				// The unnamed package is never recorded, every other package is its subpackage
+				if (packageName != null && packageName.length() != 0 && !classpathIndex.hasPackage(packageName)) {
+					emptyPackagesForLocation.add(packageName);
+					resultIterable = EmptyIterable.instance;
+				} else {
+					resultIterable = classpathIndex.list(packageName, recurse);
+				}
+			}
 		} else if (location == StandardLocation.SOURCE_PATH) {
 			// There are no 'extra sources'
 			resultIterable = EmptyIterable.instance;
@@ -155,8 +172,35 @@ public class MemoryBasedJavaFileManager implements JavaFileManager {
 
 	@Override
 	public void close() throws IOException {
-		for (CloseableFilterableJavaFileObjectIterable closeable: toClose) {
-			closeable.close();
+		// Nothing to close, the classpath indexes (and the archives they reference) are shared
+	}
+
+	/**
+	 * Determine whether a package exists on the boot or application classpath. A package
+	 * exists if it, or any of its subpackages, contains a class.
+	 *
+	 * @param packageName the package name in dotted form (e.g. java.util)
+	 * @return true if the package exists
+	 */
+	public boolean isPackage(String packageName) {
+		return getClasspathIndex(StandardLocation.PLATFORM_CLASS_PATH).hasPackage(packageName) ||
+				getClasspathIndex(StandardLocation.CLASS_PATH).hasPackage(packageName);
+	}
+
+	/**
+	 * @param location the location of interest, PLATFORM_CLASS_PATH or CLASS_PATH
+	 * @param packageName a package name in dotted form
+	 * @return true if the package has previously been found to contain no classes in that location
+	 */
+	static boolean isKnownEmptyPackage(Location location, String packageName) {
+		return emptyPackages.get(location).contains(packageName);
+	}
+
+	private ClasspathIndex getClasspathIndex(Location location) {
+		if (location == StandardLocation.PLATFORM_CLASS_PATH) {
+			return ClasspathIndex.forClasspath(System.getProperty("sun.boot.class.path"));
+		} else {
+			return ClasspathIndex.forClasspath(System.getProperty("java.class.path"));
 		}
 	}
 
@@ -164,4 +208,12 @@ public class MemoryBasedJavaFileManager implements JavaFileManager {
 		return outputCollector.getCompiledClasses();
 	}
 
+	/**
+	 * @param source a source file that was compiled
+	 * @return the classes compiled from that source
+	 */
+	public List<CompiledClassDefinition> getCompiledClasses(FileObject source) {
+		return outputCollector.getCompiledClasses(source);
+	}
+
 }
\ No newline at end of file
@@ -18,15 +18,11 @@ package org.springframework.cloud.stream.module.transform.javacompiler;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
 
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.NestingKind;
@@ -36,23 +32,26 @@ import javax.tools.JavaFileObject;
  * Represents an element inside in zip which is itself inside a zip. These objects are
  * not initially created with the content of the file they represent,
  * only enough information to find that content because many will
- * typically be created but only few will be opened.
+ * typically be created but only few will be opened. If the inner zip is stored
+ * (uncompressed) in the outer zip, as spring boot does, the content is read directly
+ * from its offset in the memory mapped outer file rather than by scanning the inner zip.
  * 
  * @author Andy Clement
  */
 public class NestedZipEntryJavaFileObject implements JavaFileObject {
 
 	private File outerFile;
-	private ZipFile outerZipFile;
-	private ZipEntry innerZipFile;
-	private ZipEntry innerZipFileEntry;
+	private ZipDirectory.Entry innerZipFile;
+	private ZipDirectory innerZipDirectory;
+	private ZipDirectory.Entry innerZipFileEntry;
 
 	private URI uri;
 
-	public NestedZipEntryJavaFileObject(File outerFile, ZipFile outerZipFile, ZipEntry innerZipFile, ZipEntry innerZipFileEntry) {
+	public NestedZipEntryJavaFileObject(File outerFile, ZipDirectory.Entry innerZipFile, ZipDirectory innerZipDirectory,
+			ZipDirectory.Entry innerZipFileEntry) {
 		this.outerFile = outerFile;
-		this.outerZipFile = outerZipFile;
 		this.innerZipFile = innerZipFile;
+		this.innerZipDirectory = innerZipDirectory;
 		this.innerZipFileEntry = innerZipFileEntry;
 	}
 
@@ -77,18 +76,7 @@ public class NestedZipEntryJavaFileObject implements JavaFileObject {
 	
 	@Override
 	public InputStream openInputStream() throws IOException {
-		// Find the inner zip file inside the outer zip file, then
-		// find the relevant entry, then return the stream.
-		InputStream innerZipFileInputStream = this.outerZipFile.getInputStream(innerZipFile);
-		ZipInputStream innerZipInputStream = new ZipInputStream(innerZipFileInputStream);
-		ZipEntry nextEntry = innerZipInputStream.getNextEntry();
-		while (nextEntry != null) {
-			if (nextEntry.getName().equals(innerZipFileEntry.getName())) {
-				return innerZipInputStream;
-			}
-			nextEntry = innerZipInputStream.getNextEntry();
-		}
-		throw new IllegalStateException("Unable to locate nested zip entry "+innerZipFileEntry.getName()+" in zip "+innerZipFile.getName()+" inside zip "+outerZipFile.getName());
+		return innerZipDirectory.getInputStream(innerZipFileEntry);
 	}
 
 	@Override
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform.javacompiler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+/**
+ * A compilation cache shared by all the instances connected to the same Redis (for example
+ * the one used by the Redis binder), so a scaled out processor only compiles once. Problems
+ * talking to Redis are logged and treated as a miss.
+ *
+ * @author Andy Clement
+ */
+public class RedisCompilationCache implements CompilationCache {
+
+	private static Logger logger = LoggerFactory.getLogger(RedisCompilationCache.class);
+
+	private static final String KEY_PREFIX = "prxj:compilation:";
+
+	// Entries are never stale but unused ones should not accumulate forever
+	private static final long EXPIRY_SECONDS = 7 * 24 * 60 * 60;
+
+	private RedisConnectionFactory connectionFactory;
+
+	public RedisCompilationCache(RedisConnectionFactory connectionFactory) {
+		this.connectionFactory = connectionFactory;
+	}
+
+	@Override
+	public List<CompiledClassDefinition> get(String key) {
+		RedisConnection connection = null;
+		try {
+			connection = connectionFactory.getConnection();
+			byte[] value = connection.get(toRedisKey(key));
+			return value == null ? null : CompiledClassDefinition.fromBytes(value);
+		} catch (DataAccessException | IOException e) {
+			logger.warn("Unable to read cached compilation {} from redis", key, e);
+			return null;
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+		}
+	}
+
+	@Override
+	public void put(String key, List<CompiledClassDefinition> compiledClasses) {
+		RedisConnection connection = null;
+		try {
+			connection = connectionFactory.getConnection();
+			connection.setEx(toRedisKey(key), EXPIRY_SECONDS, CompiledClassDefinition.toBytes(compiledClasses));
+		} catch (DataAccessException | IOException e) {
+			logger.warn("Unable to store compilation {} in redis", key, e);
+		} finally {
+			if (connection != null) {
+				connection.close();
+			}
+		}
+	}
+
+	private byte[] toRedisKey(String key) {
+		return (KEY_PREFIX + key).getBytes(StandardCharsets.UTF_8);
+	}
+
+}
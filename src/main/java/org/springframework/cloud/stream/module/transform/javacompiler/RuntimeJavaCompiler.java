@@ -15,94 +15,293 @@
  */
 package org.springframework.cloud.stream.module.transform.javacompiler;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.TreeMap;
 
-import javax.tools.Diagnostic;
-import javax.tools.Diagnostic.Kind;
-import javax.tools.DiagnosticCollector;
-import javax.tools.JavaCompiler;
-import javax.tools.JavaCompiler.CompilationTask;
 import javax.tools.JavaFileObject;
-import javax.tools.StandardLocation;
-import javax.tools.ToolProvider;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 /**
- * Compile Java source at runtime and load it.
+ * Compile Java source at runtime and load it. This is a long lived service, the classpath indexes
+ * and (for ECJ) the resolved classpath types are kept between compilations so only the first
+ * compilation in a JVM is cold. The timings of cold and warm compilations are recorded.
  * 
  * @author Andy Clement
  */
 @Service
 public class RuntimeJavaCompiler {
 	
-	private JavaCompiler compiler =  ToolProvider.getSystemJavaCompiler();
-	
 	private static Logger logger = LoggerFactory.getLogger(RuntimeJavaCompiler.class);
-	
+
+	private static String classpathFingerprint;
+
+	private CompilationCache compilationCache;
+
+	private CompilerBackend compilerBackend = JavacCompilerBackend.isAvailable() ? new JavacCompilerBackend() : new EcjCompilerBackend();
+
+	private CompilationTimings compilationTimings = new CompilationTimings();
+
+	/**
+	 * Set the compiler to delegate to. If not set javac is used when available, otherwise ECJ.
+	 * @param compilerBackend the compiler to use
+	 */
+	@Autowired(required = false)
+	public void setCompilerBackend(CompilerBackend compilerBackend) {
+		this.compilerBackend = compilerBackend;
+	}
+
+	public CompilerBackend getCompilerBackend() {
+		return this.compilerBackend;
+	}
+
+	/**
+	 * @return how long the first (cold) and subsequent (warm) compilations took
+	 */
+	public CompilationTimings getCompilationTimings() {
+		return this.compilationTimings;
+	}
+
 	/**
-	 * Compile the named class consisting of the supplied source code. If successful load the class
-	 * and return it. Multiple classes may get loaded if the source code included anonymous/inner/local
-	 * classes.
+	 * Set a cache that will be consulted before compiling and that successful compilations
+	 * will be stored in.
+	 * @param compilationCache the cache to use
+	 */
+	@Autowired(required = false)
+	public void setCompilationCache(CompilationCache compilationCache) {
+		this.compilationCache = compilationCache;
+	}
+
+	/**
+	 * Compile the named class consisting of the supplied source code. If successful the classes are
+	 * available from the result, each is loaded when first requested. Multiple classes may be produced if
+	 * the source code included anonymous/inner/local classes.
 	 * @param className the name of the class (dotted form, e.g. com.foo.bar.Goo)
 	 * @param classSourceCode the full source code for the class
 	 * @return a CompilationResult that encapsulates what happened during compilation (classes/messages produced)
 	 */
 	public CompilationResult compile(String className, String classSourceCode) {
-		logger.info("Compiling source for class {} using compiler {}",className,compiler.getClass().getName());
-		
-		DiagnosticCollector<JavaFileObject> diagnosticCollector = new DiagnosticCollector<JavaFileObject>();
+		String cacheKey = null;
+		if (compilationCache != null) {
+			cacheKey = computeCacheKey(className, classSourceCode);
+			List<CompiledClassDefinition> cachedClasses = compilationCache.get(cacheKey);
+			if (cachedClasses != null) {
+				logger.info("Using cached compilation of source for class {}",className);
+				CompilationResult compilationResult = new CompilationResult(true);
+				compilationResult.setCompiledClasses(new SimpleClassLoader(this.getClass().getClassLoader(), cachedClasses),
+						cachedClasses);
+				return compilationResult;
+			}
+		}
+		List<List<CompiledClassDefinition>> compiledClasses = new ArrayList<>();
+		CompilationResult compilationResult = compile(Collections.singletonList(new CompilationUnit(className, classSourceCode)), compiledClasses).get(0);
+		if (compilationResult.wasSuccessful() && compilationCache != null) {
+			compilationCache.put(cacheKey, compiledClasses.get(0));
+		}
+		return compilationResult;
+	}
+
+	/**
+	 * Check the source code for the named class for problems. Nothing is cached and no classes are defined or
+	 * loaded, so this is cheap enough to run repeatedly (e.g. as the code is edited) once the compiler and the
+	 * classpath index are warm.
+	 * @param className the name of the class (dotted form, e.g. com.foo.bar.Goo)
+	 * @param classSourceCode the full source code for the class
+	 * @return a CompilationResult with the messages produced and no classes
+	 */
+	public CompilationResult validate(String className, String classSourceCode) {
 		MemoryBasedJavaFileManager fileManager = new MemoryBasedJavaFileManager();
-//		JavaFileObject sourceFile = new StringBasedJavaSourceFileObject(className, classSourceCode);
 		JavaFileObject sourceFile = InMemoryJavaFileObject.getSourceJavaFileObject(className, classSourceCode);
-//				new InMemoryJavaFileObject(StandardLocation.SOURCE_PATH, className, javax.tools.JavaFileObject.Kind.SOURCE, null);
-//		try (Writer w = sourceFile.openWriter()) {
-//			w.write(classSourceCode);
-//		} catch (IOException ioe) {
-//			ioe.printStackTrace();
-//		}
-		Iterable<? extends JavaFileObject> compilationUnits = Arrays.asList(sourceFile);
-		CompilationTask task = compiler.getTask(null, fileManager , diagnosticCollector, null, null, compilationUnits);
-
-		boolean success = task.call();
+		Map<JavaFileObject, List<CompilationMessage>> compilationMessages = new HashMap<>();
+		long stime = System.currentTimeMillis();
+		boolean success = compilerBackend.validate(Collections.singletonList(sourceFile), fileManager, compilationMessages);
+		logger.debug("Validation of {} took {}ms", className, (System.currentTimeMillis() - stime));
 		CompilationResult compilationResult = new CompilationResult(success);
-		
-		// If successful there may be no errors but there might be info/warnings
-		for (Diagnostic<? extends JavaFileObject> diagnostic : diagnosticCollector.getDiagnostics()) {
-			CompilationMessage.Kind kind = (diagnostic.getKind()==Kind.ERROR?CompilationMessage.Kind.ERROR:CompilationMessage.Kind.OTHER);
-//			String sourceCode = ((StringBasedJavaSourceFileObject)diagnostic.getSource()).getSourceCode();
-			String sourceCode =null;
-			try {
-				sourceCode = (String)diagnostic.getSource().getCharContent(true);
-			} catch (IOException ioe) {
-				// Unexpected, but leave sourceCode null to indicate it was not retrievable
+		for (List<CompilationMessage> messages : compilationMessages.values()) {
+			for (CompilationMessage message : messages) {
+				compilationResult.recordCompilationMessage(message);
+			}
+		}
+		return compilationResult;
+	}
+
+	/**
+	 * Compile a number of classes together, in one invocation of the compiler. The classes may refer to each
+	 * other and are loaded by the same classloader. Results are not cached.
+	 * @param compilationUnits the classes to compile
+	 * @return a CompilationResult for each unit, in the same order as the units. Each result includes
+	 * the messages for problems in that unit and, if successful, the classes compiled from it.
+	 */
+	public List<CompilationResult> compile(List<CompilationUnit> compilationUnits) {
+		return compile(compilationUnits, new ArrayList<>());
+	}
+
+	private List<CompilationResult> compile(List<CompilationUnit> compilationUnits, List<List<CompiledClassDefinition>> compiledClasses) {
+		logger.info("Compiling source for classes {} using compiler {}",compilationUnits,compilerBackend.getName());
+
+		MemoryBasedJavaFileManager fileManager = new MemoryBasedJavaFileManager();
+		List<JavaFileObject> sourceFiles = new ArrayList<>();
+		for (CompilationUnit compilationUnit : compilationUnits) {
+			sourceFiles.add(InMemoryJavaFileObject.getSourceJavaFileObject(compilationUnit.getClassName(), compilationUnit.getSourceCode()));
+		}
+		Map<JavaFileObject, List<CompilationMessage>> compilationMessages = new HashMap<>();
+		long stime = System.currentTimeMillis();
+		boolean success = compilerBackend.compile(sourceFiles, fileManager, compilationMessages);
+		long compileTime = System.currentTimeMillis() - stime;
+		boolean cold = compilationTimings.record(compileTime);
+		logger.info("Compilation of {} classes took {}ms ({}), {}",compilationUnits.size(),compileTime,cold?"cold":"warm",compilationTimings);
+
+		List<CompiledClassDefinition> allCompiledClasses = new ArrayList<>();
+		List<CompilationResult> compilationResults = new ArrayList<>();
+		for (JavaFileObject sourceFile : sourceFiles) {
+			List<CompilationMessage> sourceMessages = new ArrayList<>();
+			if (compilationMessages.containsKey(sourceFile)) {
+				sourceMessages.addAll(compilationMessages.get(sourceFile));
+			}
+			if (compilationMessages.containsKey(null)) {
+				sourceMessages.addAll(compilationMessages.get(null));
+			}
+			List<CompiledClassDefinition> ccds = fileManager.getCompiledClasses(sourceFile);
+			// If another unit failed the compiler may not have produced output for this one, even if it had no errors
+			boolean sourceSuccess = !ccds.isEmpty() || success;
+			for (CompilationMessage sourceMessage : sourceMessages) {
+				sourceSuccess &= sourceMessage.getKind() != CompilationMessage.Kind.ERROR;
+			}
+			CompilationResult compilationResult = new CompilationResult(sourceSuccess);
+			for (CompilationMessage sourceMessage : sourceMessages) {
+				compilationResult.recordCompilationMessage(sourceMessage);
 			}
-			int startPosition = (int)diagnostic.getPosition();
-			if (startPosition == Diagnostic.NOPOS) {
-				startPosition = (int)diagnostic.getStartPosition();
+			if (sourceSuccess) {
+				allCompiledClasses.addAll(ccds);
 			}
-			CompilationMessage compilationMessage = new CompilationMessage(kind,diagnostic.getMessage(null),sourceCode,startPosition,(int)diagnostic.getEndPosition());
-			compilationResult.recordCompilationMessage(compilationMessage);
+			compiledClasses.add(sourceSuccess ? ccds : Collections.<CompiledClassDefinition>emptyList());
+			compilationResults.add(compilationResult);
 		}
-		if (success) {			
-			List<CompiledClassDefinition> ccds = fileManager.getCompiledClasses();			
-			List<Class<?>> classes = new ArrayList<>();
-			try (SimpleClassLoader ccl = new SimpleClassLoader(this.getClass().getClassLoader())) {
-				for (CompiledClassDefinition ccd: ccds) {
-					Class<?> clazz = ccl.defineClass(ccd.getClassName(), ccd.getBytes());
-					classes.add(clazz);
+		// The classes are defined when first used, in whatever order they depend on each other
+		SimpleClassLoader classLoader = new SimpleClassLoader(this.getClass().getClassLoader(), allCompiledClasses);
+		for (int i = 0; i < compilationResults.size(); i++) {
+			compilationResults.get(i).setCompiledClasses(classLoader, compiledClasses.get(i));
+		}
+		return compilationResults;
+	}
+
+	/**
+	 * Compute the key under which the result of compiling some source is cached. It is a hash of
+	 * everything that affects the output: the source, the compiler and the classpath.
+	 * @param className the name of the class being compiled
+	 * @param classSourceCode the full source code for the class
+	 * @return a hex encoded SHA-256 hash
+	 */
+	String computeCacheKey(String className, String classSourceCode) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(className.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(classSourceCode.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			String compilerIdentity = compilerBackend.getName() + ":" + System.getProperty("java.vm.vendor") + ":"
+					+ System.getProperty("java.version");
+			digest.update(compilerIdentity.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(getClasspathFingerprint().getBytes(StandardCharsets.UTF_8));
+			return toHex(digest.digest());
+		} catch (NoSuchAlgorithmException nsae) {
+			throw new IllegalStateException("SHA-256 should always be available", nsae);
+		}
+	}
+
+	/**
+	 * The classpath fingerprint is a hash over each boot/application classpath entry. Archives contribute
+	 * their name and central directory (which includes the CRC of every entry), so copies of the same jar
+	 * at different locations or with different timestamps, as on separate instances, have the same
+	 * fingerprint. Directories contribute the relative name and content of every file within them, as
+	 * a directory's own modification time does not change when a class file in it is recompiled, and
+	 * timestamps differ between instances using an exploded layout.
+	 */
+	private static synchronized String getClasspathFingerprint() {
+		if (classpathFingerprint == null) {
+			classpathFingerprint = computeClasspathFingerprint(System.getProperty("sun.boot.class.path"), System.getProperty("java.class.path"));
+		}
+		return classpathFingerprint;
+	}
+
+	/**
+	 * @param classpaths the classpaths to fingerprint, null entries are ignored
+	 * @return the fingerprint
+	 */
+	static String computeClasspathFingerprint(String... classpaths) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (String classpath : classpaths) {
+				if (classpath == null) {
+					continue;
+				}
+				StringTokenizer tokenizer = new StringTokenizer(classpath, File.pathSeparator);
+				while (tokenizer.hasMoreTokens()) {
+					File f = new File(tokenizer.nextToken());
+					digest.update(f.getName().getBytes(StandardCharsets.UTF_8));
+					if (f.isDirectory()) {
+						digestDirectory(f, digest);
+						continue;
+					}
+					if (f.isFile()) {
+						try {
+							digest.update(new ZipDirectory(f).getCentralDirectory());
+							continue;
+						} catch (IOException ioe) {
+							logger.debug("Unable to read {} as an archive, using size/timestamp for fingerprint", f, ioe);
+						}
+					}
+					digest.update((f.length() + ":" + f.lastModified()).getBytes(StandardCharsets.UTF_8));
 				}
+			}
+			return toHex(digest.digest());
+		} catch (NoSuchAlgorithmException nsae) {
+			throw new IllegalStateException("SHA-256 should always be available", nsae);
+		}
+	}
+
+	/**
+	 * Hash the files in a directory, in name order so the result does not depend on the order the file
+	 * system lists them in.
+	 */
+	private static void digestDirectory(File directory, MessageDigest digest) {
+		DirEnumeration files = new DirEnumeration(directory, null, true, true);
+		Map<String, File> filesByName = new TreeMap<>();
+		while (files.hasMoreElements()) {
+			File file = files.nextElement();
+			filesByName.put(files.getName(file), file);
+		}
+		for (Map.Entry<String, File> entry : filesByName.entrySet()) {
+			digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+			try {
+				digest.update(Files.readAllBytes(entry.getValue().toPath()));
 			} catch (IOException ioe) {
-				logger.debug("Unexpected exception defining classes",ioe);
+				logger.debug("Unable to read {}, using size/timestamp for fingerprint", entry.getValue(), ioe);
+				digest.update((entry.getValue().length() + ":" + entry.getValue().lastModified()).getBytes(StandardCharsets.UTF_8));
 			}
-			compilationResult.setCompiledClasses(classes);
 		}
-		return compilationResult;
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
 	}
 }
\ No newline at end of file
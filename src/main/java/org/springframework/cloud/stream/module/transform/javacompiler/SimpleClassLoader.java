@@ -17,9 +17,18 @@ package org.springframework.cloud.stream.module.transform.javacompiler;
 
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.security.ProtectionDomain;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Very simple classloader that can be used to load the compiled types.
+ * Very simple classloader that can be used to load the compiled types. It can be given the bytes for
+ * compiled classes up front, each of those is only defined when it is first requested (through loadClass or
+ * as a dependency of another class being defined) so classes that are never used are never defined, and
+ * the compiled classes can refer to each other in any order.
  * 
  * @author Andy Clement
  */
@@ -27,11 +36,74 @@ public class SimpleClassLoader extends URLClassLoader {
 
 	private static final URL[] NO_URLS = new URL[0];
 
+	static {
+		registerAsParallelCapable();
+	}
+
+	// Class name (dotted form) to the bytes for its definition
+	private final Map<String, ByteBuffer> classBytes = new ConcurrentHashMap<>();
+
 	public SimpleClassLoader(ClassLoader classLoader) {
+		this(classLoader, Collections.<CompiledClassDefinition>emptyList());
+	}
+
+	/**
+	 * @param classLoader the parent classloader
+	 * @param compiledClasses the classes to define on demand
+	 */
+	public SimpleClassLoader(ClassLoader classLoader, List<CompiledClassDefinition> compiledClasses) {
 		super(NO_URLS, classLoader);
+		for (CompiledClassDefinition compiledClass : compiledClasses) {
+			classBytes.put(compiledClass.getClassName(), compiledClass.getByteBuffer());
+		}
 	}
 
 	public Class<?> defineClass(String name, byte[] bytes) {
 		return super.defineClass(name, bytes, 0, bytes.length);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * @param name a class name (dotted form)
+	 * @return true if the bytes for that class were supplied to this loader
+	 */
+	public boolean isCompiledClass(String name) {
+		return classBytes.containsKey(name);
+	}
+
+	/**
+	 * @param name a class name (dotted form)
+	 * @return true if this loader has defined the class
+	 */
+	boolean isDefined(String name) {
+		return findLoadedClass(name) != null;
+	}
+
+	@Override
+	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+		if (!classBytes.containsKey(name)) {
+			return super.loadClass(name, resolve);
+		}
+		// The compiled class is the one wanted, even if the parent can see a class of the same name
+		synchronized (getClassLoadingLock(name)) {
+			Class<?> clazz = findLoadedClass(name);
+			if (clazz == null) {
+				clazz = findClass(name);
+			}
+			if (resolve) {
+				resolveClass(clazz);
+			}
+			return clazz;
+		}
+	}
+
+	@Override
+	protected Class<?> findClass(String name) throws ClassNotFoundException {
+		ByteBuffer bytes = classBytes.get(name);
+		if (bytes == null) {
+			return super.findClass(name);
+		}
+		// A heap buffer's backing array is passed straight to the VM
+		return defineClass(name, bytes.duplicate(), (ProtectionDomain) null);
+	}
+
+}
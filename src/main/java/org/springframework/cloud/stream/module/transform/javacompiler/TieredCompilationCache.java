@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform.javacompiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A compilation cache composed of other caches, ordered fastest first (for example
+ * memory, then local disk, then a shared store). A lookup tries each tier in turn and a
+ * hit is copied into the faster tiers that missed. A store goes to every tier.
+ *
+ * @author Andy Clement
+ */
+public class TieredCompilationCache implements CompilationCache {
+
+	private static Logger logger = LoggerFactory.getLogger(TieredCompilationCache.class);
+
+	private List<CompilationCache> tiers;
+
+	public TieredCompilationCache(List<CompilationCache> tiers) {
+		this.tiers = new ArrayList<>(tiers);
+	}
+
+	@Override
+	public List<CompiledClassDefinition> get(String key) {
+		for (int i = 0; i < tiers.size(); i++) {
+			List<CompiledClassDefinition> compiledClasses = tiers.get(i).get(key);
+			if (compiledClasses != null) {
+				logger.debug("Cache hit for {} in {}", key, tiers.get(i));
+				for (int j = 0; j < i; j++) {
+					tiers.get(j).put(key, compiledClasses);
+				}
+				return compiledClasses;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void put(String key, List<CompiledClassDefinition> compiledClasses) {
+		for (CompilationCache tier : tiers) {
+			tier.put(key, compiledClasses);
+		}
+	}
+
+	public List<CompilationCache> getTiers() {
+		return tiers;
+	}
+
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform.javacompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Random access to the entries of a zip by reading its central directory. The zip file is
+ * memory mapped and the content of entries is returned as ByteBuffer views of that mapping,
+ * entries that are stored (uncompressed) are not copied at all. A zip may also be a
+ * region of another zip - this is how the nested jars within a spring boot uberjar are read:
+ * the nested jars are stored so a nested jar is simply a slice of the outer mapping and
+ * its central directory gives the offsets of its entries. No scanning through the preceding
+ * entries (and no inflating of them) is required.
+ *
+ * @author Andy Clement
+ */
+public class ZipDirectory {
+
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+	private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int CENTRAL_HEADER_SIZE = 46;
+	private static final int END_SIZE = 22;
+	private static final int ZIP64_LOCATOR_SIZE = 20;
+	private static final int ZIP64_END_SIZE = 56;
+	private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+	// Creating an Inflater allocates native zlib state, so reuse them (one per thread)
+	private static final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+		@Override
+		protected Inflater initialValue() {
+			return new Inflater(true);
+		}
+	};
+
+	// The compressed input is copied into an array for the inflater, reused by each thread and grown as needed
+	private static final ThreadLocal<byte[]> inputs = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[8192];
+		}
+	};
+
+	private File file;
+
+	// The zip data, either a mapping of the file or a slice of an outer zip.
+	// Only absolute get operations are used against it so it can be shared across threads.
+	private ByteBuffer data;
+
+	private Map<String, Entry> entries = new LinkedHashMap<>();
+
+	private int centralDirectoryOffset;
+
+	private int centralDirectorySize;
+
+	/**
+	 * Map a zip file into memory and read its central directory.
+	 *
+	 * @param file the zip file
+	 * @throws IOException if the file cannot be read or is not a zip
+	 */
+	public ZipDirectory(File file) throws IOException {
+		this(file, map(file));
+	}
+
+	private ZipDirectory(File file, ByteBuffer data) throws IOException {
+		this.file = file;
+		this.data = data.order(ByteOrder.LITTLE_ENDIAN);
+		readCentralDirectory();
+	}
+
+	/**
+	 * @return the file containing the zip (for a nested zip this is the outermost file)
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the entries in the order they occur in the central directory
+	 */
+	public Collection<Entry> getEntries() {
+		return Collections.unmodifiableCollection(entries.values());
+	}
+
+	public Entry getEntry(String name) {
+		return entries.get(name);
+	}
+
+	/**
+	 * Open a zip that is an entry within this one. If the entry is stored uncompressed (which is
+	 * how spring boot packages nested jars) the nested zip is a view onto this one, otherwise
+	 * it has to be inflated into memory first.
+	 *
+	 * @param entry an entry in this zip that is itself a zip
+	 * @return the directory for the nested zip
+	 * @throws IOException if the nested zip cannot be read
+	 */
+	public ZipDirectory getNestedDirectory(Entry entry) throws IOException {
+		return new ZipDirectory(file, getByteBuffer(entry));
+	}
+
+	/**
+	 * Retrieve the (uncompressed) contents of an entry. For a stored entry this is a
+	 * read only view of the mapped zip, a deflated entry is inflated onto the heap.
+	 *
+	 * @param entry the entry to read
+	 * @return a buffer positioned at the start of the entry content
+	 * @throws IOException if there is a problem reading or inflating the data
+	 */
+	public ByteBuffer getByteBuffer(Entry entry) throws IOException {
+		int dataOffset = getDataOffset(entry);
+		if (entry.getMethod() == ZipEntry.STORED) {
+			return slice(dataOffset, toInt(entry.getSize()));
+		}
+		if (entry.getMethod() != ZipEntry.DEFLATED) {
+			throw new ZipException("Unsupported compression method " + entry.getMethod() + " for " + entry.getName());
+		}
+		return ByteBuffer.wrap(inflate(entry, slice(dataOffset, toInt(entry.getCompressedSize()))));
+	}
+
+	/**
+	 * @return a read only view of the central directory, which includes the CRC of every entry, making
+	 * it a cheap way to fingerprint the content of the zip
+	 */
+	public ByteBuffer getCentralDirectory() {
+		return slice(centralDirectoryOffset, centralDirectorySize);
+	}
+
+	public byte[] getBytes(Entry entry) throws IOException {
+		ByteBuffer buffer = getByteBuffer(entry);
+		if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.remaining() == buffer.array().length) {
+			return buffer.array();
+		}
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	public InputStream getInputStream(Entry entry) throws IOException {
+		return new ByteBufferInputStream(getByteBuffer(entry));
+	}
+
+	public String toString() {
+		return "ZipDirectory(file=" + file + ",size=" + data.capacity() + ",#entries=" + entries.size() + ")";
+	}
+
+	private static ByteBuffer map(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			// The mapping remains valid after the channel is closed
+			return channel.map(MapMode.READ_ONLY, 0, toInt(channel.size()));
+		}
+	}
+
+	private byte[] inflate(Entry entry, ByteBuffer compressed) throws IOException {
+		// The Java 8 Inflater only consumes arrays, so the compressed data is copied out of the mapping
+		// (plus an extra 'dummy' byte, required by the inflater when using the nowrap option)
+		int length = compressed.remaining();
+		byte[] input = inputs.get();
+		if (input.length < length + 1) {
+			input = new byte[Math.max(length + 1, input.length * 2)];
+			inputs.set(input);
+		}
+		compressed.get(input, 0, length);
+		input[length] = 0;
+		// Each entry gets its own exact sized array because streams over them may be open concurrently
+		byte[] bytes = new byte[toInt(entry.getSize())];
+		Inflater inflater = inflaters.get();
+		try {
+			inflater.setInput(input, 0, length + 1);
+			int inflated = 0;
+			while (inflated < bytes.length && !inflater.finished()) {
+				int count = inflater.inflate(bytes, inflated, bytes.length - inflated);
+				if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				inflated += count;
+			}
+			if (inflated != bytes.length) {
+				throw new ZipException("Inflated " + inflated + " bytes but expected " + bytes.length + " for " + entry.getName());
+			}
+		} catch (DataFormatException dfe) {
+			throw new ZipException("Unable to inflate " + entry.getName() + ": " + dfe.getMessage());
+		} finally {
+			inflater.reset();
+		}
+		return bytes;
+	}
+
+	private int getDataOffset(Entry entry) throws IOException {
+		int localHeaderOffset = toInt(entry.getLocalHeaderOffset());
+		if (data.getInt(localHeaderOffset) != LOCAL_HEADER_SIGNATURE) {
+			throw new ZipException("Bad local header for " + entry.getName() + " in " + this);
+		}
+		int nameLength = data.getShort(localHeaderOffset + 26) & 0xFFFF;
+		int extraLength = data.getShort(localHeaderOffset + 28) & 0xFFFF;
+		return localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+	}
+
+	private ByteBuffer slice(int position, int length) {
+		ByteBuffer view = data.duplicate();
+		view.position(position);
+		view.limit(position + length);
+		return view.slice().asReadOnlyBuffer();
+	}
+
+	private void readCentralDirectory() throws IOException {
+		int length = data.capacity();
+		// The end record is at the end of the zip, preceded by an optional comment
+		int endPosition = length - END_SIZE;
+		int lowestEndPosition = Math.max(0, length - END_SIZE - MAX_COMMENT_SIZE);
+		while (endPosition >= lowestEndPosition && data.getInt(endPosition) != END_SIGNATURE) {
+			endPosition--;
+		}
+		if (endPosition < lowestEndPosition) {
+			throw new ZipException("Unable to find end of central directory in " + this);
+		}
+		// Where the central directory really ends, offsets in the zip are checked against this
+		int directoryEnd = endPosition;
+		long entryCount = data.getShort(endPosition + 10) & 0xFFFF;
+		long directorySize = data.getInt(endPosition + 12) & 0xFFFFFFFFL;
+		long directoryOffset = data.getInt(endPosition + 16) & 0xFFFFFFFFL;
+		if (entryCount == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+			// Zip64, the real values are in the zip64 end record, found via the locator preceding the end record
+			int locatorPosition = endPosition - ZIP64_LOCATOR_SIZE;
+			if (locatorPosition < 0 || data.getInt(locatorPosition) != ZIP64_LOCATOR_SIGNATURE) {
+				throw new ZipException("Unable to find zip64 end of central directory locator in " + this);
+			}
+			long recordedZip64EndPosition = data.getLong(locatorPosition + 8);
+			int zip64EndPosition;
+			if (recordedZip64EndPosition >= 0 && recordedZip64EndPosition <= locatorPosition - ZIP64_END_SIZE
+					&& data.getInt((int) recordedZip64EndPosition) == ZIP64_END_SIGNATURE) {
+				zip64EndPosition = (int) recordedZip64EndPosition;
+			} else {
+				// With data prepended to the zip the recorded position is out, the record normally directly precedes the locator
+				zip64EndPosition = locatorPosition - ZIP64_END_SIZE;
+				if (zip64EndPosition < 0 || data.getInt(zip64EndPosition) != ZIP64_END_SIGNATURE) {
+					throw new ZipException("Unable to find zip64 end of central directory in " + this);
+				}
+			}
+			directoryEnd = zip64EndPosition;
+			entryCount = data.getLong(zip64EndPosition + 32);
+			directorySize = data.getLong(zip64EndPosition + 40);
+			directoryOffset = data.getLong(zip64EndPosition + 48);
+		}
+		// Offsets are relative to the start of the zip, which is not the start of the data if something
+		// has been prepended (e.g. a launch script). As java.util.zip does, compare where the central
+		// directory is recorded as starting with where it actually is to find the base offset.
+		long baseOffset = directoryEnd - directorySize - directoryOffset;
+		if (baseOffset < 0) {
+			throw new ZipException("Bad central directory offset " + directoryOffset + " in " + this);
+		}
+		centralDirectoryOffset = toInt(baseOffset + directoryOffset);
+		centralDirectorySize = toInt(directorySize);
+		int position = centralDirectoryOffset;
+		for (long i = 0; i < entryCount; i++) {
+			if (data.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+				throw new ZipException("Bad central directory header at " + position + " in " + this);
+			}
+			int method = data.getShort(position + 10) & 0xFFFF;
+			int dosTime = data.getInt(position + 12);
+			long compressedSize = data.getInt(position + 20) & 0xFFFFFFFFL;
+			long size = data.getInt(position + 24) & 0xFFFFFFFFL;
+			int nameLength = data.getShort(position + 28) & 0xFFFF;
+			int extraLength = data.getShort(position + 30) & 0xFFFF;
+			int commentLength = data.getShort(position + 32) & 0xFFFF;
+			long localHeaderOffset = data.getInt(position + 42) & 0xFFFFFFFFL;
+			byte[] nameBytes = new byte[nameLength];
+			slice(position + CENTRAL_HEADER_SIZE, nameLength).get(nameBytes);
+			String name = new String(nameBytes, StandardCharsets.UTF_8);
+			if (size == 0xFFFFFFFFL || compressedSize == 0xFFFFFFFFL || localHeaderOffset == 0xFFFFFFFFL) {
+				// Values too big for the header are in the zip64 extra field, in this order, if present
+				int extraPosition = position + CENTRAL_HEADER_SIZE + nameLength;
+				int extraEnd = extraPosition + extraLength;
+				while (extraPosition + 4 <= extraEnd) {
+					int id = data.getShort(extraPosition) & 0xFFFF;
+					int dataSize = data.getShort(extraPosition + 2) & 0xFFFF;
+					if (id == 0x0001) {
+						int fieldPosition = extraPosition + 4;
+						if (size == 0xFFFFFFFFL) {
+							size = data.getLong(fieldPosition);
+							fieldPosition += 8;
+						}
+						if (compressedSize == 0xFFFFFFFFL) {
+							compressedSize = data.getLong(fieldPosition);
+							fieldPosition += 8;
+						}
+						if (localHeaderOffset == 0xFFFFFFFFL) {
+							localHeaderOffset = data.getLong(fieldPosition);
+						}
+						break;
+					}
+					extraPosition += 4 + dataSize;
+				}
+			}
+			entries.put(name, new Entry(name, method, dosTime, compressedSize, size, baseOffset + localHeaderOffset));
+			position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+		}
+	}
+
+	private static int toInt(long size) throws ZipException {
+		if (size > Integer.MAX_VALUE) {
+			throw new ZipException("Too large to address with a buffer: " + size);
+		}
+		return (int) size;
+	}
+
+	/**
+	 * The central directory information about one entry in a zip.
+	 */
+	public static class Entry {
+
+		private String name;
+		private int method;
+		private int dosTime;
+		private long compressedSize;
+		private long size;
+		private long localHeaderOffset;
+
+		Entry(String name, int method, int dosTime, long compressedSize, long size, long localHeaderOffset) {
+			this.name = name;
+			this.method = method;
+			this.dosTime = dosTime;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getMethod() {
+			return method;
+		}
+
+		public long getCompressedSize() {
+			return compressedSize;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * @return the position of the local header within the data, including any prepended data
+		 */
+		long getLocalHeaderOffset() {
+			return localHeaderOffset;
+		}
+
+		/**
+		 * @return the modification time of the entry in milliseconds since the epoch
+		 */
+		public long getTime() {
+			// MS-DOS format: date in the high 16 bits, time in the low 16 bits (with 2 second resolution)
+			Calendar calendar = Calendar.getInstance();
+			calendar.clear();
+			calendar.set(((dosTime >> 25) & 0x7f) + 1980, ((dosTime >> 21) & 0x0f) - 1, (dosTime >> 16) & 0x1f,
+					(dosTime >> 11) & 0x1f, (dosTime >> 5) & 0x3f, (dosTime << 1) & 0x3e);
+			return calendar.getTimeInMillis();
+		}
+
+		public String toString() {
+			return "Entry(name=" + name + ",method=" + method + ",size=" + size + ",compressedSize=" + compressedSize + ")";
+		}
+	}
+
+}
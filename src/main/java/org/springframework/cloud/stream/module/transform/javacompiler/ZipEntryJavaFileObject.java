@@ -23,24 +23,28 @@ import java.io.Reader;
 import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.NestingKind;
 import javax.tools.JavaFileObject;
 
+/**
+ * A JavaFileObject that represents an entry in a zip. The content is read from the
+ * memory mapped zip on demand.
+ * 
+ * @author Andy Clement
+ */
 public class ZipEntryJavaFileObject implements JavaFileObject {
 
 	private File containingFile;
-	private ZipFile zf;
-	private ZipEntry ze;
+	private ZipDirectory zd;
+	private ZipDirectory.Entry ze;
 
 	private URI uri;
 
-	public ZipEntryJavaFileObject(File containingFile, ZipFile zipFile, ZipEntry entry) {
+	public ZipEntryJavaFileObject(File containingFile, ZipDirectory zipDirectory, ZipDirectory.Entry entry) {
 		this.containingFile = containingFile;
-		this.zf = zipFile;
+		this.zd = zipDirectory;
 		this.ze = entry;
 	}
 
@@ -65,7 +69,7 @@ public class ZipEntryJavaFileObject implements JavaFileObject {
 
 	@Override
 	public InputStream openInputStream() throws IOException {
-		return zf.getInputStream(ze);
+		return zd.getInputStream(ze);
 	}
 
 	@Override
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+
+/**
+ * Verify the batching of input to and output from a processor.
+ *
+ * @author Andy Clement
+ */
+public class BatchingRxJavaProcessorTests {
+
+	@Test
+	public void inputBatches() throws Exception {
+		BatchingRxJavaProcessor processor = new BatchingRxJavaProcessor(in -> in.map(batch -> ((List<?>) batch).size()),
+				3, 0, 0, 0, false);
+		assertTrue(processor.isBatching());
+		TestSubscriber<Object> output = new TestSubscriber<>();
+		processor.process(Observable.range(0, 7).cast(Object.class)).subscribe(output);
+		output.assertReceivedOnNext(Arrays.<Object>asList(3, 3, 1));
+	}
+
+	@Test
+	public void inputBatchTimeout() throws Exception {
+		BatchingRxJavaProcessor processor = new BatchingRxJavaProcessor(in -> in, 100, 50, 0, 0, false);
+		PublishSubject<Object> input = PublishSubject.create();
+		TestSubscriber<Object> output = new TestSubscriber<>();
+		processor.process(input).subscribe(output);
+		input.onNext(1);
+		input.onNext(2);
+		output.awaitTerminalEvent(500, TimeUnit.MILLISECONDS);
+		// The partial batch is passed on when the timeout expires, empty batches are not
+		output.assertReceivedOnNext(Arrays.<Object>asList(Arrays.asList(1, 2)));
+	}
+
+	@Test
+	public void outputBatches() throws Exception {
+		BatchingRxJavaProcessor processor = new BatchingRxJavaProcessor(in -> in.map(i -> ((Integer) i) * 10),
+				0, 0, 2, 0, false);
+		TestSubscriber<Object> output = new TestSubscriber<>();
+		processor.process(Observable.range(1, 3).cast(Object.class)).subscribe(output);
+		output.assertReceivedOnNext(Arrays.<Object>asList(Arrays.asList(10, 20), Arrays.asList(30)));
+	}
+
+	@Test
+	public void splitOutput() throws Exception {
+		BatchingRxJavaProcessor processor = new BatchingRxJavaProcessor(in -> in.buffer(2).cast(Object.class),
+				0, 0, 0, 0, true);
+		TestSubscriber<Object> output = new TestSubscriber<>();
+		processor.process(Observable.<Object>just("a", "b", "c")).subscribe(output);
+		output.assertReceivedOnNext(Arrays.<Object>asList("a", "b", "c"));
+	}
+
+	@Test
+	public void notBatching() throws Exception {
+		assertFalse(new BatchingRxJavaProcessor(in -> in, 0, 100, 0, 100, false).isBatching());
+	}
+
+}
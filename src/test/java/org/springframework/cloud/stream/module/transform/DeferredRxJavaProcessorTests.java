@@ -0,0 +1,247 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+
+/**
+ * Verify input is buffered until the real processor is attached and that the processor can be replaced.
+ *
+ * @author Andy Clement
+ */
+public class DeferredRxJavaProcessorTests {
+
+	@Rule
+	public final ExpectedException exception = ExpectedException.none();
+
+	@Test
+	public void bufferUntilAttached() throws Exception {
+		DeferredRxJavaProcessor processor = new DeferredRxJavaProcessor(10);
+		PublishSubject<Object> input = PublishSubject.create();
+		TestSubscriber<Object> output = new TestSubscriber<>();
+		processor.process(input).subscribe(output);
+		input.onNext(1);
+		input.onNext(2);
+		assertEquals(2, processor.getBufferedCount());
+		output.assertNoValues();
+
+		processor.attach(in -> in.map(i -> ((Integer) i) * 10));
+		assertTrue(processor.isAttached());
+		assertEquals(0, processor.getBufferedCount());
+		input.onNext(3);
+		input.onCompleted();
+		output.assertReceivedOnNext(Arrays.<Object>asList(10, 20, 30));
+		output.assertCompleted();
+	}
+
+	@Test
+	public void attachedBeforeSubscribe() throws Exception {
+		DeferredRxJavaProcessor processor = new DeferredRxJavaProcessor(10);
+		PublishSubject<Object> input = PublishSubject.create();
+		rx.Observable<Object> result = processor.process(input);
+		input.onNext(1);
+		processor.attach(in -> in);
+		TestSubscriber<Object> output = new TestSubscriber<>();
+		result.subscribe(output);
+		input.onNext(2);
+		output.assertReceivedOnNext(Arrays.<Object>asList(1, 2));
+
+		// Processing after attachment goes straight to the real processor
+		TestSubscriber<Object> output2 = new TestSubscriber<>();
+		processor.process(rx.Observable.<Object>just(3)).subscribe(output2);
+		output2.assertReceivedOnNext(Arrays.<Object>asList(3));
+	}
+
+	@Test
+	public void blockWhenFull() throws Exception {
+		DeferredRxJavaProcessor processor = new DeferredRxJavaProcessor(2);
+		PublishSubject<Object> input = PublishSubject.create();
+		TestSubscriber<Object> output = new TestSubscriber<>();
+		processor.process(input).subscribe(output);
+		CountDownLatch sent = new CountDownLatch(1);
+		Thread producer = new Thread(() -> {
+			for (int i = 0; i < 5; i++) {
+				input.onNext(i);
+			}
+			sent.countDown();
+		});
+		producer.start();
+		assertFalse(sent.await(200, TimeUnit.MILLISECONDS));
+		assertEquals(2, processor.getBufferedCount());
+		processor.attach(in -> in);
+		assertTrue(sent.await(5, TimeUnit.SECONDS));
+		output.assertReceivedOnNext(Arrays.<Object>asList(0, 1, 2, 3, 4));
+	}
+
+	@Test
+	public void replace() throws Exception {
+		DeferredRxJavaProcessor processor = new DeferredRxJavaProcessor(10);
+		PublishSubject<Object> input = PublishSubject.create();
+		TestSubscriber<Object> output = new TestSubscriber<>();
+		processor.process(input).subscribe(output);
+		processor.attach(in -> in.buffer(3).map(list -> (Object) list.size()));
+		assertEquals(1, processor.getGeneration());
+		for (int i = 0; i < 5; i++) {
+			input.onNext(i);
+		}
+		output.assertReceivedOnNext(Arrays.<Object>asList(3));
+
+		// The old processor is completed, emitting its partial buffer, but the output carries on
+		processor.replace(in -> in.map(i -> ((Integer) i) * 10));
+		assertEquals(2, processor.getGeneration());
+		output.assertReceivedOnNext(Arrays.<Object>asList(3, 2));
+		output.assertNotCompleted();
+		input.onNext(5);
+		input.onNext(6);
+		output.assertReceivedOnNext(Arrays.<Object>asList(3, 2, 50, 60));
+
+		// New subscriptions use the replacement
+		TestSubscriber<Object> output2 = new TestSubscriber<>();
+		processor.process(rx.Observable.<Object>just(7)).subscribe(output2);
+		output2.assertReceivedOnNext(Arrays.<Object>asList(70));
+		output2.assertCompleted();
+
+		input.onCompleted();
+		output.assertCompleted();
+		output.assertNoErrors();
+	}
+
+	@Test
+	public void drainedAfterReplace() throws Exception {
+		DeferredRxJavaProcessor processor = new DeferredRxJavaProcessor(10);
+		List<Integer> drained = new ArrayList<>();
+		processor.setDrainedListener(drained::add);
+		PublishSubject<Object> input = PublishSubject.create();
+		TestSubscriber<Object> output = new TestSubscriber<>();
+		processor.process(input).subscribe(output);
+		assertEquals(1, processor.attach(in -> in));
+		input.onNext(1);
+
+		// Generation 1 finishes as soon as its input is switched to generation 2
+		assertEquals(2, processor.replace(in -> in));
+		assertEquals(Arrays.asList(1), drained);
+
+		// Generation 3 never finishes by itself, so is not drained until the output is unsubscribed
+		assertEquals(3, processor.replace(in -> in.concatWith(rx.Observable.never())));
+		assertEquals(Arrays.asList(1, 2), drained);
+		input.onNext(2);
+		assertEquals(4, processor.replace(in -> in));
+		assertEquals(Arrays.asList(1, 2), drained);
+		input.onNext(3);
+		output.assertReceivedOnNext(Arrays.<Object>asList(1, 2, 3));
+		output.unsubscribe();
+		assertEquals(Arrays.asList(1, 2, 3), drained);
+	}
+
+	@Test
+	public void replaceWithProcessorThatThrows() throws Exception {
+		DeferredRxJavaProcessor processor = new DeferredRxJavaProcessor(10);
+		List<Integer> drained = new ArrayList<>();
+		processor.setDrainedListener(drained::add);
+		PublishSubject<Object> input = PublishSubject.create();
+		TestSubscriber<Object> output = new TestSubscriber<>();
+		processor.process(input).subscribe(output);
+		processor.attach(in -> in.map(i -> ((Integer) i) * 10));
+		input.onNext(1);
+		try {
+			processor.replace(in -> {
+				throw new IllegalArgumentException("bad snippet");
+			});
+			fail("Expected the replacement to fail");
+		} catch (IllegalArgumentException iae) {
+			// expected
+		}
+		// The original processor is still connected and running
+		assertEquals(1, processor.getGeneration());
+		input.onNext(2);
+		input.onNext(3);
+		output.assertReceivedOnNext(Arrays.<Object>asList(10, 20, 30));
+		output.assertNoErrors();
+		assertTrue(drained.isEmpty());
+
+		// A later replacement takes the next generation number
+		assertEquals(2, processor.replace(in -> in));
+		input.onNext(4);
+		output.assertReceivedOnNext(Arrays.<Object>asList(10, 20, 30, 4));
+		assertEquals(Arrays.asList(1), drained);
+	}
+
+	@Test
+	public void replaceBeforeAttach() throws Exception {
+		DeferredRxJavaProcessor processor = new DeferredRxJavaProcessor(10);
+		exception.expect(IllegalStateException.class);
+		processor.replace(in -> in);
+	}
+
+	@Test
+	public void attachProcessorThatThrows() throws Exception {
+		DeferredRxJavaProcessor processor = new DeferredRxJavaProcessor(10);
+		PublishSubject<Object> input = PublishSubject.create();
+		TestSubscriber<Object> output = new TestSubscriber<>();
+		processor.process(input).subscribe(output);
+		input.onNext(1);
+		IllegalArgumentException failure = new IllegalArgumentException("bad snippet");
+		try {
+			processor.attach(in -> {
+				throw failure;
+			});
+			fail("Expected the attach to fail");
+		} catch (IllegalArgumentException iae) {
+			// expected
+		}
+		assertFalse(processor.isAttached());
+		// Still pending, so the failure can be recorded and the buffered input released
+		processor.fail(failure);
+		assertTrue(processor.isFailed());
+		output.assertError(failure);
+		assertEquals(0, processor.getBufferedCount());
+	}
+
+	@Test
+	public void failure() throws Exception {
+		DeferredRxJavaProcessor processor = new DeferredRxJavaProcessor(1);
+		PublishSubject<Object> input = PublishSubject.create();
+		TestSubscriber<Object> output = new TestSubscriber<>();
+		processor.process(input).subscribe(output);
+		input.onNext(1);
+		IllegalStateException failure = new IllegalStateException("Compilation failed");
+		processor.fail(failure);
+		assertTrue(processor.isFailed());
+		assertEquals(failure, processor.getFailure());
+		output.assertError(failure);
+		// Should not block now, the input is discarded
+		input.onNext(2);
+		input.onNext(3);
+		assertEquals(0, processor.getBufferedCount());
+	}
+
+}
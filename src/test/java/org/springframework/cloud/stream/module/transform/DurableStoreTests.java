@@ -0,0 +1,225 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import rx.Subscription;
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+
+/**
+ * Verify state kept in durable stores survives them being closed and reopened.
+ *
+ * @author Andy Clement
+ */
+public class DurableStoreTests {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Rule
+	public final ExpectedException exception = ExpectedException.none();
+
+	@Before
+	public void configure() {
+		DurableStore.configure(folder.getRoot().getAbsolutePath(), 0);
+	}
+
+	@After
+	public void unconfigure() {
+		DurableStore.configure(null, 0);
+		DurableStore.handoverTimeoutMillis = 30000;
+	}
+
+	@Test
+	public void restore() throws Exception {
+		DurableStore<Object> store = DurableStore.open("restore", OffHeapWindows.defaultCodec());
+		store.append("a");
+		store.append(42);
+		store.close();
+		store = DurableStore.open("restore", OffHeapWindows.defaultCodec());
+		assertEquals(2, store.size());
+		assertEquals(Arrays.<Object>asList("a", 42), store.readAll());
+		store.clear();
+		store.append("b");
+		store.close();
+		store = DurableStore.open("restore", OffHeapWindows.defaultCodec());
+		assertEquals(Arrays.<Object>asList("b"), store.readAll());
+		store.close();
+	}
+
+	@Test
+	public void growth() throws Exception {
+		DurableStore<Object> store = DurableStore.open("growth", OffHeapWindows.defaultCodec());
+		char[] chars = new char[1000];
+		Arrays.fill(chars, 'x');
+		String element = new String(chars);
+		for (int i = 0; i < 200; i++) {
+			store.append(element);
+		}
+		store.close();
+		assertEquals(1, folder.getRoot().list().length);
+		store = DurableStore.open("growth", OffHeapWindows.defaultCodec());
+		assertEquals(200, store.readAll().size());
+		store.close();
+	}
+
+	@Test
+	public void alreadyOpen() throws Exception {
+		DurableStore.handoverTimeoutMillis = 100;
+		DurableStore.open("twice", OffHeapWindows.defaultCodec());
+		exception.expect(IllegalStateException.class);
+		DurableStore.open("twice", OffHeapWindows.defaultCodec());
+	}
+
+	@Test
+	public void bufferResumesAfterRestart() throws Exception {
+		PublishSubject<Integer> input = PublishSubject.create();
+		TestSubscriber<List<Integer>> output = new TestSubscriber<>();
+		Subscription subscription = input.compose(OffHeapWindows.<Integer>durableBuffer("resume", 3)).subscribe(output);
+		input.onNext(1);
+		input.onNext(2);
+		input.onNext(3);
+		input.onNext(4);
+		// Simulate the process stopping part way through the second buffer
+		subscription.unsubscribe();
+		assertTrue(new File(folder.getRoot(), "resume.state").exists());
+
+		PublishSubject<Integer> input2 = PublishSubject.create();
+		TestSubscriber<List<Integer>> output2 = new TestSubscriber<>();
+		input2.compose(OffHeapWindows.<Integer>durableBuffer("resume", 3)).subscribe(output2);
+		input2.onNext(5);
+		input2.onNext(6);
+		input2.onNext(7);
+		input2.onCompleted();
+		output.assertReceivedOnNext(Arrays.asList(Arrays.asList(1, 2, 3)));
+		// Completing does not emit the partial buffer, it is kept
+		output2.assertReceivedOnNext(Arrays.asList(Arrays.asList(4, 5, 6)));
+		output2.assertCompleted();
+		DurableStore<Object> store = DurableStore.open("resume", OffHeapWindows.defaultCodec());
+		assertEquals(Arrays.<Object>asList(7), store.readAll());
+		store.close();
+	}
+
+	@Test
+	public void corruptState() throws Exception {
+		DurableStore.handoverTimeoutMillis = 100;
+		// A committed end beyond the first record, whose length runs past the end
+		ByteBuffer contents = ByteBuffer.allocate(32);
+		contents.putLong(0, 32).putInt(8, 1000);
+		Files.write(new File(folder.getRoot(), "corrupt.state").toPath(), contents.array());
+		DurableStore<Object> store = DurableStore.open("corrupt", OffHeapWindows.defaultCodec());
+		assertEquals(0, store.size());
+		store.append("a");
+		store.close();
+		assertUnreadableFileKept("corrupt");
+		// The name is not left in use
+		store = DurableStore.open("corrupt", OffHeapWindows.defaultCodec());
+		assertEquals(Arrays.<Object>asList("a"), store.readAll());
+		store.close();
+	}
+
+	@Test
+	public void undecodableState() throws Exception {
+		DurableStore.handoverTimeoutMillis = 100;
+		DurableStore<Object> store = DurableStore.open("undecodable", OffHeapWindows.defaultCodec());
+		store.append("a");
+		store.close();
+		// As if the class of the elements no longer exists
+		ElementCodec<Object> codec = new ElementCodec<Object>() {
+			public void encode(Object element, DataOutput output) throws IOException {
+				OffHeapWindows.defaultCodec().encode(element, output);
+			}
+			public Object decode(DataInput input) throws IOException {
+				throw new IOException(new ClassNotFoundException("Renamed"));
+			}
+		};
+		store = DurableStore.open("undecodable", codec);
+		assertEquals(0, store.size());
+		store.close();
+		assertUnreadableFileKept("undecodable");
+		store = DurableStore.open("undecodable", OffHeapWindows.defaultCodec());
+		assertEquals(0, store.size());
+		store.close();
+	}
+
+	private void assertUnreadableFileKept(String name) {
+		String[] unreadable = folder.getRoot().list((dir, filename) -> filename.startsWith(name + ".state.unreadable-"));
+		assertEquals(1, unreadable.length);
+	}
+
+	@Test
+	public void openWaitsForClose() throws Exception {
+		DurableStore<Object> first = DurableStore.open("handover", OffHeapWindows.defaultCodec());
+		first.append("a");
+		CountDownLatch opened = new CountDownLatch(1);
+		Thread thread = new Thread(() -> {
+			DurableStore<Object> second = DurableStore.open("handover", OffHeapWindows.defaultCodec());
+			if (second.readAll().equals(Arrays.<Object>asList("a", "b"))) {
+				opened.countDown();
+			}
+			second.close();
+		});
+		thread.start();
+		assertFalse(opened.await(100, TimeUnit.MILLISECONDS));
+		// Still draining
+		first.append("b");
+		first.close();
+		assertTrue(opened.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void bufferHandedOverOnReplace() throws Exception {
+		DeferredRxJavaProcessor processor = new DeferredRxJavaProcessor(10);
+		PublishSubject<Object> input = PublishSubject.create();
+		TestSubscriber<Object> output = new TestSubscriber<>();
+		processor.process(input).subscribe(output);
+		processor.attach(in -> in.compose(OffHeapWindows.durableBuffer("swap", 3)));
+		input.onNext(1);
+		input.onNext(2);
+		input.onNext(3);
+		input.onNext(4);
+		input.onNext(5);
+		processor.replace(in -> in.compose(OffHeapWindows.durableBuffer("swap", 3)));
+		// The partial buffer of the old processor is carried on by the new one
+		output.assertReceivedOnNext(Arrays.<Object>asList(Arrays.asList(1, 2, 3)));
+		input.onNext(6);
+		output.assertReceivedOnNext(Arrays.<Object>asList(Arrays.asList(1, 2, 3), Arrays.asList(4, 5, 6)));
+		output.assertNoErrors();
+	}
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.cloud.stream.module.transform.NumericWindows.averageOfDoubles;
+import static org.springframework.cloud.stream.module.transform.NumericWindows.averageOfInts;
+import static org.springframework.cloud.stream.module.transform.NumericWindows.averageOfLongs;
+import static org.springframework.cloud.stream.module.transform.NumericWindows.sumOfDoubles;
+import static org.springframework.cloud.stream.module.transform.NumericWindows.sumOfInts;
+import static org.springframework.cloud.stream.module.transform.NumericWindows.sumOfLongs;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.exceptions.OnErrorThrowable;
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+
+/**
+ * Verify the window aggregating operators.
+ *
+ * @author Andy Clement
+ */
+public class NumericWindowsTests {
+
+	Observable<String> strings = Observable.just("2", "4", "9", "1", "4", "7", "5");
+
+	@Test
+	public void sums() throws Exception {
+		assertEquals(Arrays.asList(15, 12, 5), strings.compose(sumOfInts(3, Integer::parseInt)).toList().toBlocking().single());
+		assertEquals(Arrays.asList(15L, 12L, 5L), strings.compose(sumOfLongs(3, Long::parseLong)).toList().toBlocking().single());
+		assertEquals(Arrays.asList(15d, 12d, 5d), strings.compose(sumOfDoubles(3, Double::parseDouble)).toList().toBlocking().single());
+	}
+
+	@Test
+	public void averages() throws Exception {
+		// Same results as window(3).flatMap(MathObservable::averageInteger)
+		assertEquals(Arrays.asList(5, 4, 5), strings.compose(averageOfInts(3, Integer::parseInt)).toList().toBlocking().single());
+		assertEquals(Arrays.asList(5L, 4L, 5L), strings.compose(averageOfLongs(3, Long::parseLong)).toList().toBlocking().single());
+		assertEquals(Arrays.asList(5d, 4d, 5d), strings.compose(averageOfDoubles(3, Double::parseDouble)).toList().toBlocking().single());
+		assertEquals(Arrays.asList(5.5d), Observable.just(5, 6).compose(averageOfDoubles(2, i -> i)).toList().toBlocking().single());
+	}
+
+	@Test
+	public void independentSubscriptions() throws Exception {
+		Observable<Integer> sums = strings.compose(sumOfInts(2, Integer::parseInt));
+		assertEquals(Arrays.asList(6, 10, 11, 5), sums.toList().toBlocking().single());
+		assertEquals(Arrays.asList(6, 10, 11, 5), sums.toList().toBlocking().single());
+	}
+
+	@Test
+	public void valueFunctionThrows() throws Exception {
+		PublishSubject<String> input = PublishSubject.create();
+		TestSubscriber<Integer> output = new TestSubscriber<>();
+		input.compose(sumOfInts(2, Integer::parseInt)).subscribe(output);
+		input.onNext("1");
+		input.onNext("2");
+		input.onNext("three");
+		output.assertReceivedOnNext(Arrays.asList(3));
+		assertTrue(output.getOnErrorEvents().get(0) instanceof NumberFormatException);
+		// The element being processed is recorded with the error
+		assertEquals("three", ((OnErrorThrowable.OnNextValue) output.getOnErrorEvents().get(0).getCause()).getValue());
+		assertFalse(input.hasObservers());
+	}
+
+	@Test
+	public void backpressure() throws Exception {
+		TestSubscriber<Integer> subscriber = new TestSubscriber<>(0);
+		Observable.range(1, 1000).compose(sumOfInts(10, i -> i)).subscribe(subscriber);
+		subscriber.assertNoValues();
+		subscriber.requestMore(2);
+		subscriber.assertReceivedOnNext(Arrays.asList(55, 155));
+		subscriber.requestMore(Long.MAX_VALUE);
+		assertEquals(100, subscriber.getOnNextEvents().size());
+		subscriber.assertCompleted();
+	}
+
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+
+/**
+ * Verify buffers whose pending elements are kept off heap.
+ *
+ * @author Andy Clement
+ */
+public class OffHeapWindowsTests {
+
+	@SuppressWarnings("serial")
+	public static class Point implements Serializable {
+		int x = 1;
+	}
+
+	@After
+	public void restoreDefaults() {
+		OffHeapSegments.configure(OffHeapSegments.DEFAULT_MAX_DIRECT_MEMORY, OffHeapSegments.DEFAULT_SEGMENT_SIZE, null);
+	}
+
+	@Test
+	public void countBuffers() throws Exception {
+		TestSubscriber<List<Object>> output = new TestSubscriber<>();
+		Observable.<Object>just("a", 1, 2L, 3.5d, null, new BigDecimal("1.5"), "\u00e9t\u00e9")
+				.compose(OffHeapWindows.offHeapBuffer(3)).subscribe(output);
+		output.assertReceivedOnNext(Arrays.asList(Arrays.<Object>asList("a", 1, 2L), Arrays.<Object>asList(3.5d, null,
+				new BigDecimal("1.5")), Arrays.<Object>asList("\u00e9t\u00e9")));
+		output.assertCompleted();
+	}
+
+	@Test
+	public void mappedSegments() throws Exception {
+		// No direct memory, small segments, so everything is in memory mapped files
+		OffHeapSegments.configure(0, 64, null);
+		assertTrue(OffHeapSegments.acquire(10) instanceof MappedByteBuffer);
+		List<String> input = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			input.add("element" + i);
+		}
+		char[] large = new char[200];
+		Arrays.fill(large, 'x');
+		input.add(new String(large));
+		TestSubscriber<List<String>> output = new TestSubscriber<>();
+		Observable.from(input).compose(OffHeapWindows.<String>offHeapBuffer(1000)).subscribe(output);
+		output.assertReceivedOnNext(Arrays.asList(input));
+	}
+
+	@Test
+	public void segmentsReused() throws Exception {
+		OffHeapSegments.configure(OffHeapSegments.DEFAULT_MAX_DIRECT_MEMORY, 1024, null);
+		long directBytes = ProcessorMetrics.gauge("offheap.direct.bytes").get();
+		TestSubscriber<List<Integer>> output = new TestSubscriber<>();
+		Observable.range(0, 10000).compose(OffHeapWindows.<Integer>offHeapBuffer(100)).subscribe(output);
+		assertEquals(100, output.getOnNextEvents().size());
+		// Each window (100 * 9 bytes) fits in one segment, released and reused for the next window
+		assertTrue(ProcessorMetrics.gauge("offheap.direct.bytes").get() - directBytes <= 1024);
+	}
+
+	@Test
+	public void timedBuffers() throws Exception {
+		PublishSubject<Integer> input = PublishSubject.create();
+		TestSubscriber<List<Integer>> output = new TestSubscriber<>();
+		input.compose(OffHeapWindows.<Integer>offHeapBuffer(50, TimeUnit.MILLISECONDS, 3)).subscribe(output);
+		input.onNext(1);
+		input.onNext(2);
+		input.onNext(3);
+		input.onNext(4);
+		output.assertReceivedOnNext(Arrays.asList(Arrays.asList(1, 2, 3)));
+		Thread.sleep(200);
+		output.assertReceivedOnNext(Arrays.asList(Arrays.asList(1, 2, 3), Arrays.asList(4)));
+		input.onNext(5);
+		input.onCompleted();
+		output.assertReceivedOnNext(Arrays.asList(Arrays.asList(1, 2, 3), Arrays.asList(4), Arrays.asList(5)));
+		output.assertCompleted();
+	}
+
+	@Test
+	public void codecThrows() throws Exception {
+		ElementCodec<Integer> codec = new ElementCodec<Integer>() {
+			public void encode(Integer element, DataOutput output) throws IOException {
+				if (element < 0) {
+					throw new IOException("negative");
+				}
+				output.writeInt(element);
+			}
+			public Integer decode(DataInput input) throws IOException {
+				return input.readInt();
+			}
+		};
+		PublishSubject<Integer> input = PublishSubject.create();
+		TestSubscriber<List<Integer>> output = new TestSubscriber<>();
+		input.compose(OffHeapWindows.offHeapBuffer(1, TimeUnit.HOURS, 10, codec)).subscribe(output);
+		input.onNext(1);
+		input.onNext(-1);
+		output.assertNoValues();
+		assertEquals(1, output.getOnErrorEvents().size());
+		assertFalse(input.hasObservers());
+		input.onCompleted();
+		output.assertNotCompleted();
+	}
+
+	@Test
+	public void codecResolvesWithClassLoader() throws Exception {
+		// A loader with its own copy of Point, as the classes of the code are in their own loader
+		ClassLoader loader = new ClassLoader(getClass().getClassLoader()) {
+			protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+				if (!name.equals(Point.class.getName())) {
+					return super.loadClass(name, resolve);
+				}
+				synchronized (getClassLoadingLock(name)) {
+					Class<?> clazz = findLoadedClass(name);
+					if (clazz == null) {
+						try (InputStream stream = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+							ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+							byte[] buffer = new byte[4096];
+							int count;
+							while ((count = stream.read(buffer)) != -1) {
+								bytes.write(buffer, 0, count);
+							}
+							clazz = defineClass(name, bytes.toByteArray(), 0, bytes.size());
+						} catch (IOException ioe) {
+							throw new ClassNotFoundException(name, ioe);
+						}
+					}
+					return clazz;
+				}
+			}
+		};
+		Class<?> pointClass = loader.loadClass(Point.class.getName());
+		assertNotEquals(Point.class, pointClass);
+		Object point = pointClass.newInstance();
+		assertEquals(pointClass, roundTrip(OffHeapWindows.defaultCodec(loader), point).getClass());
+		// The default is the context class loader when the codec is created
+		Thread thread = Thread.currentThread();
+		ClassLoader previous = thread.getContextClassLoader();
+		ElementCodec<Object> codec;
+		thread.setContextClassLoader(loader);
+		try {
+			codec = OffHeapWindows.defaultCodec();
+		} finally {
+			thread.setContextClassLoader(previous);
+		}
+		assertEquals(pointClass, roundTrip(codec, point).getClass());
+		// Otherwise it is resolved from the call stack
+		assertEquals(Point.class, roundTrip(OffHeapWindows.defaultCodec(null), point).getClass());
+	}
+
+	@Test
+	public void customCodec() throws Exception {
+		ElementCodec<int[]> codec = new ElementCodec<int[]>() {
+			public void encode(int[] element, DataOutput output) throws IOException {
+				output.writeInt(element[0]);
+				output.writeInt(element[1]);
+			}
+			public int[] decode(DataInput input) throws IOException {
+				return new int[] { input.readInt(), input.readInt() };
+			}
+		};
+		TestSubscriber<List<int[]>> output = new TestSubscriber<>();
+		Observable.just(new int[] { 1, 2 }, new int[] { 3, 4 }).compose(OffHeapWindows.offHeapBuffer(2, codec))
+				.subscribe(output);
+		List<int[]> pairs = output.getOnNextEvents().get(0);
+		assertEquals(4, pairs.get(1)[1]);
+	}
+
+	private static Object roundTrip(ElementCodec<Object> codec, Object element) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream output = new DataOutputStream(bytes)) {
+			codec.encode(element, output);
+		}
+		return codec.decode(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+
+}
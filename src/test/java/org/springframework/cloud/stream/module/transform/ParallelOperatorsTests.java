@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+
+/**
+ * Verify the parallel operators keep the original order.
+ *
+ * @author Andy Clement
+ */
+public class ParallelOperatorsTests {
+
+	@Test
+	public void orderedMap() throws Exception {
+		Set<String> threads = ConcurrentHashMap.newKeySet();
+		TestSubscriber<Integer> output = new TestSubscriber<>();
+		Observable.range(0, 1000).compose(ParallelOperators.<Integer, Integer>parallelMap("orderedMap", 4, 16, i -> {
+			threads.add(Thread.currentThread().getName());
+			// Later elements often finish first
+			if (i % 7 == 0) {
+				sleep(1);
+			}
+			return i * 2;
+		})).subscribe(output);
+		output.awaitTerminalEvent(10, TimeUnit.SECONDS);
+		output.assertNoErrors();
+		List<Integer> expected = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			expected.add(i * 2);
+		}
+		output.assertReceivedOnNext(expected);
+		assertTrue(threads.size() > 1 || Runtime.getRuntime().availableProcessors() == 1);
+		assertEquals(0, ProcessorMetrics.gauge("reorder.orderedMap.occupancy").get());
+	}
+
+	@Test
+	public void orderedFilter() throws Exception {
+		TestSubscriber<Integer> output = new TestSubscriber<>();
+		Observable.range(0, 100).compose(ParallelOperators.<Integer>parallelFilter(i -> i % 3 == 0)).subscribe(output);
+		output.awaitTerminalEvent(10, TimeUnit.SECONDS);
+		output.assertNoErrors();
+		assertEquals(34, output.getOnNextEvents().size());
+		for (int i = 0; i < 34; i++) {
+			assertEquals(i * 3, output.getOnNextEvents().get(i).intValue());
+		}
+	}
+
+	@Test
+	public void producerBlockedWhenBufferFull() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		PublishSubject<Integer> input = PublishSubject.create();
+		TestSubscriber<Integer> output = new TestSubscriber<>();
+		input.compose(ParallelOperators.<Integer, Integer>ordered("blocking", 2, 4, Schedulers.computation(), i -> {
+			if (i == 0) {
+				await(release);
+			}
+			return i;
+		})).subscribe(output);
+		CountDownLatch sent = new CountDownLatch(1);
+		Thread producer = new Thread(() -> {
+			for (int i = 0; i < 10; i++) {
+				input.onNext(i);
+			}
+			sent.countDown();
+		});
+		producer.start();
+		// The first element is stuck, so only the buffer size can be accepted
+		assertFalse(sent.await(200, TimeUnit.MILLISECONDS));
+		assertEquals(4, ProcessorMetrics.gauge("reorder.blocking.occupancy").get());
+		output.assertNoValues();
+		release.countDown();
+		assertTrue(sent.await(5, TimeUnit.SECONDS));
+		input.onCompleted();
+		output.awaitTerminalEvent(5, TimeUnit.SECONDS);
+		output.assertReceivedOnNext(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+	}
+
+	@Test
+	public void backpressure() throws Exception {
+		TestSubscriber<Integer> output = new TestSubscriber<>(0);
+		Observable.range(0, 100).compose(ParallelOperators.<Integer, Integer>parallelMap(i -> i)).subscribe(output);
+		output.requestMore(3);
+		Thread.sleep(100);
+		output.assertReceivedOnNext(Arrays.asList(0, 1, 2));
+		output.requestMore(Long.MAX_VALUE);
+		output.awaitTerminalEvent(5, TimeUnit.SECONDS);
+		assertEquals(100, output.getOnNextEvents().size());
+	}
+
+	@Test
+	public void error() throws Exception {
+		TestSubscriber<Integer> output = new TestSubscriber<>();
+		Observable.range(0, 10).compose(ParallelOperators.<Integer, Integer>parallelMap(i -> 10 / (5 - i)))
+				.subscribe(output);
+		output.awaitTerminalEvent(5, TimeUnit.SECONDS);
+		output.assertError(ArithmeticException.class);
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+
+/**
+ * Verify elements are partitioned by key across copies of a processor.
+ *
+ * @author Andy Clement
+ */
+public class PartitionedRxJavaProcessorTests {
+
+	@Test
+	public void perKeyOrderAndState() throws Exception {
+		AtomicInteger copies = new AtomicInteger();
+		Set<String> threads = ConcurrentHashMap.newKeySet();
+		// Pairs up consecutive elements, only correct if each key's elements stay together and in order
+		PartitionedRxJavaProcessor processor = new PartitionedRxJavaProcessor(() -> {
+			copies.incrementAndGet();
+			return in -> in.doOnNext(e -> threads.add(Thread.currentThread().getName()))
+					.groupBy(e -> ((String) e).charAt(0)).flatMap(key -> key.buffer(2)).cast(Object.class);
+		}, 4, "charAt(0)", Schedulers.computation());
+		assertEquals(4, copies.get());
+		assertEquals(4, processor.getPartitionCount());
+
+		List<Object> input = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			for (char key = 'a'; key <= 'h'; key++) {
+				input.add(key + Integer.toString(i));
+			}
+		}
+		TestSubscriber<Object> output = new TestSubscriber<>();
+		processor.process(Observable.from(input)).subscribe(output);
+		output.awaitTerminalEvent(10, TimeUnit.SECONDS);
+		output.assertNoErrors();
+		assertEquals(400, output.getOnNextEvents().size());
+		Map<Character, Integer> next = new TreeMap<>();
+		for (Object pair : output.getOnNextEvents()) {
+			List<?> elements = (List<?>) pair;
+			String first = (String) elements.get(0);
+			String second = (String) elements.get(1);
+			char key = first.charAt(0);
+			int expected = next.getOrDefault(key, 0);
+			assertEquals(key + Integer.toString(expected), first);
+			assertEquals(key + Integer.toString(expected + 1), second);
+			next.put(key, expected + 2);
+		}
+		assertEquals(8, next.size());
+		assertTrue(threads.size() > 1 || Runtime.getRuntime().availableProcessors() == 1);
+	}
+
+	@Test
+	public void keyExpression() throws Exception {
+		PartitionedRxJavaProcessor processor = new PartitionedRxJavaProcessor(() -> in -> in, 3, "length()",
+				Schedulers.immediate());
+		Set<Integer> partitions = new HashSet<>();
+		for (String s : new String[] { "a", "b", "c" }) {
+			partitions.add(processor.partition(s));
+		}
+		// Same length, same key, same partition
+		assertEquals(1, partitions.size());
+		assertEquals(processor.partition("xx"), processor.partition("yy"));
+	}
+
+}
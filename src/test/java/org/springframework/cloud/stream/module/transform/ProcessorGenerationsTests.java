@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.springframework.cloud.stream.module.transform.javacompiler.CompilationResult;
+import org.springframework.cloud.stream.module.transform.javacompiler.RuntimeJavaCompiler;
+
+/**
+ * Verify released processor generations have their classloader collected, and leaks are reported.
+ *
+ * @author Andy Clement
+ */
+public class ProcessorGenerationsTests {
+
+	@Test
+	public void collected() throws Exception {
+		ProcessorGenerations generations = new ProcessorGenerations();
+		generations.register(1, compile());
+		assertEquals(1, generations.getLive());
+		generations.release(1);
+		assertEquals(0, generations.getLive());
+		for (int i = 0; i < 50 && generations.getCollected() == 0; i++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		assertEquals(1, generations.getCollected());
+		assertEquals(0, generations.getReleased());
+		assertEquals(0, generations.getLeaked().size());
+	}
+
+	@Test
+	public void leaked() throws Exception {
+		ProcessorGenerations generations = new ProcessorGenerations(0);
+		CompilationResult compilationResult = compile();
+		generations.register(1, compilationResult);
+		generations.register(2, compile());
+		generations.release(1);
+		Thread.sleep(5);
+		System.gc();
+		// Still referenced from here
+		assertNotNull(compilationResult.getClassLoader());
+		assertEquals(Arrays.asList(1), generations.getLeaked());
+		assertEquals(1, generations.getLive());
+		assertTrue(generations.metrics().stream()
+				.anyMatch(metric -> metric.getName().equals("prxj.classloader.generation.2.classes")));
+	}
+
+	private static CompilationResult compile() {
+		CompilationResult compilationResult = new RuntimeJavaCompiler().compile("a.b.c.Foo",
+				"package a.b.c;\npublic class Foo {\n  Runnable r = () -> {};\n}");
+		assertTrue(compilationResult.wasSuccessful());
+		return compilationResult;
+	}
+
+}
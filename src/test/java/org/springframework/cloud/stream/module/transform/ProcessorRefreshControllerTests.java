@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Verify the validate endpoint reports problems relative to the code it was sent.
+ *
+ * @author Andy Clement
+ */
+public class ProcessorRefreshControllerTests {
+
+	@Test
+	public void validate() {
+		ProcessorRefreshController controller = new ProcessorRefreshController();
+		ReflectionTestUtils.setField(controller, "transformer", RxJavaTransformerTests.transformer("String", "Integer"));
+		try {
+			Map<String, Object> result = controller.validate("return input -> input.map(s -> s.lenth());");
+			assertEquals(false, result.get("valid"));
+			@SuppressWarnings("unchecked")
+			List<Map<String, Object>> diagnostics = (List<Map<String, Object>>) result.get("diagnostics");
+			assertEquals(1, diagnostics.size());
+			Map<String, Object> diagnostic = diagnostics.get(0);
+			assertEquals("ERROR", diagnostic.get("kind"));
+			assertEquals(1, diagnostic.get("line"));
+			assertEquals(33, diagnostic.get("column"));
+			assertEquals(32, diagnostic.get("start"));
+			assertEquals(38, diagnostic.get("end"));
+
+			result = controller.validate("return input -> input.map(s -> s.length());");
+			assertEquals(true, result.get("valid"));
+			assertEquals(0, ((List<?>) result.get("diagnostics")).size());
+		}
+		finally {
+			controller.shutdown();
+		}
+	}
+
+}
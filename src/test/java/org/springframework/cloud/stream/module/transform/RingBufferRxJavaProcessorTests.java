@@ -0,0 +1,192 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springframework.cloud.stream.module.transform.RingBufferRxJavaProcessor.FullPolicy;
+import org.springframework.cloud.stream.module.transform.RingBufferRxJavaProcessor.WaitStrategy;
+
+import rx.Subscriber;
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+
+/**
+ * Verify the ring buffer and the handoff of messages through it to the processor.
+ *
+ * @author Andy Clement
+ */
+public class RingBufferRxJavaProcessorTests {
+
+	@Test
+	public void ringBuffer() throws Exception {
+		RingBuffer ring = new RingBuffer(3, false);
+		assertEquals(4, ring.capacity());
+		Object[] holder = new Object[1];
+		assertFalse(ring.poll(holder));
+		for (int i = 0; i < 4; i++) {
+			assertTrue(ring.offer(i));
+		}
+		assertFalse(ring.offer(4));
+		assertEquals(4, ring.size());
+		assertTrue(ring.poll(holder));
+		assertEquals(0, holder[0]);
+		assertTrue(ring.offer(null));
+		for (int i = 1; i < 4; i++) {
+			assertTrue(ring.poll(holder));
+			assertEquals(i, holder[0]);
+		}
+		assertTrue(ring.poll(holder));
+		assertNull(holder[0]);
+		assertTrue(ring.isEmpty());
+	}
+
+	@Test
+	public void multipleProducers() throws Exception {
+		RingBuffer ring = new RingBuffer(64, true);
+		List<Thread> producers = new ArrayList<>();
+		for (int p = 0; p < 4; p++) {
+			int producer = p;
+			producers.add(new Thread(() -> {
+				for (int i = 0; i < 10000; i++) {
+					while (!ring.offer(producer * 10000 + i)) {
+						Thread.yield();
+					}
+				}
+			}));
+		}
+		producers.forEach(Thread::start);
+		int[] next = new int[4];
+		Object[] holder = new Object[1];
+		for (int received = 0; received < 40000;) {
+			if (ring.poll(holder)) {
+				int value = (Integer) holder[0];
+				// Each producer's elements arrive in order
+				assertEquals(next[value / 10000]++, value % 10000);
+				received++;
+			}
+		}
+		for (Thread producer : producers) {
+			producer.join();
+		}
+	}
+
+	@Test
+	public void handoff() throws Exception {
+		for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+			String[] processingThread = new String[1];
+			RingBufferRxJavaProcessor processor = new RingBufferRxJavaProcessor(in -> in.doOnNext(
+					e -> processingThread[0] = Thread.currentThread().getName()).map(e -> ((Integer) e) * 2), 16, false,
+					waitStrategy, FullPolicy.BLOCK);
+			PublishSubject<Object> input = PublishSubject.create();
+			TestSubscriber<Object> output = new TestSubscriber<>();
+			processor.process(input).subscribe(output);
+			List<Object> expected = new ArrayList<>();
+			for (int i = 0; i < 1000; i++) {
+				input.onNext(i);
+				expected.add(i * 2);
+			}
+			input.onCompleted();
+			output.awaitTerminalEvent(5, TimeUnit.SECONDS);
+			output.assertReceivedOnNext(expected);
+			output.assertCompleted();
+			assertTrue(processingThread[0].startsWith("prxj-ring-"));
+		}
+	}
+
+	@Test
+	public void fullPolicies() throws Exception {
+		long dropped = ProcessorMetrics.gauge("ring.dropped").get();
+		assertEquals(2, stalledProcessorOutput(FullPolicy.DROP).size());
+		// One is being processed (stalled) and two are buffered
+		assertEquals(dropped + 7, ProcessorMetrics.gauge("ring.dropped").get());
+		List<Object> spilled = stalledProcessorOutput(FullPolicy.SPILL);
+		assertEquals(9, spilled.size());
+		for (int i = 0; i < 9; i++) {
+			assertEquals(i + 1, spilled.get(i));
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void consumerFailure() throws Exception {
+		for (FullPolicy fullPolicy : new FullPolicy[] { FullPolicy.BLOCK, FullPolicy.SPILL }) {
+			// An operator that throws out of onNext, rather than passing on an error, escapes into the consumer thread
+			RingBufferRxJavaProcessor processor = new RingBufferRxJavaProcessor(in -> in.lift(child -> new Subscriber<Object>(child) {
+				public void onNext(Object element) {
+					throw new IllegalStateException("broken");
+				}
+				public void onError(Throwable throwable) {
+					child.onError(throwable);
+				}
+				public void onCompleted() {
+					child.onCompleted();
+				}
+			}), 2, false, WaitStrategy.PARK, fullPolicy);
+			PublishSubject<Object> input = PublishSubject.create();
+			TestSubscriber<Object> output = new TestSubscriber<>();
+			processor.process(input).subscribe(output);
+			input.onNext(0);
+			output.awaitTerminalEvent(5, TimeUnit.SECONDS);
+			assertEquals("broken", output.getOnErrorEvents().get(0).getMessage());
+			// The binder is no longer blocked or spilling, the input is dropped
+			for (int i = 1; i < 100 && input.hasObservers(); i++) {
+				input.onNext(i);
+			}
+			assertFalse(input.hasObservers());
+		}
+	}
+
+	/**
+	 * Send 10 elements to a processor that stalls on the first, with a buffer of 2, then let it continue.
+	 */
+	private List<Object> stalledProcessorOutput(FullPolicy fullPolicy) throws Exception {
+		CountDownLatch processing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		RingBufferRxJavaProcessor processor = new RingBufferRxJavaProcessor(in -> in.doOnNext(e -> {
+			if (((Integer) e) == 0) {
+				processing.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}).skip(1), 2, false, WaitStrategy.PARK, fullPolicy);
+		PublishSubject<Object> input = PublishSubject.create();
+		TestSubscriber<Object> output = new TestSubscriber<>();
+		processor.process(input).subscribe(output);
+		input.onNext(0);
+		assertTrue(processing.await(5, TimeUnit.SECONDS));
+		for (int i = 1; i < 10; i++) {
+			input.onNext(i);
+		}
+		release.countDown();
+		input.onCompleted();
+		output.awaitTerminalEvent(5, TimeUnit.SECONDS);
+		output.assertCompleted();
+		return output.getOnNextEvents();
+	}
+
+}
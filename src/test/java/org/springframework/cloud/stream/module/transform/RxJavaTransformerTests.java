@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.cloud.stream.module.transform.javacompiler.CompilationMessage;
+import org.springframework.cloud.stream.module.transform.javacompiler.RuntimeJavaCompiler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Verify code is validated with problems reported relative to the code, whichever template it goes into.
+ *
+ * @author Andy Clement
+ */
+public class RxJavaTransformerTests {
+
+	private static final String MISSPELT = "return input -> input.map(s -> s.lenth());";
+
+	@Test
+	public void snippetOffset() {
+		String untyped = RxJavaTransformer.makeSourceClassDefinition(MISSPELT);
+		assertEquals(MISSPELT, untyped.substring(RxJavaTransformer.getSnippetOffset("Object", "Object")).substring(0, MISSPELT.length()));
+		String typed = RxJavaTransformer.makeSourceClassDefinition(MISSPELT, "String", "int");
+		assertEquals(MISSPELT, typed.substring(RxJavaTransformer.getSnippetOffset("String", "int")).substring(0, MISSPELT.length()));
+		assertTrue(RxJavaTransformer.getSnippetOffset("String", "int") != RxJavaTransformer.getSnippetOffset("Object", "Object"));
+	}
+
+	@Test
+	public void untyped() {
+		CompilationMessage message = single(transformer("Object", "Object").validate(MISSPELT));
+		assertEquals(CompilationMessage.Kind.ERROR, message.getKind());
+		assertEquals(MISSPELT, message.getSourceCode());
+		assertPosition(message, 1, 33, 32, 38);
+	}
+
+	@Test
+	public void typed() {
+		CompilationMessage message = single(transformer("String", "Integer").validate(MISSPELT));
+		assertEquals(CompilationMessage.Kind.ERROR, message.getKind());
+		assertEquals(MISSPELT, message.getSourceCode());
+		assertPosition(message, 1, 33, 32, 38);
+	}
+
+	@Test
+	public void secondLine() {
+		String code = "int x = 1;\n" + MISSPELT;
+		assertPosition(single(transformer("Object", "Object").validate(code)), 2, 33, 43, 49);
+		assertPosition(single(transformer("String", "Integer").validate(code)), 2, 33, 43, 49);
+	}
+
+	@Test
+	public void outsideSnippet() {
+		// Reported against the closing brace of the template method, so moved to the end of the code
+		String code = "int x = 1;";
+		for (RxJavaTransformer transformer : new RxJavaTransformer[] { transformer("Object", "Object"), transformer("String", "Integer") }) {
+			CompilationMessage message = single(transformer.validate(code));
+			assertTrue(message.getMessage(), message.getMessage().contains("missing return statement"));
+			assertPosition(message, 1, 11, 10, 10);
+		}
+	}
+
+	@Test
+	public void valid() {
+		assertEquals(0, transformer("Object", "Object").validate("return input -> input;").size());
+		assertEquals(0, transformer("String", "Integer").validate("return input -> input.map(s -> s.length());").size());
+	}
+
+	static RxJavaTransformer transformer(String inputType, String outputType) {
+		ProgrammableRxJavaProcessorProperties properties = new ProgrammableRxJavaProcessorProperties();
+		properties.setInputType(inputType);
+		properties.setOutputType(outputType);
+		RxJavaTransformer transformer = new RxJavaTransformer();
+		ReflectionTestUtils.setField(transformer, "properties", properties);
+		ReflectionTestUtils.setField(transformer, "compiler", new RuntimeJavaCompiler());
+		return transformer;
+	}
+
+	private static CompilationMessage single(List<CompilationMessage> messages) {
+		assertEquals(messages.toString(), 1, messages.size());
+		return messages.get(0);
+	}
+
+	private static void assertPosition(CompilationMessage message, int line, int column, int start, int end) {
+		assertEquals(message.toString(), line, message.getLineNumber());
+		assertEquals(message.toString(), column, message.getColumnNumber());
+		assertEquals(message.toString(), start, message.getStartPosition());
+		assertEquals(message.toString(), end, message.getEndPosition());
+	}
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+
+/**
+ * Verify processors can be run on the configured schedulers.
+ *
+ * @author Andy Clement
+ */
+public class ScheduledRxJavaProcessorTests {
+
+	@After
+	public void shutdown() {
+		ProcessorSchedulers.shutdown();
+	}
+
+	@Test
+	public void namedSchedulers() throws Exception {
+		assertNull(ProcessorSchedulers.schedulerOrNull(null));
+		assertNull(ProcessorSchedulers.schedulerOrNull(" none "));
+		assertSame(Schedulers.computation(), ProcessorSchedulers.scheduler("computation"));
+		assertSame(Schedulers.io(), ProcessorSchedulers.scheduler("io"));
+		assertSame(ProcessorSchedulers.scheduler("lookup"), ProcessorSchedulers.scheduler("lookup"));
+		// Falls back to a bounded pool when virtual threads are not available
+		assertNotNull(ProcessorSchedulers.scheduler("virtual"));
+		assertEquals("prxj-lookup-1", threadNameOn("lookup"));
+	}
+
+	@Test
+	public void observeOn() throws Exception {
+		String[] processingThread = new String[1];
+		ScheduledRxJavaProcessor processor = new ScheduledRxJavaProcessor(
+				in -> in.doOnNext(e -> processingThread[0] = Thread.currentThread().getName()), null,
+				ProcessorSchedulers.scheduler("bounded"));
+		assertTrue(processor.isScheduled());
+		TestSubscriber<Object> output = new TestSubscriber<>();
+		processor.process(Observable.<Object>just("a", "b")).subscribe(output);
+		output.awaitTerminalEvent(5, TimeUnit.SECONDS);
+		output.assertReceivedOnNext(Arrays.<Object>asList("a", "b"));
+		assertTrue(processingThread[0].startsWith("prxj-bounded-"));
+	}
+
+	@Test
+	public void notScheduled() throws Exception {
+		assertFalse(new ScheduledRxJavaProcessor(in -> in, null, null).isScheduled());
+	}
+
+	private String threadNameOn(String schedulerName) {
+		return Observable.just(1).subscribeOn(ProcessorSchedulers.scheduler(schedulerName))
+				.map(i -> Thread.currentThread().getName()).toBlocking().single();
+	}
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.cloud.stream.module.transform.javacompiler.CompilationTimings;
+
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+
+/**
+ * Verify the metrics recorded for stages of a pipeline.
+ *
+ * @author Andy Clement
+ */
+public class StageMetricsTests {
+
+	@Test
+	public void bufferingStage() throws Exception {
+		StageMetrics stage = new StageMetrics("buffering");
+		PublishSubject<Integer> input = PublishSubject.create();
+		TestSubscriber<Object> output = new TestSubscriber<>();
+		input.compose(stage.measure(o -> o.buffer(3))).subscribe(output);
+		input.onNext(1);
+		input.onNext(2);
+		assertEquals(2, stage.getIn());
+		assertEquals(0, stage.getOut());
+		assertEquals(2, stage.getPending());
+		Thread.sleep(20);
+		input.onNext(3);
+		assertEquals(3, stage.getIn());
+		assertEquals(1, stage.getOut());
+		assertEquals(0, stage.getPending());
+		assertEquals(1, stage.getLatency().getCount());
+		// The buffer took at least 20ms to fill
+		assertTrue(stage.getLatency().getMax() >= 20d);
+		input.onNext(4);
+		input.onCompleted();
+		assertEquals(2, stage.getOut());
+		assertEquals(0, stage.getPending());
+		assertEquals(2, stage.getDownstream().getCount());
+	}
+
+	@Test
+	public void histogram() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0d, histogram.getPercentile(50), 0d);
+		for (int i = 1; i <= 99; i++) {
+			histogram.record(1_000_000);
+		}
+		histogram.record(100_000_000);
+		assertEquals(100, histogram.getCount());
+		assertEquals(100d, histogram.getMax(), 0d);
+		assertEquals(1.99d, histogram.getMean(), 0.001d);
+		// Percentiles are accurate to a factor of two
+		double p50 = histogram.getPercentile(50);
+		assertTrue(p50 >= 1d && p50 < 2d);
+		assertTrue(histogram.getPercentile(99) < 2d);
+		assertEquals(100d, histogram.getPercentile(100), 0d);
+	}
+
+	@Test
+	public void publicMetrics() throws Exception {
+		PublishSubject<Object> input = PublishSubject.create();
+		input.compose(ProcessorMetrics.meter("probe")).subscribe(new TestSubscriber<>());
+		input.onNext("a");
+		input.onNext("b");
+		ProcessorMetrics processorMetrics = new ProcessorMetrics(new CompilationTimings(), new DeferredRxJavaProcessor(1));
+		Map<String, Number> metrics = new HashMap<>();
+		for (Metric<?> metric : processorMetrics.metrics()) {
+			metrics.put(metric.getName(), metric.getValue());
+		}
+		assertEquals(2L, metrics.get("prxj.stage.probe.in"));
+		assertEquals(2L, metrics.get("prxj.stage.probe.out"));
+		assertEquals(0L, metrics.get("prxj.stage.probe.pending"));
+		assertTrue(metrics.containsKey("prxj.stage.probe.latency.p99"));
+		assertTrue(metrics.containsKey("prxj.compile.cold"));
+		assertEquals(0, metrics.get("prxj.startup.buffered"));
+	}
+
+}
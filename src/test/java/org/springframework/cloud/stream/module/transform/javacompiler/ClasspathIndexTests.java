@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform.javacompiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import javax.tools.JavaFileObject;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Verify the package based lookups that ClasspathIndex provides.
+ *
+ * @author Andy Clement
+ */
+public class ClasspathIndexTests {
+
+	static String NestedJarPath = "target/test-classes/outerjar.jar";
+	static String SimpleJarPath = "target/test-classes/simplejar.jar";
+	static String TestClassesDir = "target/test-classes";
+
+	@Rule
+	public final ExpectedException exception = ExpectedException.none();
+
+	@Test
+	public void sharedInstances() throws Exception {
+		assertSame(ClasspathIndex.forClasspath(SimpleJarPath), ClasspathIndex.forClasspath(SimpleJarPath));
+	}
+
+	@Test
+	public void packageLookups() throws Exception {
+		ClasspathIndex index = ClasspathIndex.forClasspath(SimpleJarPath);
+		assertEquals(2, index.size());
+		assertEquals(2, index.list(null, false).size());
+		assertEquals(0, index.list("com", false).size());
+		assertEquals(2, index.list("com", true).size());
+		List<JavaFileObject> entries = index.list("com.foo", false);
+		assertEquals(1, entries.size());
+		assertEquals("com/foo/Xxx.class", entries.get(0).getName());
+		assertEquals(1, index.list("com.foo", true).size());
+		assertEquals(0, index.list("com.fo", true).size());
+		assertEquals(0, index.list("made.up", false).size());
+	}
+
+	@Test
+	public void nestedJars() throws Exception {
+		ClasspathIndex index = ClasspathIndex.forClasspath(NestedJarPath);
+		List<JavaFileObject> entries = index.list("", false);
+		assertEquals(2, entries.size());
+		assertEquals("Foo.class", entries.get(0).getName());
+		assertEquals("Bar.class", entries.get(1).getName());
+		assertEquals("world\n", IterableClasspathTests.readContent(entries.get(1).openInputStream()));
+	}
+
+	@Test
+	public void mixedClasspath() throws Exception {
+		ClasspathIndex index = ClasspathIndex.forClasspath(
+				NestedJarPath + File.pathSeparator + TestClassesDir + File.pathSeparator + SimpleJarPath);
+		String thisPackage = ClasspathIndexTests.class.getPackage().getName();
+		String thisClassFilename = ClasspathIndexTests.class.getName().replace('.', '/') + ".class";
+		boolean found = false;
+		for (JavaFileObject jfo : index.list(thisPackage, false)) {
+			found |= jfo.getName().equals(thisClassFilename);
+		}
+		assertTrue(found);
+		found = false;
+		for (JavaFileObject jfo : index.list("org.springframework", true)) {
+			found |= jfo.getName().equals(thisClassFilename);
+		}
+		assertTrue(found);
+		assertEquals(2, index.list("com", true).size());
+		assertEquals(2, index.list("", false).size());
+
+		// Should not work because it needs to be dotted, not slashed
+		exception.expect(IllegalArgumentException.class);
+		index.list("org/springframework", true);
+	}
+
+}
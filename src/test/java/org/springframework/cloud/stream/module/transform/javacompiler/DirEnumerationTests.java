@@ -17,10 +17,13 @@ package org.springframework.cloud.stream.module.transform.javacompiler;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.HashSet;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -85,6 +88,49 @@ public class DirEnumerationTests {
 		e.getName(File.createTempFile("tmp",null));
 	}
 	
+	@Test
+	public void startInPackageDirectory() throws Exception {
+		String packageDirectory = DirEnumerationTests.class.getPackage().getName().replace('.', '/');
+		DirEnumeration e = new DirEnumeration(new File("target/test-classes"), packageDirectory, false, false);
+		Set<String> names = new HashSet<>();
+		while (e.hasMoreElements()) {
+			names.add(e.getName(e.nextElement()));
+		}
+		assertTrue(names.contains(packageDirectory + "/" + FooClassFilename));
+		for (String name : names) {
+			assertEquals(packageDirectory, name.substring(0, name.lastIndexOf('/')));
+		}
+	}
+
+	@Test
+	public void startDirectoryWithTrailingSeparator() throws Exception {
+		String packageDirectory = DirEnumerationTests.class.getPackage().getName().replace('.', '/');
+		DirEnumeration e = new DirEnumeration(new File("target/test-classes"), packageDirectory + "/", false, false);
+		assertTrue(e.hasMoreElements());
+		assertEquals(packageDirectory, e.getName(e.nextElement()).substring(0, packageDirectory.length()));
+		// A bare separator is the base directory, not the filesystem root
+		e = new DirEnumeration(new File("target/test-classes"), "/", false, false);
+		while (e.hasMoreElements()) {
+			assertEquals(-1, e.getName(e.nextElement()).indexOf('/'));
+		}
+	}
+
+	@Test
+	public void parallelWalk() throws Exception {
+		DirEnumeration e = new DirEnumeration(new File("target/test-classes"));
+		Set<File> files = new HashSet<>();
+		while (e.hasMoreElements()) {
+			files.add(e.nextElement());
+		}
+		DirEnumeration parallel = new DirEnumeration(new File("target/test-classes"), null, true, true);
+		Set<File> parallelFiles = new HashSet<>();
+		while (parallel.hasMoreElements()) {
+			parallelFiles.add(parallel.nextElement());
+		}
+		assertEquals(files, parallelFiles);
+		assertNotNull(find(new DirEnumeration(new File("target/test-classes"), null, true, true), BarClassFilename));
+	}
+
 	// ---
 	
 	private File find(DirEnumeration e, String name) {
@@ -24,10 +24,14 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.Reader;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import javax.tools.JavaFileObject;
 import javax.tools.JavaFileObject.Kind;
@@ -36,6 +40,7 @@ import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * Verify that IterableClasspath behaves and also that the various iterators it can produce
@@ -52,6 +57,7 @@ public class IterableClasspathTests {
 	static String YyyClassFilename = "com/bar/Yyy.class";
 	
 	static String NestedJarPath = "target/test-classes/outerjar.jar";
+	static String StoredNestedJarPath = "target/test-classes/bootjar.jar";
 	static String SimpleJarPath = "target/test-classes/simplejar.jar";
 	static String TestClassesDir = "target/test-classes";
 
@@ -61,6 +67,9 @@ public class IterableClasspathTests {
 	
 	@Rule
 	public final ExpectedException exception = ExpectedException.none();
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
 	
 	@Test
 	public void badentries() throws Exception {
@@ -219,6 +228,28 @@ public class IterableClasspathTests {
 		assertNotEquals(barJfo,fooJfo);
 	}
 	
+	// Like a spring boot uberjar the nested jar is stored, so entries are read via its central directory
+	@Test
+	public void storedNestedJars() throws Exception {
+		IterableClasspath icp = new IterableClasspath(StoredNestedJarPath, null, false);
+		Iterator<JavaFileObject> iterator = icp.iterator();
+		JavaFileObject fooJfo = iterator.next();
+		assertEquals("Foo.class", fooJfo.getName());
+		String outerjarpath = new File(StoredNestedJarPath).getAbsolutePath();
+		assertEquals("zip:"+outerjarpath+"!lib/innerjar.jar!Foo.class",fooJfo.toUri().toString());
+		JavaFileObject barJfo = iterator.next();
+		assertEquals("Bar.class", barJfo.getName());
+		assertFalse(iterator.hasNext());
+
+		verifyClassFileJfo(barJfo);
+		assertEquals(barJfo,find(icp.iterator(),"Bar.class"));
+		// Read them out of order, each read should go straight to the entry
+		assertEquals("world\n", readContent(barJfo.openInputStream()));
+		assertEquals("hello\n", readContent(fooJfo.openInputStream()));
+		assertEquals("world\n", readContent(barJfo.openInputStream()));
+		icp.close();
+	}
+
 	@Test
 	public void jarsAndDirs() throws Exception {
 		IterableClasspath icp = new IterableClasspath(NestedJarPath+File.pathSeparator+TestClassesDir+File.pathSeparator+SimpleJarPath, null, false);
@@ -233,6 +264,50 @@ public class IterableClasspathTests {
 		icp.close();
 	}
 
+	@Test
+	public void corruptArchiveIsSkipped() throws Exception {
+		File corrupt = folder.newFile("corrupt.jar");
+		try (FileOutputStream fos = new FileOutputStream(corrupt)) {
+			fos.write("this is not a zip".getBytes());
+		}
+		IterableClasspath icp = new IterableClasspath(corrupt.getPath()+File.pathSeparator+SimpleJarPath, null, false);
+		assertNotNull(find(icp.iterator(),XxxClassFilename));
+	}
+
+	@Test
+	public void corruptNestedArchiveIsSkipped() throws Exception {
+		File outer = folder.newFile("outer.jar");
+		try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(outer))) {
+			// Stored, so it is read as a view onto the outer archive
+			byte[] garbage = "this is not a zip".getBytes();
+			ZipEntry bad = new ZipEntry("lib/bad.jar");
+			bad.setMethod(ZipEntry.STORED);
+			bad.setSize(garbage.length);
+			CRC32 crc = new CRC32();
+			crc.update(garbage);
+			bad.setCrc(crc.getValue());
+			zos.putNextEntry(bad);
+			zos.write(garbage);
+			zos.closeEntry();
+			zos.putNextEntry(new ZipEntry("com/example/After.class"));
+			zos.write(new byte[] { (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE });
+			zos.closeEntry();
+		}
+		IterableClasspath icp = new IterableClasspath(outer.getPath()+File.pathSeparator+SimpleJarPath, null, false);
+		Iterator<JavaFileObject> iterator = icp.iterator();
+		assertNotNull(find(iterator,"com/example/After.class"));
+		assertNotNull(find(iterator,XxxClassFilename));
+	}
+
+	@Test
+	public void unnamedPackageFiltering() throws Exception {
+		// There are no classes in the unnamed package in the test classes
+		IterableClasspath icp = new IterableClasspath(TestClassesDir, "", false);
+		assertFalse(icp.iterator().hasNext());
+		icp = new IterableClasspath(TestClassesDir, "", true);
+		assertNotNull(find(icp.iterator(),ThisClassFilename));
+	}
+
 	@Test
 	public void packageFiltering() throws Exception {
 		String path = NestedJarPath+File.pathSeparator+TestClassesDir+File.pathSeparator+SimpleJarPath;
@@ -15,12 +15,14 @@
  */
 package org.springframework.cloud.stream.module.transform.javacompiler;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.fail;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.FileNotFoundException;
@@ -29,6 +31,7 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
@@ -121,6 +124,27 @@ public class MemoryBasedJavaFileManagerTests {
 		assertNotNull(find(iterable.iterator(),ThisClassFilename));		
 	}
 	
+	@Test
+	public void emptyPackages() throws Exception {
+		assertFalse(MemoryBasedJavaFileManager.isKnownEmptyPackage(StandardLocation.CLASS_PATH, "made.up"));
+		Iterable<JavaFileObject> iterable = jfm.list(StandardLocation.CLASS_PATH, "made.up", null, false);
+		assertFalse(iterable.iterator().hasNext());
+		assertTrue(MemoryBasedJavaFileManager.isKnownEmptyPackage(StandardLocation.CLASS_PATH, "made.up"));
+		assertFalse(MemoryBasedJavaFileManager.isKnownEmptyPackage(StandardLocation.PLATFORM_CLASS_PATH, "made.up"));
+		
+		// Shared by other file managers
+		MemoryBasedJavaFileManager jfm2 = new MemoryBasedJavaFileManager();
+		assertFalse(jfm2.list(StandardLocation.CLASS_PATH, "made.up", null, true).iterator().hasNext());
+
+		// Packages with classes only in subpackages are not empty
+		assertNotNull(find(jfm.list(StandardLocation.CLASS_PATH, "org", null, true).iterator(),ThisClassFilename));
+		assertFalse(MemoryBasedJavaFileManager.isKnownEmptyPackage(StandardLocation.CLASS_PATH, "org"));
+		assertFalse(jfm.list(StandardLocation.PLATFORM_CLASS_PATH, "java", null, false).iterator().hasNext());
+		assertTrue(jfm.list(StandardLocation.PLATFORM_CLASS_PATH, "java", null, true).iterator().hasNext());
+		assertFalse(MemoryBasedJavaFileManager.isKnownEmptyPackage(StandardLocation.PLATFORM_CLASS_PATH, "java"));
+		assertTrue(jfm.list(StandardLocation.CLASS_PATH, "", null, true).iterator().hasNext());
+	}
+
 	@Test
 	public void inferBinaryName() throws Exception {
 		Iterable<JavaFileObject> iterable = jfm.list(StandardLocation.CLASS_PATH, null, null, true);
@@ -177,6 +201,8 @@ public class MemoryBasedJavaFileManagerTests {
 		CompiledClassDefinition ccd = compiledClasses.get(0);
 		assertEquals("Foo",ccd.getClassName());
 		assertEquals("hello world",new String(ccd.getBytes()));
+		// The content was trimmed when the output was closed, so the array is not copied again
+		assertSame(ccd.getByteBuffer().array(), ccd.getBytes());
 		ccd = compiledClasses.get(1);
 		assertEquals("Bar",ccd.getClassName());
 		assertEquals("goodbye world",new String(ccd.getBytes()));
@@ -215,6 +241,8 @@ public class MemoryBasedJavaFileManagerTests {
 		try (OutputStream os = jfo.openOutputStream()) {
 			os.write("test".getBytes());
 		}
+		// An exactly sized array is kept, not the larger array of the stream
+		assertEquals(4, jfo.getContentBuffer().array().length);
 		
 		try (InputStream is = jfo.openInputStream()) {
 			assertEquals("test",IterableClasspathTests.readContent(is));
@@ -269,6 +297,30 @@ public class MemoryBasedJavaFileManagerTests {
 		assertEquals("OutputJavaFileObject: Location=CLASS_OUTPUT,className=Foo,kind=CLASS,relativeName=null,sibling=OutputJavaFileObject: Location=SOURCE_PATH,className=Foo.java,kind=SOURCE,relativeName=null,sibling=null,packageName=null,packageName=null",jfo.toString());
 	}
 
+	@Test
+	public void utf8Content() throws Exception {
+		CompilationOutputCollector collector = new CompilationOutputCollector();
+		InMemoryJavaFileObject jfo = collector.getJavaFileForOutput(StandardLocation.SOURCE_OUTPUT, "Foo", Kind.SOURCE, null);
+		try (Writer w = jfo.openWriter()) {
+			w.write("// \u00e9t\u00e9");
+		}
+		assertEquals(8, jfo.getContent().remaining());
+		assertArrayEquals("// \u00e9t\u00e9".getBytes(StandardCharsets.UTF_8), jfo.getBytes());
+		assertEquals("// \u00e9t\u00e9", jfo.getCharContent(true));
+		// Decoded once
+		assertSame(jfo.getCharContent(true), jfo.getCharContent(true));
+
+		// Class bytes are shared with the output file, not copied
+		InMemoryJavaFileObject classFile = collector.getJavaFileForOutput(StandardLocation.CLASS_OUTPUT, "Foo", Kind.CLASS, null);
+		try (OutputStream os = classFile.openOutputStream()) {
+			os.write(new byte[] { 1, 2, 3 });
+		}
+		CompiledClassDefinition ccd = collector.getCompiledClasses().get(0);
+		assertEquals(3, ccd.getSize());
+		assertSame(classFile.getContentBuffer().array(), ccd.getByteBuffer().array());
+		assertArrayEquals(new byte[] { 1, 2, 3 }, ccd.getBytes());
+	}
+
 	@Test
 	public void equals() throws Exception {
 		Iterable<JavaFileObject> iterable = jfm.list(StandardLocation.CLASS_PATH, null, null, true);
@@ -15,16 +15,22 @@
  */
 package org.springframework.cloud.stream.module.transform.javacompiler;
 
+import java.io.File;
 import java.io.PrintStream;
 import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
 import javax.tools.JavaFileObject.Kind;
 
 import org.apache.tomcat.util.http.fileupload.ByteArrayOutputStream;
 import org.junit.Assert;
 import static org.junit.Assert.*;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.springframework.cloud.stream.annotation.rxjava.RxJavaProcessor;
 import org.springframework.cloud.stream.module.transform.ProcessorFactory;
 import org.springframework.cloud.stream.module.transform.RxJavaTransformer;
@@ -36,7 +42,33 @@ import rx.Observable;
  * @author Andy Clement
  */
 public class RuntimeJavaCompilerTests {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
 		
+	@Test
+	public void messageForRegion() {
+		String source = "class A {\n  void m() {\n    foo();\n  }\n}\n";
+		int offset = source.indexOf("    foo();");
+		int length = "    foo();\n  }".length();
+		CompilationMessage inside = new CompilationMessage(CompilationMessage.Kind.ERROR, "inside", source, offset + 4, offset + 7);
+		CompilationMessage region = inside.forRegion(offset, length);
+		assertEquals("    foo();\n  }", region.getSourceCode());
+		assertEquals(4, region.getStartPosition());
+		assertEquals(7, region.getEndPosition());
+		assertEquals(1, region.getLineNumber());
+		assertEquals(5, region.getColumnNumber());
+		// Before and after the region are moved to its ends
+		region = new CompilationMessage(CompilationMessage.Kind.ERROR, "before", source, 0, 5).forRegion(offset, length);
+		assertEquals(0, region.getStartPosition());
+		assertEquals(0, region.getEndPosition());
+		region = new CompilationMessage(CompilationMessage.Kind.ERROR, "after", source, source.length() - 2, source.length() - 1).forRegion(offset, length);
+		assertEquals(length, region.getStartPosition());
+		assertEquals(length, region.getEndPosition());
+		assertEquals(2, region.getLineNumber());
+		assertEquals(4, region.getColumnNumber());
+	}
+
 	@Test
 	public void basicCompile() throws Exception {
 		RuntimeJavaCompiler rjc = new RuntimeJavaCompiler();
@@ -143,7 +175,301 @@ public class RuntimeJavaCompilerTests {
 		Assert.assertEquals(4, resultElement); // average of second 3
 	}
 	
+	@Test
+	public void ecjBasicCompile() throws Exception {
+		RuntimeJavaCompiler rjc = new RuntimeJavaCompiler();
+		rjc.setCompilerBackend(new EcjCompilerBackend());
+		CompilationResult cr = rjc.compile("a.b.c.Foo",
+				"package a.b.c;\n"+
+				"import java.util.*;\n"+
+				"public class Foo {\n"+
+				"  public static void main(String[] argv) {\n"+
+				"    List<String> words = new ArrayList<>(Arrays.asList(\"hello\", \"world\"));\n"+
+				"    Runnable r = new Runnable() { public void run() { System.out.println(String.join(\" \", words)); }};\n"+
+				"    r.run();\n"+
+				"  }\n"+
+				"}");
+		Assert.assertTrue(cr.toString(), cr.wasSuccessful());
+		assertEquals(2, cr.getCompiledClasses().size()); // Includes the anonymous Runnable
+		assertEquals("a.b.c.Foo", cr.getCompiledClasses().get(0).getName());
+		String output = captureOutputDuringRunOfMainMethod(cr.getCompiledClasses().get(0));
+		Assert.assertEquals("hello world\n",output);
+	}
+
+	@Test
+	public void ecjCompileError() throws Exception {
+		RuntimeJavaCompiler rjc = new RuntimeJavaCompiler();
+		rjc.setCompilerBackend(new EcjCompilerBackend());
+		String source = 
+				"package a.b.c;\n"+
+				"public class Foo {\n"+
+				"  public static void main(Strin[] argv) {\n"+
+				"    System.out.println(\"hello world\");\n"+
+				"  }\n"+
+				"}";
+		CompilationResult cr = rjc.compile("a.b.c.Foo",source);
+		Assert.assertFalse(cr.wasSuccessful());
+		assertEquals(0, cr.getCompiledClasses().size());
+		CompilationMessage compilationMessage = cr.getCompilationMessages().get(0);
+		Assert.assertEquals(
+				"==========\n"+
+				"  public static void main(Strin[] argv) {\n"+
+                "                          ^^^^^\n"+
+                "ERROR:Strin cannot be resolved to a type\n"+
+                "==========\n", compilationMessage.toString());
+		assertEquals(60,compilationMessage.getStartPosition());
+		assertEquals(65,compilationMessage.getEndPosition());
+		assertEquals(source,compilationMessage.getSourceCode());
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	@Test
+	public void ecjRealTemplateWithRxJavaMath() throws Exception {
+		RuntimeJavaCompiler rjc = new RuntimeJavaCompiler();
+		rjc.setCompilerBackend(new EcjCompilerBackend());
+		String insert = "return input -> input.map(s->Integer.valueOf((String)s)).window(3).flatMap(MathObservable::averageInteger);";
+		String source = RxJavaTransformer.makeSourceClassDefinition(insert);
+		CompilationResult cr = rjc.compile("org.springframework.cloud.stream.module.transform.RxClass", source );
+		if (!cr.wasSuccessful()) {
+			Assert.fail("Compilation does not appear to have worked:\n"+cr.toString());
+		}
+		RxJavaProcessor rjp = invokeGetProcessor(cr.getCompiledClasses().get(0));
+		Observable<String> strings = Observable.from(new String[]{"2","4","9","1","4","7"});
+		Iterator bo = rjp.process(strings).toBlocking().toIterable().iterator();
+		Assert.assertEquals(5, bo.next());
+		Assert.assertEquals(4, bo.next());
+	}
+
+	@Test
+	public void warmCompiles() throws Exception {
+		RuntimeJavaCompiler rjc = new RuntimeJavaCompiler();
+		EcjCompilerBackend ecj = new EcjCompilerBackend();
+		rjc.setCompilerBackend(ecj);
+		String insert = "return input -> input.map(s->Integer.valueOf((String)s)).buffer(%d).map(is->{int sum=0;for (int i: is) sum+=i; return sum;});";
+		CompilationResult cr = rjc.compile("org.springframework.cloud.stream.module.transform.RxClass",
+				RxJavaTransformer.makeSourceClassDefinition(String.format(insert, 6)));
+		Assert.assertTrue(cr.toString(), cr.wasSuccessful());
+		int cachedTypes = ecj.getNameEnvironment().getCachedTypeCount();
+		assertTrue(cachedTypes > 0);
+		assertEquals(0, rjc.getCompilationTimings().getWarmCompileCount());
+		assertTrue(rjc.getCompilationTimings().getColdCompileTime() >= 0);
+
+		// The second compile resolves the same classpath types, no more should need reading
+		cr = rjc.compile("org.springframework.cloud.stream.module.transform.RxClass",
+				RxJavaTransformer.makeSourceClassDefinition(String.format(insert, 3)));
+		Assert.assertTrue(cr.toString(), cr.wasSuccessful());
+		assertEquals(cachedTypes, ecj.getNameEnvironment().getCachedTypeCount());
+		assertEquals(1, rjc.getCompilationTimings().getWarmCompileCount());
+		assertEquals(rjc.getCompilationTimings().getLastCompileTime(), rjc.getCompilationTimings().getAverageWarmCompileTime());
+	}
+
+	@Test
+	public void backendAffectsCacheKey() throws Exception {
+		RuntimeJavaCompiler javac = new RuntimeJavaCompiler();
+		javac.setCompilerBackend(new JavacCompilerBackend());
+		RuntimeJavaCompiler ecj = new RuntimeJavaCompiler();
+		ecj.setCompilerBackend(new EcjCompilerBackend());
+		assertNotEquals(javac.computeCacheKey("a.b.c.Foo", "class Foo {}"), ecj.computeCacheKey("a.b.c.Foo", "class Foo {}"));
+	}
+
+	@Test
+	public void batchCompile() throws Exception {
+		batchCompile(new JavacCompilerBackend());
+		batchCompile(new EcjCompilerBackend());
+	}
+
+	private void batchCompile(CompilerBackend compilerBackend) throws Exception {
+		RuntimeJavaCompiler rjc = new RuntimeJavaCompiler();
+		rjc.setCompilerBackend(compilerBackend);
+		// Main extends Helper but is defined first
+		List<CompilationResult> results = rjc.compile(Arrays.asList(
+				new CompilationUnit("a.b.Main",
+						"package a.b;\n"+
+						"public class Main extends Helper {\n"+
+						"  public static void main(String[] argv) {\n"+
+						"    System.out.println(greeting());\n"+
+						"  }\n"+
+						"}"),
+				new CompilationUnit("a.b.Helper",
+						"package a.b;\n"+
+						"public class Helper {\n"+
+						"  static String greeting() { return \"hello world\"; }\n"+
+						"}")));
+		assertEquals(2, results.size());
+		assertTrue(results.get(0).toString(), results.get(0).wasSuccessful());
+		assertTrue(results.get(1).toString(), results.get(1).wasSuccessful());
+		assertEquals("a.b.Main", results.get(0).getCompiledClasses().get(0).getName());
+		assertEquals("a.b.Helper", results.get(1).getCompiledClasses().get(0).getName());
+		assertEquals(results.get(1).getCompiledClasses().get(0), results.get(0).getCompiledClasses().get(0).getSuperclass());
+		assertEquals("hello world\n", captureOutputDuringRunOfMainMethod(results.get(0).getCompiledClasses().get(0)));
+
+		// Messages are attributed to the unit containing the problem
+		String badSource = 
+				"package a.b;\n"+
+				"public class Bad {\n"+
+				"  Strin s;\n"+
+				"}";
+		results = rjc.compile(Arrays.asList(
+				new CompilationUnit("a.b.Good", "package a.b;\npublic class Good {}"),
+				new CompilationUnit("a.b.Bad", badSource)));
+		assertEquals(0, results.get(0).getCompilationMessages().size());
+		assertFalse(results.get(1).wasSuccessful());
+		assertEquals(1, results.get(1).getCompilationMessages().size());
+		assertEquals(badSource, results.get(1).getCompilationMessages().get(0).getSourceCode());
+		assertEquals(0, results.get(1).getCompiledClasses().size());
+	}
+
+	@Test
+	public void classesDefinedOnDemand() throws Exception {
+		RuntimeJavaCompiler rjc = new RuntimeJavaCompiler();
+		CompilationResult cr = rjc.compile("a.b.c.Foo",
+				"package a.b.c;\n"+
+				"public class Foo extends Base {\n"+
+				"  static class Unused {}\n"+
+				"  public static void main(String[] argv) {\n"+
+				"    System.out.println(\"hello world\");\n"+
+				"  }\n"+
+				"}\n"+
+				"class Base {}");
+		assertTrue(cr.toString(), cr.wasSuccessful());
+		assertEquals(3, cr.getCompiledClassNames().size());
+		SimpleClassLoader classLoader = (SimpleClassLoader) cr.getClassLoader();
+		assertFalse(classLoader.isDefined("a.b.c.Foo"));
+		// The superclass is defined when it is needed, the unused class is not
+		Class<?> foo = cr.getCompiledClass("a.b.c.Foo");
+		assertEquals("hello world\n", captureOutputDuringRunOfMainMethod(foo));
+		assertTrue(classLoader.isDefined("a.b.c.Base"));
+		assertFalse(classLoader.isDefined("a.b.c.Foo$Unused"));
+		assertNull(cr.getCompiledClass("a.b.c.Bar"));
+		assertEquals(3, cr.getCompiledClasses().size());
+		assertTrue(classLoader.isDefined("a.b.c.Foo$Unused"));
+	}
+
+	@Test
+	public void validate() throws Exception {
+		RuntimeJavaCompiler rjc = new RuntimeJavaCompiler();
+		String insert = "return input ->\n  input.map(s -> s.lenth());";
+		String source = RxJavaTransformer.makeSourceClassDefinition(insert, "String", "int");
+		CompilationResult cr = rjc.validate("org.springframework.cloud.stream.module.transform.RxClass", source);
+		assertFalse(cr.wasSuccessful());
+		assertNull(cr.getClassLoader());
+		assertEquals(0, cr.getCompiledClassNames().size());
+		CompilationMessage message = cr.getCompilationMessages().get(0)
+				.forRegion(RxJavaTransformer.getSnippetOffset("String", "int"), insert.length());
+		assertEquals(CompilationMessage.Kind.ERROR, message.getKind());
+		assertEquals(insert, message.getSourceCode());
+		assertEquals(2, message.getLineNumber());
+		assertEquals(19, message.getColumnNumber());
+		assertEquals(insert.indexOf("lenth") - 1, message.getStartPosition());
+
+		cr = rjc.validate("org.springframework.cloud.stream.module.transform.RxClass",
+				RxJavaTransformer.makeSourceClassDefinition("return input -> input;"));
+		assertTrue(cr.toString(), cr.wasSuccessful());
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	@Test
+	public void typedTemplate() throws Exception {
+		RuntimeJavaCompiler rjc = new RuntimeJavaCompiler();
+		// Typed input means no cast is needed, the average of each window of 3 is computed without boxing the values
+		String insert = "return input -> input.compose(averageOfInts(3, Integer::parseInt));";
+		String source = RxJavaTransformer.makeSourceClassDefinition(insert, "String", "int");
+		CompilationResult cr = rjc.compile("org.springframework.cloud.stream.module.transform.RxClass", source );
+		if (!cr.wasSuccessful()) {
+			Assert.fail("Compilation does not appear to have worked:\n"+cr.toString());
+		}
+		RxJavaProcessor rjp = invokeGetProcessor(cr.getCompiledClasses().get(0));
+		Observable<String> strings = Observable.from(new String[]{"2","4","9","1","4","7"});
+		Iterator bo = rjp.process(strings).toBlocking().toIterable().iterator();
+		Assert.assertEquals(5, bo.next());
+		Assert.assertEquals(4, bo.next());
+
+		// Object types use the untyped template
+		assertEquals(RxJavaTransformer.makeSourceClassDefinition(insert), RxJavaTransformer.makeSourceClassDefinition(insert, "Object", null));
+	}
+
+	@Test
+	public void cachedCompile() throws Exception {
+		File cacheDirectory = folder.newFolder("compilationCache");
+		String source = 
+				"package a.b.c;\n"+
+				"public class Foo {\n"+
+				"  public static void main(String[] argv) {\n"+
+				"    System.out.println(\"hello world\");\n"+
+				"  }\n"+
+				"}";
+		RecordingCompilationCache memoryCache = new RecordingCompilationCache();
+		RuntimeJavaCompiler rjc = new RuntimeJavaCompiler();
+		rjc.setCompilationCache(new TieredCompilationCache(Arrays.asList(memoryCache, new DirectoryCompilationCache(cacheDirectory))));
+		CompilationResult cr = rjc.compile("a.b.c.Foo", source);
+		Assert.assertTrue(cr.wasSuccessful());
+		assertEquals(1, memoryCache.puts);
+		assertEquals(1, cacheDirectory.list().length);
+
+		// Simulate a restart, a new empty memory tier, the classes should come from the directory without compiling
+		RecordingCompilationCache newMemoryCache = new RecordingCompilationCache();
+		RecordingCompilationCache compilationRecorder = new RecordingCompilationCache();
+		RuntimeJavaCompiler rjc2 = new RuntimeJavaCompiler();
+		rjc2.setCompilationCache(new TieredCompilationCache(Arrays.asList(newMemoryCache, new DirectoryCompilationCache(cacheDirectory), compilationRecorder)));
+		cr = rjc2.compile("a.b.c.Foo", source);
+		Assert.assertTrue(cr.wasSuccessful());
+		assertEquals(0, compilationRecorder.puts); // Would be 1 if it had compiled
+		assertEquals(1, newMemoryCache.puts); // Promoted from the directory tier
+		assertEquals("hello world\n", captureOutputDuringRunOfMainMethod(cr.getCompiledClasses().get(0)));
+
+		assertEquals(rjc.computeCacheKey("a.b.c.Foo", source), rjc2.computeCacheKey("a.b.c.Foo", source));
+		assertNotEquals(rjc.computeCacheKey("a.b.c.Foo", source), rjc.computeCacheKey("a.b.c.Foo", source + " "));
+	}
+
+	@Test
+	public void directoryFingerprintCoversContents() throws Exception {
+		File classes = folder.newFolder("one", "classes");
+		File classFile = new File(classes, "a/b/Foo.class");
+		classFile.getParentFile().mkdirs();
+		Files.write(classFile.toPath(), new byte[] { 1, 2, 3 });
+		String fingerprint = RuntimeJavaCompiler.computeClasspathFingerprint(classes.getPath());
+
+		// A copy elsewhere with different timestamps, as on another instance, matches
+		File copy = folder.newFolder("two", "classes");
+		File copiedClassFile = new File(copy, "a/b/Foo.class");
+		copiedClassFile.getParentFile().mkdirs();
+		Files.write(copiedClassFile.toPath(), new byte[] { 1, 2, 3 });
+		copiedClassFile.setLastModified(classFile.lastModified() - 60000);
+		assertEquals(fingerprint, RuntimeJavaCompiler.computeClasspathFingerprint(copy.getPath()));
+
+		// Recompiled in place, same size and directory timestamps, does not match
+		long directoryTime = classes.lastModified();
+		Files.write(classFile.toPath(), new byte[] { 1, 2, 4 });
+		classes.setLastModified(directoryTime);
+		assertNotEquals(fingerprint, RuntimeJavaCompiler.computeClasspathFingerprint(classes.getPath()));
+	}
+
+	@Test
+	public void memoryCacheIsBounded() throws Exception {
+		InMemoryCompilationCache cache = new InMemoryCompilationCache(2);
+		List<CompiledClassDefinition> classes = Arrays.asList(new CompiledClassDefinition("Foo.class", new byte[] { 1 }));
+		cache.put("a", classes);
+		cache.put("b", classes);
+		cache.get("a");
+		cache.put("c", classes);
+		assertEquals(2, cache.size());
+		// b was the least recently used
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("a"));
+		assertNotNull(cache.get("c"));
+	}
+
 	// ---
+
+	static class RecordingCompilationCache extends InMemoryCompilationCache {
+		int puts = 0;
+
+		@Override
+		public void put(String key, List<CompiledClassDefinition> compiledClasses) {
+			puts++;
+			super.put(key, compiledClasses);
+		}
+	}
 	
 	private RxJavaProcessor<?,?> invokeGetProcessor(Class<?> clazz) throws Exception {
 		Object o = clazz.newInstance();
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.stream.module.transform.javacompiler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Verify ZipDirectory reads plain, nested, zip64 and prefixed zips as java.util.zip does.
+ *
+ * @author Andy Clement
+ */
+public class ZipDirectoryTests {
+
+	static String NestedJarPath = "target/test-classes/outerjar.jar";
+	static String StoredNestedJarPath = "target/test-classes/bootjar.jar";
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void simpleZip() throws Exception {
+		File zip = write("simple.zip", zip());
+		ZipDirectory zipDirectory = new ZipDirectory(zip);
+		verifyContent(zipDirectory);
+		verifyAgainstZipFile(zip, zipDirectory);
+	}
+
+	@Test
+	public void prependedData() throws Exception {
+		// As with an executable jar that starts with a launch script
+		File zip = write("launchable.jar", concat("#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes(StandardCharsets.UTF_8), zip()));
+		ZipDirectory zipDirectory = new ZipDirectory(zip);
+		verifyContent(zipDirectory);
+		verifyAgainstZipFile(zip, zipDirectory);
+	}
+
+	@Test
+	public void zip64() throws Exception {
+		File zip = write("zip64.zip", toZip64(zip()));
+		ZipDirectory zipDirectory = new ZipDirectory(zip);
+		verifyContent(zipDirectory);
+		verifyAgainstZipFile(zip, zipDirectory);
+	}
+
+	@Test
+	public void zip64WithPrependedData() throws Exception {
+		File zip = write("zip64launchable.jar", concat("#!/bin/sh\n".getBytes(StandardCharsets.UTF_8), toZip64(zip())));
+		verifyContent(new ZipDirectory(zip));
+	}
+
+	@Test
+	public void deflatedNestedJar() throws Exception {
+		ZipDirectory outer = new ZipDirectory(new File(NestedJarPath));
+		ZipDirectory.Entry innerJar = outer.getEntry("lib/innerjar.jar");
+		assertEquals(ZipEntry.DEFLATED, innerJar.getMethod());
+		// Inflated onto the heap
+		assertFalse(outer.getByteBuffer(innerJar).isDirect());
+		verifyInnerJar(outer.getNestedDirectory(innerJar));
+	}
+
+	@Test
+	public void storedNestedJar() throws Exception {
+		ZipDirectory outer = new ZipDirectory(new File(StoredNestedJarPath));
+		ZipDirectory.Entry innerJar = outer.getEntry("lib/innerjar.jar");
+		assertEquals(ZipEntry.STORED, innerJar.getMethod());
+		// A slice of the mapping of the outer jar, nothing copied
+		ByteBuffer slice = outer.getByteBuffer(innerJar);
+		assertTrue(slice.isDirect());
+		assertTrue(slice.isReadOnly());
+		assertEquals(innerJar.getSize(), slice.remaining());
+		ZipDirectory inner = outer.getNestedDirectory(innerJar);
+		assertEquals(outer.getFile(), inner.getFile());
+		verifyInnerJar(inner);
+		// The directory of the nested jar is read from the outer mapping
+		assertTrue(inner.getCentralDirectory().isDirect());
+	}
+
+	@Test
+	public void byteBufferInputStreamAtEnd() throws Exception {
+		ByteBufferInputStream stream = new ByteBufferInputStream(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+		assertEquals(1, stream.read());
+		assertEquals(0, stream.skip(-1));
+		assertEquals(1, stream.skip(1));
+		byte[] bytes = new byte[4];
+		assertEquals(1, stream.read(bytes, 0, 4));
+		assertEquals(3, bytes[0]);
+		assertEquals(0, stream.available());
+		// At the end of the buffer
+		assertEquals(-1, stream.read());
+		assertEquals(-1, stream.read(bytes));
+		assertEquals(-1, stream.read(bytes, 1, 2));
+		assertEquals(0, stream.read(bytes, 0, 0));
+		assertEquals(0, stream.skip(10));
+		assertEquals(0, stream.available());
+	}
+
+	@Test
+	public void byteBufferInputStreamSkipPastEnd() throws Exception {
+		ByteBufferInputStream stream = new ByteBufferInputStream(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+		assertEquals(3, stream.skip(Long.MAX_VALUE));
+		assertEquals(-1, stream.read());
+	}
+
+	// ---
+
+	@Test
+	public void inflateReusesInput() throws Exception {
+		// The compressed input of the large entry does not fit the initial reused array, so it grows
+		byte[] large = new byte[100000];
+		new Random(0).nextBytes(large);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (ZipOutputStream zos = new ZipOutputStream(baos)) {
+			zos.putNextEntry(new ZipEntry("small1"));
+			zos.write("small one".getBytes(StandardCharsets.UTF_8));
+			zos.closeEntry();
+			zos.putNextEntry(new ZipEntry("large"));
+			zos.write(large);
+			zos.closeEntry();
+			zos.putNextEntry(new ZipEntry("small2"));
+			zos.write("two".getBytes(StandardCharsets.UTF_8));
+			zos.closeEntry();
+		}
+		File zip = write("inflate.zip", baos.toByteArray());
+		ZipDirectory zipDirectory = new ZipDirectory(zip);
+		for (int i = 0; i < 2; i++) {
+			byte[] small1 = zipDirectory.getBytes(zipDirectory.getEntry("small1"));
+			assertArrayEquals(large, zipDirectory.getBytes(zipDirectory.getEntry("large")));
+			// Each result is its own exact sized array, not a view of a reused one
+			assertEquals("small one", new String(small1, StandardCharsets.UTF_8));
+			assertEquals("two", new String(zipDirectory.getBytes(zipDirectory.getEntry("small2")), StandardCharsets.UTF_8));
+		}
+		verifyAgainstZipFile(zip, zipDirectory);
+	}
+
+	private static byte[] zip() throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (ZipOutputStream zos = new ZipOutputStream(baos)) {
+			zos.putNextEntry(new ZipEntry("com/example/Stored.class"));
+			zos.write("stored".getBytes(StandardCharsets.UTF_8));
+			zos.closeEntry();
+			zos.putNextEntry(new ZipEntry("com/example/Deflated.class"));
+			for (int i = 0; i < 100; i++) {
+				zos.write("deflated".getBytes(StandardCharsets.UTF_8));
+			}
+			zos.closeEntry();
+		}
+		return baos.toByteArray();
+	}
+
+	private static void verifyContent(ZipDirectory zipDirectory) throws Exception {
+		List<String> names = new ArrayList<>();
+		for (ZipDirectory.Entry entry : zipDirectory.getEntries()) {
+			names.add(entry.getName());
+		}
+		assertEquals("[com/example/Stored.class, com/example/Deflated.class]", names.toString());
+		assertEquals("stored", new String(zipDirectory.getBytes(zipDirectory.getEntry("com/example/Stored.class")), StandardCharsets.UTF_8));
+		String deflated = new String(zipDirectory.getBytes(zipDirectory.getEntry("com/example/Deflated.class")), StandardCharsets.UTF_8);
+		assertEquals(800, deflated.length());
+		assertTrue(deflated.startsWith("deflateddeflated"));
+	}
+
+	private static void verifyAgainstZipFile(File file, ZipDirectory zipDirectory) throws Exception {
+		try (ZipFile zipFile = new ZipFile(file)) {
+			for (ZipDirectory.Entry entry : zipDirectory.getEntries()) {
+				ZipEntry zipEntry = zipFile.getEntry(entry.getName());
+				assertNotNull(zipEntry);
+				assertEquals(zipEntry.getSize(), entry.getSize());
+				assertArrayEquals(read(zipFile.getInputStream(zipEntry)), read(zipDirectory.getInputStream(entry)));
+			}
+		}
+	}
+
+	private static void verifyInnerJar(ZipDirectory inner) throws Exception {
+		assertEquals(2, inner.getEntries().size());
+		assertEquals("hello\n", new String(inner.getBytes(inner.getEntry("Foo.class")), StandardCharsets.UTF_8));
+		assertEquals("world\n", new String(read(inner.getInputStream(inner.getEntry("Bar.class"))), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Rewrite a zip (that has no comment) so that its end record defers to a zip64 end record.
+	 */
+	private static byte[] toZip64(byte[] zip) {
+		ByteBuffer in = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+		int endPosition = zip.length - 22;
+		assertEquals(0x06054b50, in.getInt(endPosition));
+		int entryCount = in.getShort(endPosition + 10) & 0xFFFF;
+		long directorySize = in.getInt(endPosition + 12) & 0xFFFFFFFFL;
+		long directoryOffset = in.getInt(endPosition + 16) & 0xFFFFFFFFL;
+		ByteBuffer out = ByteBuffer.allocate(endPosition + 56 + 20 + 22).order(ByteOrder.LITTLE_ENDIAN);
+		out.put(zip, 0, endPosition);
+		// zip64 end of central directory record
+		out.putInt(0x06064b50).putLong(56 - 12).putShort((short) 45).putShort((short) 45).putInt(0).putInt(0);
+		out.putLong(entryCount).putLong(entryCount).putLong(directorySize).putLong(directoryOffset);
+		// zip64 end of central directory locator
+		out.putInt(0x07064b50).putInt(0).putLong(endPosition).putInt(1);
+		// end of central directory record, with the values moved to the zip64 record
+		out.putInt(0x06054b50).putShort((short) 0).putShort((short) 0).putShort((short) 0xFFFF).putShort((short) 0xFFFF);
+		out.putInt(0xFFFFFFFF).putInt(0xFFFFFFFF).putShort((short) 0);
+		return out.array();
+	}
+
+	private File write(String name, byte[] bytes) throws Exception {
+		File file = folder.newFile(name);
+		try (FileOutputStream fos = new FileOutputStream(file)) {
+			fos.write(bytes);
+		}
+		return file;
+	}
+
+	private static byte[] concat(byte[] first, byte[] second) {
+		byte[] result = new byte[first.length + second.length];
+		System.arraycopy(first, 0, result, 0, first.length);
+		System.arraycopy(second, 0, result, first.length, second.length);
+		return result;
+	}
+
+	private static byte[] read(InputStream stream) throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[64];
+		int count;
+		while ((count = stream.read(buffer)) != -1) {
+			baos.write(buffer, 0, count);
+		}
+		return baos.toByteArray();
+	}
+
+}
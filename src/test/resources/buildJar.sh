@@ -5,6 +5,8 @@ jar -cvMf innerjar.jar Foo.class Bar.class
 mkdir lib
 mv innerjar.jar lib
 jar -cvMf outerjar.jar lib
+# Build bootjar.jar with the same content but, like spring boot, storing (not compressing) the nested jar
+jar -cvM0f bootjar.jar lib
 rm Foo.class Bar.class
 rm lib/innerjar.jar
 rmdir lib